@@ -94,11 +94,13 @@ import net.floodlightcontroller.util.LoadMonitor;
 import net.floodlightcontroller.util.TimedCache;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFMessagePool;
 import org.openflow.protocol.OFPacketIn;
 import org.openflow.protocol.OFType;
 import org.openflow.protocol.factory.BasicFactory;
@@ -228,6 +230,17 @@ public class Controller implements IFloodlightProviderService,
     protected static final int SEND_BUFFER_SIZE = 128 * 1024;
     public static final int BATCH_MAX_SIZE = 100;
     protected static final boolean ALWAYS_DECODE_ETH = true;
+    // Keep packet-in data as slices of the inbound frames instead of
+    // copying each payload into its own array
+    protected boolean zeroCopyDecode = false;
+    // Recycle written FLOW_MOD and PACKET_OUT messages and encode into
+    // pooled buffers
+    protected boolean pooledEncode = false;
+    // Number of lanes dispatching messages to the listeners off the netty
+    // I/O threads, 0 dispatches on the I/O threads
+    protected int dispatchLanes = 0;
+    protected int dispatchQueueSize = 1024;
+    protected OFMessageDispatcher messageDispatcher = null;
 
     // Set of port name prefixes that will be classified as uplink ports,
     // hence will not be autoportfast.
@@ -1781,7 +1794,7 @@ public class Controller implements IFloodlightProviderService,
             case PACKET_IN:
                 OFPacketIn pi = (OFPacketIn)m;
 
-                if (pi.getPacketData().length <= 0) {
+                if (pi.getPacketDataLength() <= 0) {
                     log.error("Ignoring PacketIn (Xid = " + pi.getXid() +
                               ") because the data field is empty.");
                     return;
@@ -1789,8 +1802,18 @@ public class Controller implements IFloodlightProviderService,
 
                 if (Controller.ALWAYS_DECODE_ETH) {
                     eth = new Ethernet();
-                    eth.deserialize(pi.getPacketData(), 0,
-                            pi.getPacketData().length);
+                    // decode a zero-copy slice in place when it is backed
+                    // by an array, without materializing the packet data
+                    ChannelBuffer payload = pi.hasPacketDataSlice() ?
+                            pi.getPacketDataBuffer() : null;
+                    if (payload != null && payload.hasArray()) {
+                        eth.deserialize(payload.array(),
+                                payload.arrayOffset() + payload.readerIndex(),
+                                payload.readableBytes());
+                    } else {
+                        eth.deserialize(pi.getPacketData(), 0,
+                                pi.getPacketData().length);
+                    }
                     counterStore.updatePacketInCountersLocal(sw, m, eth);
                 }
                 // fall through to default case...
@@ -2221,7 +2244,51 @@ public class Controller implements IFloodlightProviderService,
             this.workerThreads = Integer.parseInt(threads);
         }
         log.debug("Number of worker threads set to {}", this.workerThreads);
+        String zeroCopy = configParams.get("zeroCopyDecode");
+        if (zeroCopy != null) {
+            this.zeroCopyDecode = Boolean.parseBoolean(zeroCopy.trim());
+        }
+        log.debug("Zero-copy packet-in decoding {}",
+                  this.zeroCopyDecode ? "enabled" : "disabled");
+        String pooled = configParams.get("pooledEncode");
+        if (pooled != null) {
+            this.pooledEncode = Boolean.parseBoolean(pooled.trim());
+        }
+        log.debug("Pooled message encoding {}",
+                  this.pooledEncode ? "enabled" : "disabled");
+        String lanes = configParams.get("dispatchLanes");
+        if (lanes != null) {
+            this.dispatchLanes = Integer.parseInt(lanes.trim());
+        }
+        String queueSize = configParams.get("dispatchQueueSize");
+        if (queueSize != null) {
+            this.dispatchQueueSize = Integer.parseInt(queueSize.trim());
+        }
+        log.debug("Number of dispatch lanes set to {}, queue size {}",
+                  this.dispatchLanes, this.dispatchQueueSize);
+    }
+
+    /**
+     * Whether OpenFlow channels decode packet-in data without copying
+     */
+    public boolean isZeroCopyDecode() {
+        return zeroCopyDecode;
+    }
+
+    /**
+     * Whether written FLOW_MOD and PACKET_OUT messages are recycled and
+     * OpenFlow channels encode into pooled buffers
+     */
+    public boolean isPooledEncode() {
+        return pooledEncode;
+    }
 
+    /**
+     * The dispatcher queueing messages to the listeners, or null when they
+     * are dispatched on the channels' I/O threads
+     */
+    OFMessageDispatcher getMessageDispatcher() {
+        return messageDispatcher;
     }
 
     private void initVendorMessages() {
@@ -2256,6 +2323,7 @@ public class Controller implements IFloodlightProviderService,
         this.factory = BasicFactory.getInstance();
         this.providerMap = new HashMap<String, List<IInfoProvider>>();
         setConfigParams(configParams);
+        this.factory.setMessagePool(pooledEncode ? new OFMessagePool() : null);
         Role initialRole = getInitialRole(configParams);
         this.notifiedRole = initialRole;
         initVendorMessages();
@@ -2340,6 +2408,12 @@ public class Controller implements IFloodlightProviderService,
 
         try {
             this.counters.createCounters(debugCounters);
+            if (dispatchLanes > 0) {
+                messageDispatcher = new OFMessageDispatcher(this,
+                        dispatchLanes, dispatchQueueSize);
+                messageDispatcher.createCounters(debugCounters);
+                messageDispatcher.start();
+            }
         } catch (CounterException e) {
             throw new FloodlightModuleException(e.getMessage());
         }
@@ -2691,6 +2765,13 @@ public class Controller implements IFloodlightProviderService,
         Map<String, Object> info = new HashMap<String, Object>();
 
         info.put("# Switches", this.getAllSwitchDpids().size());
+        if (messageDispatcher != null) {
+            List<Integer> depth = new ArrayList<Integer>();
+            for (int i = 0; i < messageDispatcher.getLaneCount(); i++) {
+                depth.add(messageDispatcher.getQueueDepth(i));
+            }
+            info.put("Dispatch queue depth", depth);
+        }
         return info;
     }
 }
@@ -0,0 +1,98 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Fixed size output buffers shared by the OFMessageEncoders of all
+ * channels. Netty 3 buffers are not reference counted, so a buffer may only
+ * be released once the write it was handed to has completed.
+ *
+ * The buffers are heap buffers: the NIO worker already copies them into its
+ * own pooled direct buffer, and netty's direct buffers allocate a view of
+ * themselves for every byte array written into them, such as the MAC
+ * addresses of an OFMatch.
+ */
+class OFBufferPool {
+    private final int bufferSize;
+    private final int capacity;
+    private final Queue<ChannelBuffer> free =
+            new ConcurrentLinkedQueue<ChannelBuffer>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * @param bufferSize size of each buffer in bytes, writes larger than this
+     *                   are not pooled
+     * @param capacity the largest number of free buffers kept
+     */
+    OFBufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("bufferSize and capacity " +
+                                               "must be positive");
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+    }
+
+    /**
+     * An empty buffer with room for at least size bytes, or null if size is
+     * larger than the pooled buffers
+     */
+    ChannelBuffer acquire(int size) {
+        if (size > bufferSize)
+            return null;
+        ChannelBuffer buf = free.poll();
+        if (buf != null) {
+            freeCount.decrementAndGet();
+            return buf;
+        }
+        allocated.incrementAndGet();
+        return ChannelBuffers.buffer(bufferSize);
+    }
+
+    /**
+     * Returns a buffer taken from this pool, once nothing reads it anymore
+     */
+    void release(ChannelBuffer buf) {
+        if (freeCount.incrementAndGet() > capacity) {
+            freeCount.decrementAndGet();
+            return;
+        }
+        buf.clear();
+        free.offer(buf);
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getFreeCount() {
+        return freeCount.get();
+    }
+
+    /**
+     * Number of buffers allocated because none was free
+     */
+    long getAllocatedCount() {
+        return allocated.get();
+    }
+}
@@ -90,6 +90,8 @@ class OFChannelHandler
 
     private final Controller controller;
     private final Counters counters;
+    // Dispatches messages to the listeners off the I/O thread, may be null
+    private final OFMessageDispatcher dispatcher;
     private IOFSwitch sw;
     private Channel channel;
     // State needs to be volatile because the HandshakeTimeoutHandler
@@ -1307,6 +1309,7 @@ class OFChannelHandler
     OFChannelHandler(Controller controller) {
         this.controller = controller;
         this.counters = controller.getCounters();
+        this.dispatcher = controller.getMessageDispatcher();
         this.roleChanger = new RoleChanger(DEFAULT_ROLE_TIMEOUT_MS);
         this.state = ChannelState.INIT;
         this.pendingPortStatusMsg = new ArrayList<OFPortStatus>();
@@ -1627,6 +1630,10 @@ class OFChannelHandler
     }
 
     private void dispatchMessage(OFMessage m) throws IOException {
+        if (dispatcher != null) {
+            dispatcher.dispatch(this.sw, this.channel, m);
+            return;
+        }
         // handleMessage will count
         this.controller.handleMessage(this.sw, m, null);
     }
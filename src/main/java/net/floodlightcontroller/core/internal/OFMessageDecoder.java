@@ -17,6 +17,7 @@
 
 package net.floodlightcontroller.core.internal;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -24,18 +25,35 @@ import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
+import org.openflow.protocol.OFType;
 import org.openflow.protocol.factory.BasicFactory;
 import org.openflow.protocol.factory.OFMessageFactory;
 
 /**
  * Decode an openflow message from a Channel, for use in a netty
  * pipeline
+ *
+ * In zero-copy mode the packet data of a PACKET_IN is not copied into its
+ * own array but kept as a slice of the frame. Netty 3 buffers are not
+ * reference counted and FrameDecoder compacts its cumulation buffer in
+ * place, so all complete messages of a read are first moved into one
+ * buffer that is owned by the decoded messages and released with them.
  * @author readams
  */
 public class OFMessageDecoder extends FrameDecoder {
 
     OFMessageFactory factory = BasicFactory.getInstance();
-    
+    protected final boolean zeroCopy;
+
+    public OFMessageDecoder() {
+        this(false);
+    }
+
+    public OFMessageDecoder(boolean zeroCopy) {
+        this.zeroCopy = zeroCopy;
+    }
+
     @Override
     protected Object decode(ChannelHandlerContext ctx, Channel channel,
                             ChannelBuffer buffer) throws Exception {
@@ -45,10 +63,54 @@ public class OFMessageDecoder extends FrameDecoder {
             return null;
         }
 
+        if (zeroCopy) {
+            return decodeSlices(buffer);
+        }
         List<OFMessage> message = factory.parseMessage(buffer);
         return message;
     }
 
+    /**
+     * Decode all complete messages in buffer, keeping packet-in data as
+     * slices of a private copy of the frames
+     * @return the messages, or null if no complete message is available
+     */
+    protected List<OFMessage> decodeSlices(ChannelBuffer buffer)
+            throws Exception {
+        int start = buffer.readerIndex();
+        int end = start;
+        while (buffer.writerIndex() - end >= OFMessage.MINIMUM_LENGTH) {
+            int length = buffer.getUnsignedShort(end + 2);
+            if (length < OFMessage.MINIMUM_LENGTH ||
+                    buffer.writerIndex() - end < length)
+                break;
+            end += length;
+        }
+        if (end == start) {
+            if (buffer.readableBytes() >= OFMessage.MINIMUM_LENGTH &&
+                    buffer.getUnsignedShort(start + 2) < OFMessage.MINIMUM_LENGTH) {
+                // let the factory report the malformed header
+                return factory.parseMessage(buffer);
+            }
+            return null;
+        }
+        ChannelBuffer frames = buffer.readBytes(end - start);
+        List<OFMessage> messages = new ArrayList<OFMessage>();
+        while (frames.readable()) {
+            int length = frames.getUnsignedShort(frames.readerIndex() + 2);
+            if (frames.getByte(frames.readerIndex() + 1) ==
+                    OFType.PACKET_IN.getTypeValue()) {
+                OFPacketIn pi =
+                        (OFPacketIn) factory.getMessage(OFType.PACKET_IN);
+                pi.readFromSlice(frames.readSlice(length));
+                messages.add(pi);
+            } else {
+                messages.addAll(factory.parseMessage(frames.readSlice(length)));
+            }
+        }
+        return messages;
+    }
+
     @Override
     protected Object decodeLast(ChannelHandlerContext ctx, Channel channel,
                             ChannelBuffer buffer) throws Exception {
@@ -0,0 +1,283 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.annotations.LogMessageDoc;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterException;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.CounterType;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.Channels;
+import org.openflow.protocol.OFMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the dispatch of OpenFlow messages to the IOFMessageListeners off the
+ * netty I/O workers onto a fixed number of lanes, each with its own thread
+ * and bounded queue.
+ *
+ * All messages from a switch go to the same lane, chosen by its DPID, so
+ * listeners still see the messages of a switch in the order they arrived.
+ * When a lane's queue passes its high-water mark, the channels feeding it
+ * are made unreadable until the lane has drained below half of that, which
+ * pushes the backlog back into the switches' TCP windows instead of
+ * letting it grow in the controller. Should a single read still overflow
+ * the queue, the I/O worker blocks until there is room.
+ *
+ * A lane calls Controller.flushAll() after each batch it drains, since the
+ * per-switch write buffers and the debug counters are thread local.
+ */
+class OFMessageDispatcher {
+    private static final Logger log =
+            LoggerFactory.getLogger(OFMessageDispatcher.class);
+
+    private final Controller controller;
+    private final Lane[] lanes;
+    private final int highWater;
+    private final int lowWater;
+
+    /**
+     * A message waiting in a lane, with the time it was queued
+     */
+    private static class Entry {
+        final IOFSwitch sw;
+        final Channel channel;
+        final OFMessage m;
+        final long queued;
+
+        Entry(IOFSwitch sw, Channel channel, OFMessage m) {
+            this.sw = sw;
+            this.channel = channel;
+            this.m = m;
+            this.queued = System.nanoTime();
+        }
+    }
+
+    private class Lane implements Runnable {
+        final int index;
+        final BlockingQueue<Entry> queue;
+        // Channels made unreadable because of this lane, guarded by this
+        final Set<Channel> paused = new HashSet<Channel>();
+        IDebugCounter messages;
+        IDebugCounter queueWait;
+        IDebugCounter backpressure;
+        Thread thread;
+
+        Lane(int index, int queueSize) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<Entry>(queueSize);
+        }
+
+        synchronized void pause(Channel channel) {
+            // The lane may have drained the queue and run resumeIfDrained()
+            // since the caller saw it full, nothing would resume the channel
+            if (queue.size() <= lowWater)
+                return;
+            if (paused.add(channel)) {
+                channel.setReadable(false);
+                backpressure.updateCounterNoFlush();
+            }
+        }
+
+        synchronized void resumeIfDrained() {
+            if (paused.isEmpty() || queue.size() > lowWater)
+                return;
+            for (Channel channel : paused) {
+                channel.setReadable(true);
+            }
+            paused.clear();
+        }
+
+        @Override
+        @LogMessageDoc(level="ERROR",
+                message="Exception in OpenFlow dispatch lane {lane}",
+                explanation="A message listener threw an unexpected " +
+                        "exception",
+                recommendation=LogMessageDoc.GENERIC_ACTION)
+        public void run() {
+            List<Entry> batch = new ArrayList<Entry>(Controller.BATCH_MAX_SIZE);
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, Controller.BATCH_MAX_SIZE - 1);
+                long now = System.nanoTime();
+                long waited = 0;
+                for (Entry entry : batch) {
+                    waited += now - entry.queued;
+                    try {
+                        process(entry.sw, entry.m);
+                    } catch (Exception ex) {
+                        // Same handling as when the message is processed
+                        // on the channel's own I/O thread
+                        Channels.fireExceptionCaught(entry.channel, ex);
+                    } catch (Throwable t) {
+                        log.error("Exception in OpenFlow dispatch lane " +
+                                  index, t);
+                    }
+                }
+                messages.updateCounterNoFlush(batch.size());
+                queueWait.updateCounterNoFlush((int) (waited / 1000));
+                batch.clear();
+                flush();
+                resumeIfDrained();
+            }
+        }
+    }
+
+    /**
+     * @param controller the controller whose listeners the messages are
+     *                   dispatched to
+     * @param laneCount number of lanes (threads)
+     * @param queueSize capacity of each lane's queue
+     */
+    OFMessageDispatcher(Controller controller, int laneCount, int queueSize) {
+        if (laneCount <= 0)
+            throw new IllegalArgumentException("laneCount must be positive");
+        if (queueSize < 2)
+            throw new IllegalArgumentException("queueSize must be at least 2");
+        this.controller = controller;
+        this.highWater = Math.max(1, queueSize * 3 / 4);
+        this.lowWater = highWater / 2;
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i, queueSize);
+        }
+    }
+
+    /**
+     * Registers the per-lane counters: the messages dispatched by the lane,
+     * the total time they waited in its queue in microseconds, and the
+     * number of times it made a channel unreadable.
+     */
+    void createCounters(IDebugCounterService debugCounters)
+            throws CounterException {
+        String prefix = Controller.Counters.prefix;
+        for (Lane lane : lanes) {
+            String name = "dispatch-lane-" + lane.index;
+            lane.messages = debugCounters.registerCounter(prefix, name,
+                    "Number of OpenFlow messages dispatched by this lane",
+                    CounterType.ALWAYS_COUNT);
+            lane.queueWait = debugCounters.registerCounter(prefix,
+                    name + "/queue-wait-us",
+                    "Total time in microseconds the messages dispatched " +
+                    "by this lane waited in its queue",
+                    CounterType.ALWAYS_COUNT);
+            lane.backpressure = debugCounters.registerCounter(prefix,
+                    name + "/backpressure",
+                    "Number of times a switch channel stopped being read " +
+                    "because this lane's queue was full",
+                    CounterType.ALWAYS_COUNT,
+                    IDebugCounterService.CTR_MDATA_WARN);
+        }
+    }
+
+    void start() {
+        for (Lane lane : lanes) {
+            lane.thread = new Thread(lane, "OFDispatchLane-" + lane.index);
+            lane.thread.setDaemon(true);
+            lane.thread.start();
+        }
+    }
+
+    void stop() {
+        for (Lane lane : lanes) {
+            if (lane.thread != null)
+                lane.thread.interrupt();
+        }
+    }
+
+    int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * The lane that dispatches the messages of a switch
+     */
+    int laneOf(long dpid) {
+        int h = (int) (dpid ^ (dpid >>> 32));
+        h ^= (h >>> 16);
+        return (h & 0x7fffffff) % lanes.length;
+    }
+
+    /**
+     * Number of messages waiting in a lane
+     */
+    int getQueueDepth(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    /**
+     * Queues a message from a switch for dispatch. Called on the I/O thread
+     * of the switch's channel.
+     */
+    void dispatch(IOFSwitch sw, Channel channel, OFMessage m) {
+        int index = laneOf(sw.getId());
+        Lane lane = lanes[index];
+        Entry entry = new Entry(sw, channel, m);
+        if (lane.queue.offer(entry)) {
+            if (lane.queue.size() >= highWater)
+                pause(index, channel);
+            return;
+        }
+        pause(index, channel);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                lane.queue.put(entry);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Makes a channel unreadable until a lane has drained below its
+     * low-water mark, unless it already has
+     */
+    void pause(int lane, Channel channel) {
+        lanes[lane].pause(channel);
+    }
+
+    /**
+     * Dispatches one message to the listeners
+     */
+    void process(IOFSwitch sw, OFMessage m) throws Exception {
+        controller.handleMessage(sw, m, null);
+    }
+
+    /**
+     * Flushes the lane thread's pending writes and counters
+     */
+    void flush() {
+        controller.flushAll();
+    }
+}
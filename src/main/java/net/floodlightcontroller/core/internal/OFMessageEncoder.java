@@ -22,16 +22,78 @@ import java.util.List;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFMessagePool;
 
 /**
  * Encode an openflow message for output into a ChannelBuffer, for use in a
  * netty pipeline
+ *
+ * In pooled mode, the pooled messages are returned to their pool once they
+ * have been written into the buffer, and the buffer is taken from a pool and
+ * returned to it when the write has completed.
  * @author readams
  */
 public class OFMessageEncoder extends OneToOneEncoder {
+    protected final OFMessagePool messagePool;
+    protected final OFBufferPool bufferPool;
+
+    public OFMessageEncoder() {
+        this(null, null);
+    }
+
+    /**
+     * @param messagePool pool the written messages are returned to, or null
+     * @param bufferPool pool the output buffers are taken from, or null
+     */
+    OFMessageEncoder(OFMessagePool messagePool, OFBufferPool bufferPool) {
+        super();
+        this.messagePool = messagePool;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt)
+            throws Exception {
+        if (bufferPool == null || !(evt instanceof MessageEvent) ||
+            !(((MessageEvent) evt).getMessage() instanceof List)) {
+            super.handleDownstream(ctx, evt);
+            return;
+        }
+
+        MessageEvent e = (MessageEvent) evt;
+        @SuppressWarnings("unchecked")
+        List<OFMessage> msglist = (List<OFMessage>) e.getMessage();
+        int size = encodedLength(msglist);
+        final ChannelBuffer buf = bufferPool.acquire(size);
+        if (buf == null) {
+            super.handleDownstream(ctx, evt);
+            return;
+        }
+        try {
+            writeMessages(msglist, buf);
+        } catch (RuntimeException ex) {
+            bufferPool.release(buf);
+            throw ex;
+        }
+        // The future also completes when the write fails or the channel is
+        // closed, after which the worker no longer references the buffer
+        ChannelFuture future = e.getFuture();
+        future.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                bufferPool.release(buf);
+            }
+        });
+        Channels.write(ctx, future, buf, e.getRemoteAddress());
+    }
 
     @Override
     protected Object encode(ChannelHandlerContext ctx, Channel channel,
@@ -41,16 +103,28 @@ public class OFMessageEncoder extends OneToOneEncoder {
 
         @SuppressWarnings("unchecked")
         List<OFMessage> msglist = (List<OFMessage>)msg;
+        ChannelBuffer buf = ChannelBuffers.buffer(encodedLength(msglist));
+        writeMessages(msglist, buf);
+        return buf;
+    }
+
+    private static int encodedLength(List<OFMessage> msglist) {
         int size = 0;
         for (OFMessage ofm :  msglist) {
-                size += ofm.getLengthU();
+            size += ofm.getLengthU();
         }
+        return size;
+    }
 
-        ChannelBuffer buf = ChannelBuffers.buffer(size);;
+    private void writeMessages(List<OFMessage> msglist, ChannelBuffer buf) {
         for (OFMessage ofm :  msglist) {
             ofm.writeTo(buf);
         }
-        return buf;
+        if (messagePool != null) {
+            for (OFMessage ofm : msglist) {
+                messagePool.release(ofm);
+            }
+        }
     }
 
 }
@@ -36,11 +36,18 @@ import org.jboss.netty.util.Timer;
 public class OpenflowPipelineFactory 
     implements ChannelPipelineFactory, ExternalResourceReleasable {
 
+    // A full batch of Controller.BATCH_MAX_SIZE flow-mods with a few
+    // actions each fits in one buffer
+    protected static final int ENCODE_BUFFER_SIZE = 16 * 1024;
+    protected static final int ENCODE_BUFFER_COUNT = 256;
+
     protected Controller controller;
     protected ThreadPoolExecutor pipelineExecutor;
     protected Timer timer;
     protected IdleStateHandler idleHandler;
     protected ReadTimeoutHandler readTimeoutHandler;
+    // Output buffers shared by the encoders in pooled mode, else null
+    protected OFBufferPool bufferPool;
     
     public OpenflowPipelineFactory(Controller controller,
                                    ThreadPoolExecutor pipelineExecutor) {
@@ -50,6 +57,9 @@ public class OpenflowPipelineFactory
         this.timer = new HashedWheelTimer();
         this.idleHandler = new IdleStateHandler(timer, 20, 25, 0);
         this.readTimeoutHandler = new ReadTimeoutHandler(timer, 30);
+        if (controller.isPooledEncode())
+            this.bufferPool = new OFBufferPool(ENCODE_BUFFER_SIZE,
+                                               ENCODE_BUFFER_COUNT);
     }
  
     @Override
@@ -57,8 +67,13 @@ public class OpenflowPipelineFactory
         OFChannelHandler handler = new OFChannelHandler(controller);
         
         ChannelPipeline pipeline = Channels.pipeline();
-        pipeline.addLast("ofmessagedecoder", new OFMessageDecoder());
-        pipeline.addLast("ofmessageencoder", new OFMessageEncoder());
+        pipeline.addLast("ofmessagedecoder",
+                         new OFMessageDecoder(controller.isZeroCopyDecode()));
+        pipeline.addLast("ofmessageencoder",
+                         new OFMessageEncoder(
+                                 controller.getOFMessageFactory()
+                                           .getMessagePool(),
+                                 bufferPool));
         pipeline.addLast("idle", idleHandler);
         pipeline.addLast("timeout", readTimeoutHandler);
         pipeline.addLast("handshaketimeout",
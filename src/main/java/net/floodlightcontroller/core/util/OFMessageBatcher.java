@@ -0,0 +1,268 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package net.floodlightcontroller.core.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.annotations.LogMessageDoc;
+
+import org.openflow.protocol.OFBarrierRequest;
+import org.openflow.protocol.OFMessage;
+import org.openflow.util.HexString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-switch outbound queue for writers that run outside the packet-in
+ * dispatch loop, and therefore never see the thread local buffers of
+ * OFSwitchBase flushed.
+ *
+ * Messages queued for a switch are handed to IOFSwitch.write(List) as one
+ * batch, which the channel's encoder writes into a single buffer. A batch
+ * is sent when it reaches the maximum batch size, when the oldest queued
+ * message has waited for the maximum delay (only if a scheduler was
+ * given), or when the writer calls flush() or barrier(). The sizes of the
+ * batches sent are recorded in a power-of-two histogram.
+ *
+ * Messages of one switch are sent in the order they were queued, also
+ * when several threads write to it.
+ */
+public class OFMessageBatcher {
+    protected static Logger log = LoggerFactory.getLogger(OFMessageBatcher.class);
+
+    private final int maxBatchSize;
+    private final long maxDelay;
+    private final ScheduledExecutorService ses;
+    private final ConcurrentMap<Long, SwitchQueue> queues =
+            new ConcurrentHashMap<Long, SwitchQueue>();
+    // histogram[i] counts batches of size [2^i, 2^(i+1)), the last bucket
+    // also holds the batches of the maximum size
+    private final AtomicLongArray histogram;
+
+    private class SwitchQueue implements Runnable {
+        final long dpid;
+        // The switch the pending messages go to, null while none are
+        // pending so that an idle queue does not keep its channel
+        IOFSwitch sw;
+        List<OFMessage> pending = new ArrayList<OFMessage>();
+        boolean flushScheduled = false;
+
+        SwitchQueue(long dpid) {
+            this.dpid = dpid;
+        }
+
+        /**
+         * Appends a message for a switch. Must hold the lock on this queue.
+         */
+        void add(IOFSwitch sw, OFMessage m) throws IOException {
+            if (this.sw != sw) {
+                // The switch reconnected, whatever is left goes to the old
+                // connection and is dropped there
+                send();
+                this.sw = sw;
+            }
+            pending.add(m);
+        }
+
+        /**
+         * Sends the pending messages. Must hold the lock on this queue.
+         */
+        void send() throws IOException {
+            if (pending.isEmpty())
+                return;
+            List<OFMessage> batch = pending;
+            IOFSwitch target = sw;
+            pending = new ArrayList<OFMessage>();
+            sw = null;
+            recordBatch(batch.size());
+            target.write(batch, null);
+        }
+
+        @Override
+        @LogMessageDoc(level="ERROR",
+                message="Failed to write batch of OpenFlow messages to " +
+                        "switch {switch}",
+                explanation="An I/O error occured while sending queued " +
+                        "messages to a switch",
+                recommendation=LogMessageDoc.CHECK_SWITCH)
+        public void run() {
+            synchronized (this) {
+                flushScheduled = false;
+                try {
+                    send();
+                } catch (IOException e) {
+                    log.error("Failed to write batch of OpenFlow messages " +
+                              "to switch " + HexString.toHexString(dpid), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param maxBatchSize number of messages after which a switch's queue
+     *                     is sent
+     * @param maxDelay the longest a queued message waits before it is sent
+     *                 (ms), 0 to only send on size, flush() or barrier()
+     * @param ses scheduler for the delayed sends, may be null when maxDelay
+     *            is 0
+     */
+    public OFMessageBatcher(int maxBatchSize, long maxDelay,
+                            ScheduledExecutorService ses) {
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        if (maxDelay > 0 && ses == null)
+            throw new IllegalArgumentException("A delayed flush needs a scheduler");
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.ses = ses;
+        this.histogram = new AtomicLongArray(bucketOf(maxBatchSize) + 1);
+    }
+
+    private static int bucketOf(int size) {
+        return 31 - Integer.numberOfLeadingZeros(size);
+    }
+
+    private void recordBatch(int size) {
+        histogram.incrementAndGet(Math.min(bucketOf(size),
+                                           histogram.length() - 1));
+    }
+
+    private SwitchQueue queueOf(IOFSwitch sw) {
+        SwitchQueue queue = queues.get(sw.getId());
+        if (queue == null) {
+            queue = new SwitchQueue(sw.getId());
+            SwitchQueue existing = queues.putIfAbsent(sw.getId(), queue);
+            if (existing != null)
+                queue = existing;
+        }
+        return queue;
+    }
+
+    /**
+     * Queues a message for a switch, sending the queue if it is full
+     */
+    public void write(IOFSwitch sw, OFMessage m) throws IOException {
+        SwitchQueue queue = queueOf(sw);
+        synchronized (queue) {
+            queue.add(sw, m);
+            if (queue.pending.size() >= maxBatchSize) {
+                queue.send();
+            } else if (maxDelay > 0 && !queue.flushScheduled) {
+                queue.flushScheduled = true;
+                ses.schedule(queue, maxDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Queues messages for a switch in order
+     */
+    public void write(IOFSwitch sw, List<? extends OFMessage> msglist)
+            throws IOException {
+        for (OFMessage m : msglist) {
+            write(sw, m);
+        }
+    }
+
+    /**
+     * Sends the messages queued for a switch
+     */
+    public void flush(IOFSwitch sw) throws IOException {
+        SwitchQueue queue = queues.get(sw.getId());
+        if (queue == null)
+            return;
+        synchronized (queue) {
+            queue.send();
+        }
+    }
+
+    /**
+     * Sends the messages queued for all switches
+     */
+    public void flushAll() {
+        for (SwitchQueue queue : queues.values()) {
+            queue.run();
+        }
+    }
+
+    /**
+     * Queues a barrier request after the messages already queued for a
+     * switch and sends them
+     * @return the transaction id of the barrier request
+     */
+    public int barrier(IOFSwitch sw) throws IOException {
+        OFBarrierRequest barrier = new OFBarrierRequest();
+        int xid = sw.getNextTransactionId();
+        barrier.setXid(xid);
+        SwitchQueue queue = queueOf(sw);
+        synchronized (queue) {
+            // Sent from the queue locked here, which is no longer the
+            // switch's queue if removeSwitch() ran since it was looked up
+            queue.add(sw, barrier);
+            queue.send();
+        }
+        return xid;
+    }
+
+    /**
+     * Drops the queue of a switch that is gone, without sending it
+     */
+    public void removeSwitch(long dpid) {
+        queues.remove(dpid);
+    }
+
+    /**
+     * Number of messages queued for a switch
+     */
+    public int getQueuedCount(long dpid) {
+        SwitchQueue queue = queues.get(dpid);
+        if (queue == null)
+            return 0;
+        synchronized (queue) {
+            return queue.pending.size();
+        }
+    }
+
+    /**
+     * Number of batches sent by size, keyed by the size range ("1", "2-3",
+     * "4-7", ...; the last range is open ended)
+     */
+    public Map<String, Long> getBatchSizeHistogram() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        int last = histogram.length() - 1;
+        for (int i = 0; i <= last; i++) {
+            int low = 1 << i;
+            String range;
+            if (i == last)
+                range = low + "+";
+            else if (low == 1)
+                range = "1";
+            else
+                range = low + "-" + ((low << 1) - 1);
+            result.put(range, histogram.get(i));
+        }
+        return result;
+    }
+}
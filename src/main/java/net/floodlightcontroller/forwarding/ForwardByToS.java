@@ -134,6 +134,24 @@ public class ForwardByToS extends ForwardingBase implements IFloodlightModule {
         }
     }
 
+    /**
+     * 由五元组计算流的哈希值
+     */
+    protected static int flowHash(OFMatch match) {
+        int h = match.getNetworkSource();
+        h = 31 * h + match.getNetworkDestination();
+        h = 31 * h + match.getNetworkProtocol();
+        h = 31 * h + (match.getTransportSource() & 0xffff);
+        h = 31 * h + (match.getTransportDestination() & 0xffff);
+        // 打散低位，使按路径数取模时分布均匀
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
     /**
      * 根据ToS查询对应路由表
      * @param sw
@@ -153,21 +171,21 @@ public class ForwardByToS extends ForwardingBase implements IFloodlightModule {
                         get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
         if (dstDevice != null) {
             byte DSCP = match.getNetworkTypeOfService();
-            Map<Integer,SwitchPort> IPmap = router.getAttachmentMap();
-            SwitchPort[] dstDaps = new SwitchPort[dstDevice.getIPv4Addresses().length];
-            for(int i=0;i<dstDaps.length;i++){
-                dstDaps[i] = IPmap.get(dstDevice.getIPv4Addresses()[i]);
-            }
+            //getIPv4Addresses每次调用都会新建数组，只取一次
+            Integer[] dstIPs = dstDevice.getIPv4Addresses();
             Route route=null;
-            for(SwitchPort dstDap : dstDaps) {
-                while(route==null&&DSCP>=0) {
-                    //r = router.getRoute(sw.getId(), dstDap.getSwitchDPID(), 0, DSCP--, true);
-                    route = router.getRoute(sw.getId(),
-                            pi.getInPort(),
-                            dstDap.getSwitchDPID(),
-                            (short)dstDap.getPort(),
-                            0,DSCP--,true);
-                }
+            //同一条流总是落在等价多路径中的同一条上，不同的流分散到各条路径
+            int flowHash = flowHash(match);
+            for(Integer dstIP : dstIPs) {
+                SwitchPort dstDap = router.getAttachmentPoint(dstIP);
+                if (dstDap == null) continue;
+                //ToS不可达时的降级由路由模块一次完成
+                route = router.getRoute(sw.getId(),
+                        pi.getInPort(),
+                        dstDap.getSwitchDPID(),
+                        (short)dstDap.getPort(),
+                        DSCP,flowHash);
+                if (route != null) break;
             }
             if (route != null) {
                 long cookie =
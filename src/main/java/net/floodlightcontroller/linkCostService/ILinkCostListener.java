@@ -0,0 +1,11 @@
+package net.floodlightcontroller.linkCostService;
+
+/**
+ * 链路权重更新的监听接口，LinkCostManager每完成一轮链路权重计算后通知
+ */
+public interface ILinkCostListener {
+    /**
+     * 新一轮的链路权重已经可以通过ILinkCostService获取
+     */
+    public void linkCostUpdated();
+}
@@ -11,6 +11,22 @@ public interface ILinkCostService extends IFloodlightService {
 	public Map<Link,LinkBandwidthType> getLinkTypeMap();
 	public double getMaxLinkCompacity();
 	public double getLinkCompacity(Link link);
+	public Map<Link,Double> getLinkCapacities();
+	/**
+	 * 由端口速率特性得到的端口容量(Mbps)，未知时返回0
+	 */
+	public int getPortCapacity(long dpid, short port);
+	public LinkCapacityModel getCapacityModel();
+	/**
+	 * 替换链路容量模型，下一轮链路权重计算时生效
+	 */
+	public void setCapacityModel(LinkCapacityModel model);
 	public Map<Long, Set<Link>> getSwitchLinks();
 	public Map<Link, LinkInfo> getLinks();
+	public void addListener(ILinkCostListener listener);
+	public PortRateHistory getPortRateHistory();
+	/**
+	 * 最近一轮链路权重计算发布的不可变快照，每轮整体替换，调用方不需要加锁或复制
+	 */
+	public LinkCostSnapshot getSnapshot();
 }
@@ -0,0 +1,156 @@
+package net.floodlightcontroller.linkCostService;
+
+import net.floodlightcontroller.routing.Link;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 链路容量模型(不可变)
+ * 两端都是光网络节点的链路为FiberLink，其余为CableLink，容量分别取两种类型的配置值；
+ * 按交换机对单独指定的容量优先于按类型的容量，交换机对不区分方向
+ */
+public class LinkCapacityModel {
+	private final Set<Long> fiberNodes;
+	private final double fiberCapacity;
+	private final double cableCapacity;
+	// <较小的dpid, <较大的dpid, 容量>>
+	private final Map<Long, Map<Long, Double>> linkCapacities;
+
+	public LinkCapacityModel(Set<Long> fiberNodes, double fiberCapacity, double cableCapacity,
+			Map<Long, Map<Long, Double>> linkCapacities) {
+		if (fiberCapacity <= 0 || cableCapacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.fiberNodes = Collections.unmodifiableSet(new HashSet<Long>(fiberNodes));
+		this.fiberCapacity = fiberCapacity;
+		this.cableCapacity = cableCapacity;
+		Map<Long, Map<Long, Double>> copy = new HashMap<Long, Map<Long, Double>>();
+		for (Map.Entry<Long, Map<Long, Double>> e : linkCapacities.entrySet()) {
+			for (Map.Entry<Long, Double> c : e.getValue().entrySet()) {
+				if (c.getValue() <= 0)
+					throw new IllegalArgumentException("capacity must be positive");
+				put(copy, e.getKey(), c.getKey(), c.getValue());
+			}
+		}
+		this.linkCapacities = copy;
+	}
+
+	/**
+	 * 从配置字符串构造，为null的项使用默认值
+	 * @param fiberNodes 光网络节点dpid列表，形如"1,2,3"
+	 * @param fiberCapacity FiberLink的容量(Mbps)
+	 * @param cableCapacity CableLink的容量(Mbps)
+	 * @param linkCapacities 按交换机对指定的容量，形如"1-2=10,3-4=2.5"
+	 * @throws IllegalArgumentException 配置格式有误
+	 */
+	public static LinkCapacityModel parse(String fiberNodes, String fiberCapacity,
+			String cableCapacity, String linkCapacities) {
+		Set<Long> nodes = new HashSet<Long>();
+		if (fiberNodes != null) {
+			for (String node : fiberNodes.split(",")) {
+				if (!node.trim().isEmpty()) nodes.add(Long.parseLong(node.trim()));
+			}
+		} else {
+			nodes.addAll(defaultModel().fiberNodes);
+		}
+		double fiber = (fiberCapacity != null) ? Double.parseDouble(fiberCapacity.trim())
+				: LinkBandwidthType.FiberLink.getBandwidth();
+		double cable = (cableCapacity != null) ? Double.parseDouble(cableCapacity.trim())
+				: LinkBandwidthType.CableLink.getBandwidth();
+		Map<Long, Map<Long, Double>> capacities = new HashMap<Long, Map<Long, Double>>();
+		if (linkCapacities != null) {
+			for (String entry : linkCapacities.split(",")) {
+				if (entry.trim().isEmpty()) continue;
+				String[] kv = entry.split("=");
+				String[] pair = kv[0].split("-");
+				if (kv.length != 2 || pair.length != 2)
+					throw new IllegalArgumentException("bad link capacity entry " + entry);
+				put(capacities, Long.parseLong(pair[0].trim()), Long.parseLong(pair[1].trim()),
+						Double.parseDouble(kv[1].trim()));
+			}
+		}
+		return new LinkCapacityModel(nodes, fiber, cable, capacities);
+	}
+
+	/**
+	 * 原有的光网络节点设置：1,2,3,4,8
+	 */
+	public static LinkCapacityModel defaultModel() {
+		Set<Long> nodes = new HashSet<Long>();
+		for (long dpid : new long[] { 1, 2, 3, 4, 8 }) {
+			nodes.add(dpid);
+		}
+		return new LinkCapacityModel(nodes, LinkBandwidthType.FiberLink.getBandwidth(),
+				LinkBandwidthType.CableLink.getBandwidth(),
+				Collections.<Long, Map<Long, Double>>emptyMap());
+	}
+
+	private static void put(Map<Long, Map<Long, Double>> capacities, long a, long b, double capacity) {
+		long lo = Math.min(a, b), hi = Math.max(a, b);
+		Map<Long, Double> m = capacities.get(lo);
+		if (m == null) {
+			m = new HashMap<Long, Double>();
+			capacities.put(lo, m);
+		}
+		m.put(hi, capacity);
+	}
+
+	public LinkBandwidthType getType(Link link) {
+		if (fiberNodes.contains(link.getSrc()) && fiberNodes.contains(link.getDst()))
+			return LinkBandwidthType.FiberLink;
+		return LinkBandwidthType.CableLink;
+	}
+
+	/**
+	 * 链路容量(Mbps)
+	 */
+	public double getCapacity(Link link) {
+		Double capacity = getLinkCapacity(link);
+		if (capacity != null) return capacity;
+		return getTypeCapacity(link);
+	}
+
+	/**
+	 * 按链路类型的容量(Mbps)，不考虑按交换机对指定的容量
+	 */
+	public double getTypeCapacity(Link link) {
+		return getType(link) == LinkBandwidthType.FiberLink ? fiberCapacity : cableCapacity;
+	}
+
+	/**
+	 * 按交换机对指定的容量(Mbps)，没有指定时返回null
+	 */
+	public Double getLinkCapacity(Link link) {
+		Map<Long, Double> m = linkCapacities.get(Math.min(link.getSrc(), link.getDst()));
+		return (m == null) ? null : m.get(Math.max(link.getSrc(), link.getDst()));
+	}
+
+	public Set<Long> getFiberNodes() {
+		return fiberNodes;
+	}
+
+	public double getFiberCapacity() {
+		return fiberCapacity;
+	}
+
+	public double getCableCapacity() {
+		return cableCapacity;
+	}
+
+	/**
+	 * 按交换机对指定的容量<"dpid-dpid", 容量>
+	 */
+	public Map<String, Double> getLinkCapacities() {
+		Map<String, Double> result = new LinkedHashMap<String, Double>();
+		for (Map.Entry<Long, Map<Long, Double>> e : linkCapacities.entrySet()) {
+			for (Map.Entry<Long, Double> c : e.getValue().entrySet()) {
+				result.put(e.getKey() + "-" + c.getKey(), c.getValue());
+			}
+		}
+		return result;
+	}
+}
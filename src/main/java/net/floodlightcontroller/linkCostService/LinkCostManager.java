@@ -1,6 +1,8 @@
 package net.floodlightcontroller.linkCostService;
 
+import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitch.PortChangeType;
 import net.floodlightcontroller.core.IOFSwitchListener;
@@ -11,11 +13,16 @@ import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
+import net.floodlightcontroller.linkCostService.web.LinkCostWebRoutable;
 import net.floodlightcontroller.linkdiscovery.LinkInfo;
+import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.Link;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import org.openflow.protocol.OFMessage;
 import org.openflow.protocol.OFPort;
+import org.openflow.protocol.OFStatisticsReply;
 import org.openflow.protocol.OFStatisticsRequest;
+import org.openflow.protocol.OFType;
 import org.openflow.protocol.statistics.OFPortStatisticsReply;
 import org.openflow.protocol.statistics.OFPortStatisticsRequest;
 import org.openflow.protocol.statistics.OFStatistics;
@@ -24,7 +31,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -37,16 +45,29 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
 	private IThreadPoolService threadPool = null;
 	private SingletonTask  newInstanceTask = null;
 	private ILinkDiscoveryService linkDiscoveryManager = null;
-	private Map<Long, Map<Short, Long[]>> lastTimePortTraffic = new HashMap<Long, Map<Short, Long[]>>();
+	private IRestApiService restApi = null;
+	// 一轮端口统计等待应答的截止时间(ms)
+	protected static int STATS_TIMEOUT = 3000;
 	protected static Logger log = LoggerFactory
 			.getLogger(LinkCostManager.class);
-	private Map<Long, Map<Short, List<Double>>> switchPortRateMap = new HashMap<Long, Map<Short, List<Double>>>();
+	// 各端口的收发速率历史
+	private PortRateHistory portRateHistory;
+	// 每个端口保留的速率样本数
+	protected static int RATE_HISTORY_SIZE = 60;
 	private boolean initialFlag = true;
 
-	//光网络节点集合
-	private static Set<Long> FiberNodeSet = new HashSet<>();
+	//链路容量模型，可通过REST整体替换
+	private volatile LinkCapacityModel capacityModel;
     //每个link的类型
 	private Map<Link, LinkBandwidthType> linkTypeMap = new HashMap<>();
+	//每个link的容量
+	private Map<Link, Double> linkCapacity = new HashMap<>();
+	//由端口速率特性得到的端口容量，随端口状态事件更新
+	private PortCapacityTable portCapacity = new PortCapacityTable();
+	//链路容量的来源：model为只使用容量模型，port为优先使用两端端口速率中的较小值
+	protected static final String CAPACITY_SOURCE_MODEL = "model";
+	protected static final String CAPACITY_SOURCE_PORT = "port";
+	protected static String CAPACITY_SOURCE = CAPACITY_SOURCE_MODEL;
 
 	//当前网络中链路最大剩余带宽
 	private double MaxLinkCompacity;
@@ -55,16 +76,11 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
     private Map<Long, IOFSwitch> switchMap = new HashMap<>();
     private Map<Long, Set<Link>> switchLinks = new HashMap<>();
 	private  Map<Link, LinkInfo> allLinks = new HashMap<>();
+	//最近一次发布的拓扑快照
+	private volatile LinkCostSnapshot snapshot = LinkCostSnapshot.EMPTY;
 
-	//配置类：预先设定光节点set
-	private void setFiberNodeSet(){
-		FiberNodeSet.add(new Long(1));
-		FiberNodeSet.add(new Long(2));
-		FiberNodeSet.add(new Long(3));
-		FiberNodeSet.add(new Long(4));
-		FiberNodeSet.add(new Long(8));
-
-	}
+	//链路权重更新的监听者
+	private List<ILinkCostListener> linkCostListeners = new CopyOnWriteArrayList<>();
 
 	/**
 	 * linkCost的getter方法
@@ -87,26 +103,81 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
         return MaxLinkCompacity;
     }
 
+	@Override
+	public synchronized Map<Link, Double> getLinkCapacities() {
+		return linkCapacity;
+	}
+
 	@Override
 	public synchronized double getLinkCompacity(Link link) {
-		try {
-			return linkTypeMap.get(link).getBandwidth();
-		}catch (Exception e){
+		Double capacity = linkCapacity.get(link);
+		if (capacity == null) {
 			log.error("No such Link in current network");
+			return -1;
 		}
-		return -1;
+		return capacity;
+	}
+
+	@Override
+	public int getPortCapacity(long dpid, short port) {
+		return portCapacity.getCapacity(dpid, port);
+	}
+
+	@Override
+	public LinkCapacityModel getCapacityModel() {
+		return capacityModel;
+	}
+
+	@Override
+	public void setCapacityModel(LinkCapacityModel model) {
+		capacityModel = model;
+		log.info("Link capacity model reloaded: fiber nodes {}, {} link overrides",
+				model.getFiberNodes(), model.getLinkCapacities().size());
 	}
 
     @Override
-    public Map<Long, Set<Link>> getSwitchLinks() {
+    public synchronized Map<Long, Set<Link>> getSwitchLinks() {
         return this.switchLinks;
     }
 
 	@Override
-	public Map<Link, LinkInfo> getLinks() {
+	public synchronized Map<Link, LinkInfo> getLinks() {
 		return this.allLinks;
 	}
 
+	@Override
+	public PortRateHistory getPortRateHistory() {
+		return portRateHistory;
+	}
+
+	@Override
+	public void addListener(ILinkCostListener listener) {
+		linkCostListeners.add(listener);
+	}
+
+	@Override
+	public LinkCostSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	private static void addSwitchLink(Map<Long, Set<Link>> linksBySwitch, long dpid, Link link) {
+		Set<Link> links = linksBySwitch.get(dpid);
+		if (links == null) {
+			links = new HashSet<>();
+			linksBySwitch.put(dpid, links);
+		}
+		links.add(link);
+	}
+
+	/**
+	 * 通知所有监听者链路权重已更新
+	 */
+	private void notifyLinkCostListeners() {
+		for (ILinkCostListener listener : linkCostListeners) {
+			listener.linkCostUpdated();
+		}
+	}
+
 	//	/**
 //	 * linkCostEnergySaving的getter方法
 //	 * @return
@@ -119,48 +190,65 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
      * 工具类：判断链路类型
      */
     public LinkBandwidthType judgeLinkType(Link link){
-        long src = link.getSrc();
-        long dst = link.getDst();
-        if(FiberNodeSet.contains(src)&&FiberNodeSet.contains(dst))  return LinkBandwidthType.FiberLink;
-        else return LinkBandwidthType.CableLink;
+        return capacityModel.getType(link);
     }
 
+	/**
+	 * 链路容量：按交换机对指定的容量优先；容量来源为port时其次取两端端口速率中的较小值，
+	 * 只有一端已知时取该端；最后按链路类型取容量
+	 */
+	private double judgeLinkCapacity(LinkCapacityModel model, Link link) {
+		Double capacity = model.getLinkCapacity(link);
+		if (capacity != null) return capacity;
+		if (CAPACITY_SOURCE_PORT.equals(CAPACITY_SOURCE)) {
+			int src = portCapacity.getCapacity(link.getSrc(), link.getSrcPort());
+			int dst = portCapacity.getCapacity(link.getDst(), link.getDstPort());
+			int speed = (src == 0) ? dst : (dst == 0) ? src : Math.min(src, dst);
+			if (speed > 0) return speed;
+		}
+		return model.getTypeCapacity(link);
+	}
+
 
 	/**
 	 * 更新linkCost的值以及linkType
 	 */
 	public synchronized void updateLinkCost() {
 		if (!initialFlag) {
-			synchronized (switchPortRateMap) {
-				Set<Long> switchIds = switchLinks.keySet(); // 虽然给出的文档中key是switchId，但是并不能完全对应与link中dpid，为正确还是使用link中的dpid
-				Iterator<Long> iteratorSwitchId = switchIds.iterator();
-                linkCost.clear();	//新增
-                MaxLinkCompacity = -1;   //重置最大链路容量
-				while (iteratorSwitchId.hasNext()) {
-					long dpid = iteratorSwitchId.next();
-					Set<Link> links = switchLinks.get(dpid);
-					Iterator<Link> iteratorLink = links.iterator();
-					while (iteratorLink.hasNext()) {
-						Link link = iteratorLink.next();
-						short srcPortNumber = link.getSrcPort();
-						short dstPortNumber = link.getDstPort();
-						long dpidSrc = link.getSrc();
-						long dpidDst = link.getDst();
-						//Double cost = switchPortRateMap.get(dpid1).get(
-							//portNumber).get(0)+ switchPortRateMap.get(dpid1).get(portNumber).get(1);   //选取链路源端口的发送速率和接收速率之和作为这个链路的链路权重
-						Double cost = Math.min(switchPortRateMap.get(dpidSrc).get(srcPortNumber).get(0),switchPortRateMap.get(dpidDst).get(dstPortNumber).get(1));
-						linkCost.put(link, cost);
-                        //更新链路类型，默认为CableLink
-                        linkTypeMap.put(link, judgeLinkType(link));
-                        if (MaxLinkCompacity < linkTypeMap.get(link).getBandwidth()-cost){
-                            MaxLinkCompacity = linkTypeMap.get(link).getBandwidth()-cost;
-                        }
+			Set<Long> switchIds = switchLinks.keySet(); // 虽然给出的文档中key是switchId，但是并不能完全对应与link中dpid，为正确还是使用link中的dpid
+			Iterator<Long> iteratorSwitchId = switchIds.iterator();
+			linkCost.clear();	//新增
+			linkCapacity.clear();
+			LinkCapacityModel model = capacityModel;
+			MaxLinkCompacity = -1;   //重置最大链路容量
+			while (iteratorSwitchId.hasNext()) {
+				long dpid = iteratorSwitchId.next();
+				Set<Link> links = switchLinks.get(dpid);
+				Iterator<Link> iteratorLink = links.iterator();
+				while (iteratorLink.hasNext()) {
+					Link link = iteratorLink.next();
+					//选取链路源端口的发送速率和目的端口的接收速率中的较小值作为这个链路的链路权重
+					double srcRate = portRateHistory.getTxRate(link.getSrc(), link.getSrcPort());
+					double dstRate = portRateHistory.getRxRate(link.getDst(), link.getDstPort());
+					//更新链路类型，默认为CableLink
+					linkTypeMap.put(link, model.getType(link));
+					double capacity = judgeLinkCapacity(model, link);
+					linkCapacity.put(link, capacity);
+					if (Double.isNaN(srcRate) || Double.isNaN(dstRate)) continue;   //端口还没有速率样本
+					double cost = Math.min(srcRate, dstRate);
+					linkCost.put(link, cost);
+					if (MaxLinkCompacity < capacity-cost){
+						MaxLinkCompacity = capacity-cost;
 					}
 				}
 			}
+			//本轮结果整体发布，使用方直接取引用
+			snapshot = LinkCostSnapshot.next(snapshot, switchLinks.keySet(), allLinks.keySet(),
+					linkCost, linkCapacity, MaxLinkCompacity);
 		}
-        else initialFlag=false;  //新增
+		else initialFlag=false;  //新增
 	}
+
 	
 //	public void updateLinkCostEnergySaving(){
 //		if(initialFlag){
@@ -190,95 +278,117 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
 //	}
 
 	/**
-	 * 记录5s内端口的发送速率和接收速率
+	 * 根据本轮与上一轮端口统计的差值计算端口的发送速率和接收速率
+	 * 时间间隔使用两次应答实际到达的时间差，而不是固定的5s
 	 */
 
 	public void mapTrafficToLinkCost() {
-//		if (!initialFlag) { // 当要进行更新linkCost时，就删除linkCost；
-//			linkCost.clear();
-//		}
-		Map<Long, List<OFStatistics>> netTraffic = this.collectTraffic();
-		Set<Long> dpids = netTraffic.keySet(); // 网络中的所有的交换机的dpid；
-
-		Iterator<Long> dpidIterator = dpids.iterator();
-
-		while (dpidIterator.hasNext()) {
-			Long dpid = dpidIterator.next();
-			Iterator<OFStatistics> iteratorOFStatistics = netTraffic.get(dpid)
-					.iterator();
-			HashMap<Short, Long[]> portTraffic = new HashMap<Short, Long[]>();
-			
-			HashMap<Short, List<Double>> portRateMap = new HashMap<Short, List<Double>>();
-
-			while (iteratorOFStatistics.hasNext()) {
-
-				OFPortStatisticsReply portReply = (OFPortStatisticsReply) iteratorOFStatistics
-						.next();
-				short portNumber = portReply.getPortNumber();
-
-				// 由于交换机中的链路都是全双工的，当在计算端口的流量统计信息时，就需要得到某个端口的发送流量和接收流量的最大值
-				Long transmitBytes = portReply.getTransmitBytes();
-				Long receiveBytes = portReply.getReceiveBytes();
-				// 将当前的发送和接收的流量信息进行保存
-				Long[] currentPortTraffic = new Long[2];
-				// 将接受和发送数据的最大值作为判断是否关闭链路的依据
-				currentPortTraffic[0] = transmitBytes;
-				currentPortTraffic[1] = receiveBytes;
-
-				if (!initialFlag) {
-
-					long transmitBytesIn5s = currentPortTraffic[0]
-							- lastTimePortTraffic.get(dpid).get(portNumber)[0];
-					long receiveBytesIn5s = currentPortTraffic[1]
-							- lastTimePortTraffic.get(dpid).get(portNumber)[1];
-					List<Double> portByteRate=new ArrayList<Double>(2);  //这个数组存放着该端口的发送和接收速率
-					
-					Double transmitRate = 8* transmitBytesIn5s/(1024.0 * 1024.0 * 5);  //发送速率
-					Double receiveRate = 8* receiveBytesIn5s/(1024.0 * 1024.0 * 5);   //接受速率
-					
-					portByteRate.add(transmitRate);  //下标为0存放发送速率
-					portByteRate.add(receiveRate);  //下标为1存放接受速率
-					// portByteRate表示在间隔5s内发送的数据总数，以字节的单位进行计算
-					portRateMap.put(portNumber,
-							portByteRate);
+		Map<Long, PortStatsSample> netTraffic = this.collectTraffic();
+
+		for (Map.Entry<Long, PortStatsSample> entry : netTraffic.entrySet()) {
+			long dpid = entry.getKey();
+			PortStatsSample sample = entry.getValue();
+			for (OFStatistics stat : sample.statistics) {
+				OFPortStatisticsReply portReply = (OFPortStatisticsReply) stat;
+				// 端口第一次出现或计数器被重置时，本轮不产生速率
+				portRateHistory.record(dpid, portReply.getPortNumber(),
+						portReply.getTransmitBytes(), portReply.getReceiveBytes(),
+						sample.timestamp);
+			}
+		}
+	}
 
-				}
-				portTraffic.put(portNumber, currentPortTraffic);	//表示总收发信息量
+	/**
+	 * 一台交换机一次端口统计的结果
+	 */
+	protected static class PortStatsSample {
+		// 收到最后一个应答分片的时间(System.nanoTime)
+		final long timestamp;
+		final List<OFStatistics> statistics;
+
+		PortStatsSample(long timestamp, List<OFStatistics> statistics) {
+			this.timestamp = timestamp;
+			this.statistics = statistics;
+		}
+	}
 
-			}
+	/**
+	 * 接收一台交换机的端口统计应答
+	 * 应答可能分成多个分片，最后一个分片到达时记录时间戳并通知等待者
+	 */
+	protected static class PortStatsCallback implements IOFMessageListener {
+		private final long dpid;
+		private final int xid;
+		private final CountDownLatch latch;
+		private final List<OFStatistics> statistics = new ArrayList<OFStatistics>();
+		private PortStatsSample sample = null;
+		private boolean closed = false;
+
+		PortStatsCallback(long dpid, int xid, CountDownLatch latch) {
+			this.dpid = dpid;
+			this.xid = xid;
+			this.latch = latch;
+		}
 
-			if (!initialFlag) {
-				switchPortRateMap.put(dpid, portRateMap);
-			}
-			lastTimePortTraffic.put(dpid, portTraffic);
+		@Override
+		public String getName() {
+			return "linkcostmanager";
+		}
+
+		@Override
+		public boolean isCallbackOrderingPrereq(OFType type, String name) {
+			return false;
+		}
+
+		@Override
+		public boolean isCallbackOrderingPostreq(OFType type, String name) {
+			return false;
 		}
 
-		//initialFlag = initialFlag ? false : true;
+		@Override
+		public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+			if (!(msg instanceof OFStatisticsReply)) return Command.CONTINUE;
+			OFStatisticsReply reply = (OFStatisticsReply) msg;
+			boolean last = (reply.getFlags() & 0x1) == 0;
+			synchronized (this) {
+				if (closed || sample != null) return Command.CONTINUE;
+				statistics.addAll(reply.getStatistics());
+				if (!last) return Command.CONTINUE;
+				sample = new PortStatsSample(System.nanoTime(), statistics);
+			}
+			// 应答已完整，注销回调
+			sw.cancelStatisticsReply(xid);
+			latch.countDown();
+			return Command.CONTINUE;
+		}
 
+		/**
+		 * 结束等待，返回完整的统计结果；未按时完成时返回null，之后到达的分片被忽略
+		 */
+		synchronized PortStatsSample close() {
+			closed = true;
+			return sample;
+		}
 	}
 
 	/***
-	 * 获取交换机各个端口接收的数据包统计信息
-	 * 
+	 * 获取交换机各个端口的统计信息
+	 * 先向所有交换机发出请求再统一等待，所有交换机共用STATS_TIMEOUT的截止时间，
+	 * 截止时仍未应答完的交换机本轮跳过，其上一轮的速率保持不变
 	 */
-	public Map<Long, List<OFStatistics>> collectTraffic() {
-
-		// 获取控制器所连接的所有的交换机的集合
-		Set<Long> switchSet = switchMap.keySet();
-		Iterator<Long> iter = switchSet.iterator();
+	public Map<Long, PortStatsSample> collectTraffic() {
 		// 网络中的流量信息
-		Map<Long, List<OFStatistics>> networkTrafficTemp = new HashMap<Long, List<OFStatistics>>();
+		Map<Long, PortStatsSample> networkTrafficTemp = new HashMap<Long, PortStatsSample>();
+		Map<Long, PortStatsCallback> callbacks = new HashMap<Long, PortStatsCallback>();
+		CountDownLatch latch = new CountDownLatch(switchMap.size());
 
-		// 从网络中获取到所有交换机的端口接收到的数据包的统计，保存到networkTrafficTemp中
-		while (iter.hasNext()) {
-			Long dpid = iter.next();
+		for (Long dpid : switchMap.keySet()) {
 			IOFSwitch sw = floodlightProvider.getSwitch(dpid);
-			// 如果不存在交换机，就返回
-			if (sw == null)
-				return null;
-			Future<List<OFStatistics>> future = null;
-			List<OFStatistics> values = null;
-
+			// 交换机已断开，跳过
+			if (sw == null) {
+				latch.countDown();
+				continue;
+			}
 			OFStatisticsRequest req = new OFStatisticsRequest();
 			req.setStatisticType(OFStatisticsType.PORT);
 			int requestLength = req.getLengthU();
@@ -290,14 +400,33 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
 			requestLength += specificReq.getLength();
 			req.setLengthU(requestLength);
 
+			int xid = sw.getNextTransactionId();
+			PortStatsCallback callback = new PortStatsCallback(dpid, xid, latch);
 			try {
-				future = sw.queryStatistics(req);
-				values = future.get(10, TimeUnit.SECONDS);
+				sw.sendStatsQuery(req, xid, callback);
+				callbacks.put(dpid, callback);
 			} catch (Exception e) {
-				log.error("Failure retrieving statistics from switch " + sw, e);
+				log.error("Failure sending statistics request to switch " + sw, e);
+				sw.cancelStatisticsReply(xid);
+				latch.countDown();
 			}
+		}
 
-			networkTrafficTemp.put(dpid, values);
+		try {
+			latch.await(STATS_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for (PortStatsCallback callback : callbacks.values()) {
+			PortStatsSample sample = callback.close();
+			if (sample != null) {
+				networkTrafficTemp.put(callback.dpid, sample);
+			} else {
+				log.warn("Timed out retrieving port statistics from switch {}", callback.dpid);
+				IOFSwitch sw = floodlightProvider.getSwitch(callback.dpid);
+				if (sw != null) sw.cancelStatisticsReply(callback.xid);
+			}
 		}
 
 		return networkTrafficTemp;
@@ -323,7 +452,12 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
 	@Override
 	public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
 		// TODO Auto-generated method stub
-		return null;
+		Collection<Class<? extends IFloodlightService>> l = new ArrayList<Class<? extends IFloodlightService>>();
+		l.add(IFloodlightProviderService.class);
+		l.add(IThreadPoolService.class);
+		l.add(ILinkDiscoveryService.class);
+		l.add(IRestApiService.class);
+		return l;
 	}
 
 	@Override
@@ -335,7 +469,49 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
 		threadPool = context.getServiceImpl(IThreadPoolService.class);
 		linkDiscoveryManager = context
 				.getServiceImpl(ILinkDiscoveryService.class);
-		setFiberNodeSet();
+		restApi = context.getServiceImpl(IRestApiService.class);
+
+		Map<String, String> configOptions = context.getConfigParams(this);
+		try {
+			String timeout = configOptions.get("statsTimeout");
+			if (timeout != null) {
+				STATS_TIMEOUT = Integer.parseInt(timeout);
+			}
+		} catch (NumberFormatException e) {
+			log.warn("Error parsing stats timeout, using default of {} ms",
+					STATS_TIMEOUT);
+		}
+		try {
+			String historySize = configOptions.get("rateHistorySize");
+			if (historySize != null) {
+				int value = Integer.parseInt(historySize);
+				if (value < 1) throw new NumberFormatException(historySize);
+				RATE_HISTORY_SIZE = value;
+			}
+		} catch (NumberFormatException e) {
+			log.warn("Error parsing rate history size, using default of {}",
+					RATE_HISTORY_SIZE);
+		}
+		portRateHistory = new PortRateHistory(RATE_HISTORY_SIZE);
+		try {
+			capacityModel = LinkCapacityModel.parse(configOptions.get("fiberNodes"),
+					configOptions.get("fiberCapacity"), configOptions.get("cableCapacity"),
+					configOptions.get("linkCapacities"));
+		} catch (IllegalArgumentException e) {
+			capacityModel = LinkCapacityModel.defaultModel();
+			log.warn("Error parsing link capacity model, using default fiber nodes {}",
+					capacityModel.getFiberNodes());
+		}
+		String source = configOptions.get("capacitySource");
+		if (source != null) {
+			source = source.trim();
+			if (CAPACITY_SOURCE_MODEL.equals(source) || CAPACITY_SOURCE_PORT.equals(source)) {
+				CAPACITY_SOURCE = source;
+			} else {
+				log.warn("Unknown capacity source {}, using default of {}",
+						source, CAPACITY_SOURCE);
+			}
+		}
 	}
 
 	@Override
@@ -344,21 +520,28 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
 		// TODO Auto-generated method stub
 		ScheduledExecutorService ses = threadPool.getScheduledExecutor();
 		floodlightProvider.addOFSwitchListener(this);
+		restApi.addRestletRoutable(new LinkCostWebRoutable());
 		// 以T=5为周期进行链路权值的更新操作，这个动作时一直都在进行的；
 		newInstanceTask = new SingletonTask(ses, new Runnable() {
 			public void run() {
 			    switchMap.clear();
-			    switchLinks.clear();
-			    allLinks.clear();
                 switchMap.putAll(floodlightProvider.getAllSwitchMap());
-                synchronized (linkDiscoveryManager) {
-					switchLinks.putAll(linkDiscoveryManager.getSwitchLinks());
-					allLinks.putAll(linkDiscoveryManager.getLinks());
+				//链路发现模块返回的已经是链路表的拷贝，直接使用，交换机到链路的映射由它生成
+				Map<Link, LinkInfo> links = linkDiscoveryManager.getLinks();
+				Map<Long, Set<Link>> linksBySwitch = new HashMap<>();
+				for (Link link : links.keySet()) {
+					addSwitchLink(linksBySwitch, link.getSrc(), link);
+					addSwitchLink(linksBySwitch, link.getDst(), link);
+				}
+				synchronized (LinkCostManager.this) {
+					allLinks = links;
+					switchLinks = linksBySwitch;
 				}
 				try {
 					mapTrafficToLinkCost();
 					updateLinkCost();
 					//updateLinkCostEnergySaving();
+					notifyLinkCostListeners();
 				} catch (Exception e) {
 					e.printStackTrace();
 				} finally {
@@ -377,20 +560,30 @@ public class LinkCostManager implements ILinkCostService, IFloodlightModule,
 
 	@Override
 	public void switchRemoved(long switchId) {
-		// TODO Auto-generated method stub
+		portRateHistory.removeSwitch(switchId);
+		portCapacity.removeSwitch(switchId);
 
 	}
 
 	@Override
 	public void switchActivated(long switchId) {
-		// TODO Auto-generated method stub
+		IOFSwitch sw = floodlightProvider.getSwitch(switchId);
+		if (sw == null) return;
+		for (ImmutablePort port : sw.getPorts()) {
+			portCapacity.update(switchId, port);
+		}
 
 	}
 
 	@Override
 	public void switchPortChanged(long switchId, ImmutablePort port,
 			PortChangeType type) {
-		// TODO Auto-generated method stub
+		//端口速率只在端口状态变化时重新解析
+		if (type == PortChangeType.DELETE) {
+			portCapacity.remove(switchId, port.getPortNumber());
+		} else {
+			portCapacity.update(switchId, port);
+		}
 
 	}
 
@@ -0,0 +1,223 @@
+package net.floodlightcontroller.linkCostService;
+
+import net.floodlightcontroller.routing.Link;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一轮链路权重计算发布的不可变拓扑快照
+ * 交换机按dpid从小到大编号为0..n-1，链路按源交换机以CSR形式存放：
+ * 下标i的出链路为边edgeBegin(i)..edgeEnd(i)-1，每条边带有目的下标、链路、负载和容量
+ *
+ * 每发布一次version加1；交换机集合和链路集合都没有变化时topologyVersion保持不变，
+ * 使用方据此判断能否沿用上一轮的增量结果，拿到引用后无需加锁也无需复制
+ */
+public class LinkCostSnapshot {
+	public static final LinkCostSnapshot EMPTY = new LinkCostSnapshot(0, 0, new long[0],
+			new int[1], new int[0], new Link[0], new double[0], new double[0], -1);
+
+	private final long version;
+	private final long topologyVersion;
+	private final long[] dpids;
+	private final int[] offsets;
+	private final int[] targets;
+	private final Link[] links;
+	// 链路负载(Mbps)，还没有速率样本的链路为NaN
+	private final double[] cost;
+	private final double[] capacity;
+	private final double maxLinkCompacity;
+	// dpid到下标的开放寻址哈希表，空位的值为-1
+	private final long[] dpidKeys;
+	private final int[] dpidIndex;
+	// <链路，负载>，只包含有速率样本的链路
+	private final Map<Link, Double> linkCost;
+
+	private LinkCostSnapshot(long version, long topologyVersion, long[] dpids, int[] offsets,
+			int[] targets, Link[] links, double[] cost, double[] capacity, double maxLinkCompacity) {
+		this.version = version;
+		this.topologyVersion = topologyVersion;
+		this.dpids = dpids;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.links = links;
+		this.cost = cost;
+		this.capacity = capacity;
+		this.maxLinkCompacity = maxLinkCompacity;
+
+		int size = Integer.highestOneBit(Math.max(4, dpids.length * 2)) * 2;
+		dpidKeys = new long[size];
+		dpidIndex = new int[size];
+		Arrays.fill(dpidIndex, -1);
+		for (int i = 0; i < dpids.length; i++) {
+			int slot = hashSlot(dpids[i]);
+			while (dpidIndex[slot] >= 0) slot = (slot + 1) & (size - 1);
+			dpidKeys[slot] = dpids[i];
+			dpidIndex[slot] = i;
+		}
+		Map<Link, Double> costs = new HashMap<Link, Double>(links.length * 2);
+		for (int e = 0; e < links.length; e++) {
+			if (!Double.isNaN(cost[e])) costs.put(links[e], cost[e]);
+		}
+		this.linkCost = Collections.unmodifiableMap(costs);
+	}
+
+	/**
+	 * 在上一个快照的基础上构造新快照
+	 * @param switches 参与计算的交换机
+	 * @param allLinks 链路，端点不在switches中的链路忽略
+	 * @param linkCost <链路，负载>，没有的链路负载记为NaN
+	 * @param linkCapacity <链路，容量>，没有的链路容量记为0
+	 */
+	public static LinkCostSnapshot next(LinkCostSnapshot previous, Collection<Long> switches,
+			Collection<Link> allLinks, Map<Link, Double> linkCost, Map<Link, Double> linkCapacity,
+			double maxLinkCompacity) {
+		long[] dpids = new long[switches.size()];
+		int n = 0;
+		for (Long dpid : switches) {
+			dpids[n++] = dpid;
+		}
+		Arrays.sort(dpids);
+		final Map<Long, Integer> index = new HashMap<Long, Integer>(n * 2);
+		for (int i = 0; i < n; i++) {
+			index.put(dpids[i], i);
+		}
+		List<Link> edges = new ArrayList<Link>(allLinks.size());
+		for (Link link : allLinks) {
+			if (index.containsKey(link.getSrc()) && index.containsKey(link.getDst())) edges.add(link);
+		}
+		//按源下标、目的下标、端口排序，同样的拓扑总是得到同样的数组
+		Collections.sort(edges, new Comparator<Link>() {
+			@Override
+			public int compare(Link a, Link b) {
+				int c = Integer.compare(index.get(a.getSrc()), index.get(b.getSrc()));
+				if (c == 0) c = Integer.compare(index.get(a.getDst()), index.get(b.getDst()));
+				if (c == 0) c = Integer.compare(a.getSrcPort() & 0xffff, b.getSrcPort() & 0xffff);
+				if (c == 0) c = Integer.compare(a.getDstPort() & 0xffff, b.getDstPort() & 0xffff);
+				return c;
+			}
+		});
+		int m = edges.size();
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[m];
+		Link[] links = new Link[m];
+		double[] cost = new double[m];
+		double[] capacity = new double[m];
+		for (int e = 0; e < m; e++) {
+			Link link = edges.get(e);
+			offsets[index.get(link.getSrc()) + 1]++;
+			targets[e] = index.get(link.getDst());
+			links[e] = link;
+			Double c = linkCost.get(link);
+			cost[e] = (c == null) ? Double.NaN : c;
+			Double cap = linkCapacity.get(link);
+			capacity[e] = (cap == null) ? 0 : cap;
+		}
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		long version = previous.version + 1;
+		boolean sameTopology = Arrays.equals(dpids, previous.dpids)
+				&& Arrays.equals(offsets, previous.offsets)
+				&& Arrays.equals(links, previous.links);
+		return new LinkCostSnapshot(version, sameTopology ? previous.topologyVersion : version,
+				dpids, offsets, targets, links, cost, capacity, maxLinkCompacity);
+	}
+
+	private int hashSlot(long dpid) {
+		long h = dpid * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & (dpidKeys.length - 1);
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	public long getTopologyVersion() {
+		return topologyVersion;
+	}
+
+	/**
+	 * 交换机数目
+	 */
+	public int size() {
+		return dpids.length;
+	}
+
+	public int getEdgeCount() {
+		return links.length;
+	}
+
+	public long getDpid(int index) {
+		return dpids[index];
+	}
+
+	/**
+	 * dpid对应的下标，不存在时返回-1，不产生装箱
+	 */
+	public int indexOf(long dpid) {
+		int slot = hashSlot(dpid);
+		while (dpidIndex[slot] >= 0) {
+			if (dpidKeys[slot] == dpid) return dpidIndex[slot];
+			slot = (slot + 1) & (dpidKeys.length - 1);
+		}
+		return -1;
+	}
+
+	public int edgeBegin(int index) {
+		return offsets[index];
+	}
+
+	public int edgeEnd(int index) {
+		return offsets[index + 1];
+	}
+
+	public int getTarget(int edge) {
+		return targets[edge];
+	}
+
+	public Link getLink(int edge) {
+		return links[edge];
+	}
+
+	/**
+	 * 链路负载(Mbps)，没有速率样本时为NaN
+	 */
+	public double getCost(int edge) {
+		return cost[edge];
+	}
+
+	public double getCapacity(int edge) {
+		return capacity[edge];
+	}
+
+	/**
+	 * 下标src到下标dst的第一条边，没有时返回-1
+	 */
+	public int findEdge(int src, int dst) {
+		for (int e = offsets[src]; e < offsets[src + 1]; e++) {
+			if (targets[e] == dst) return e;
+		}
+		return -1;
+	}
+
+	/**
+	 * 当前网络中链路的最大剩余带宽
+	 */
+	public double getMaxLinkCompacity() {
+		return maxLinkCompacity;
+	}
+
+	/**
+	 * <链路，负载>，只包含有速率样本的链路，不可修改
+	 */
+	public Map<Link, Double> getLinkCost() {
+		return linkCost;
+	}
+}
@@ -0,0 +1,70 @@
+package net.floodlightcontroller.linkCostService;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.core.ImmutablePort;
+
+import org.openflow.protocol.OFPhysicalPort.OFPortFeatures;
+
+/**
+ * 由端口速率特性(OFPPF_*)得到的端口容量
+ * 每台交换机一个端口号到容量(Mbps)的PortIntMap，0表示未知；
+ * 只在端口状态变化时更新，链路权重计算时直接查表
+ */
+public class PortCapacityTable {
+	// <dpid, 端口号 -> 容量(Mbps)>
+	private final Map<Long, PortIntMap> capacities = new HashMap<Long, PortIntMap>();
+
+	/**
+	 * 端口容量(Mbps)
+	 * 取当前速率特性中的最高速率，交换机没有报告当前速率时取通告的速率，
+	 * 端口未启用或没有速率特性时返回0
+	 */
+	public static int speedOf(ImmutablePort port) {
+		if (!port.isEnabled()) return 0;
+		int speed = maxSpeed(port.getCurrentFeatures());
+		if (speed == 0) speed = maxSpeed(port.getAdvertisedFeatures());
+		return speed;
+	}
+
+	private static int maxSpeed(Set<OFPortFeatures> features) {
+		long bps = 0;
+		for (OFPortFeatures f : features) {
+			bps = Math.max(bps, f.getSpeed().getSpeedBps());
+		}
+		return (int) (bps / PortRateHistory.BITS_PER_MBPS);
+	}
+
+	/**
+	 * 按端口当前的特性更新容量
+	 */
+	public synchronized void update(long dpid, ImmutablePort port) {
+		int speed = speedOf(port);
+		PortIntMap ports = capacities.get(dpid);
+		if (ports == null) {
+			if (speed == 0) return;
+			ports = new PortIntMap();
+			capacities.put(dpid, ports);
+		}
+		ports.put(port.getPortNumber(), speed);
+	}
+
+	public synchronized void remove(long dpid, short port) {
+		PortIntMap ports = capacities.get(dpid);
+		if (ports != null) ports.put(port, 0);
+	}
+
+	public synchronized void removeSwitch(long dpid) {
+		capacities.remove(dpid);
+	}
+
+	/**
+	 * 端口容量(Mbps)，未知时返回0
+	 */
+	public synchronized int getCapacity(long dpid, short port) {
+		PortIntMap ports = capacities.get(dpid);
+		return (ports == null) ? 0 : ports.get(port);
+	}
+}
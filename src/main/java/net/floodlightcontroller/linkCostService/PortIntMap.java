@@ -0,0 +1,89 @@
+package net.floodlightcontroller.linkCostService;
+
+import java.util.Arrays;
+
+/**
+ * 端口号到int值的开放寻址散列表，值为0表示没有记录
+ * 占用的内存只与端口数成比例，端口号可以是OFPP_LOCAL(0xfffe)等保留端口，
+ * 不会因为保留端口而按端口号展开成65535项的数组
+ */
+class PortIntMap {
+	private static final int EMPTY = -1;
+
+	// 无符号端口号，EMPTY表示空位
+	private int[] keys;
+	private int[] values;
+	private int size = 0;
+
+	PortIntMap() {
+		keys = new int[8];
+		Arrays.fill(keys, EMPTY);
+		values = new int[8];
+	}
+
+	private static int hash(int p) {
+		int h = p * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int indexOf(int p) {
+		int mask = keys.length - 1;
+		int i = hash(p) & mask;
+		while (keys[i] != EMPTY && keys[i] != p) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	int get(short port) {
+		int i = indexOf(port & 0xffff);
+		return (keys[i] == EMPTY) ? 0 : values[i];
+	}
+
+	void put(short port, int value) {
+		int p = port & 0xffff;
+		int i = indexOf(p);
+		if (keys[i] == EMPTY) {
+			if (value == 0) return;
+			//装载率不超过1/2
+			if (2 * (size + 1) > keys.length) {
+				grow();
+				i = indexOf(p);
+			}
+			keys[i] = p;
+			size++;
+		}
+		values[i] = value;
+	}
+
+	/**
+	 * 值不为0的端口号，按无符号端口号升序排列
+	 */
+	short[] ports() {
+		int[] found = new int[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != EMPTY && values[i] != 0) found[n++] = keys[i];
+		}
+		Arrays.sort(found, 0, n);
+		short[] result = new short[n];
+		for (int k = 0; k < n; k++) {
+			result[k] = (short) found[k];
+		}
+		return result;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		values = new int[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == EMPTY) continue;
+			int j = indexOf(oldKeys[i]);
+			keys[j] = oldKeys[i];
+			values[j] = oldValues[i];
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package net.floodlightcontroller.linkCostService;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 端口速率的定长历史记录
+ * 每个(dpid, 端口)占用一个槽位，保存上一次的收发字节计数以及最近capacity个周期的收发速率(Mbps)，
+ * 所有数据都放在按槽位展开的基本类型数组中，槽位slot的第k个样本位于下标slot*capacity+k，
+ * 内存只随端口数增长，与运行时间无关
+ */
+public class PortRateHistory {
+	// 1Mbps的比特数，速率、端口容量和链路容量都使用十进制Mbps，三者可以直接相减
+	public static final long BITS_PER_MBPS = 1000000L;
+
+	private final int capacity;
+
+	// <dpid, 端口号 -> 槽位+1>，0表示该端口还没有槽位
+	private final Map<Long, PortIntMap> portSlots = new HashMap<Long, PortIntMap>();
+	private int[] freeSlots = new int[0];
+	private int freeCount = 0;
+	private int slotCount = 0;
+
+	// 上一次统计的发送/接收字节数和应答到达时间(ns)
+	private long[] lastTx = new long[0];
+	private long[] lastRx = new long[0];
+	private long[] lastTime = new long[0];
+	private boolean[] hasLast = new boolean[0];
+	// 速率环形缓冲
+	private double[] txRate = new double[0];
+	private double[] rxRate = new double[0];
+	// 每个速率样本的时间(ms)
+	private long[] sampleTime = new long[0];
+	private int[] count = new int[0];
+	private int[] head = new int[0];
+
+	/**
+	 * @param capacity 每个端口保留的速率样本数
+	 */
+	public PortRateHistory(int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * 记录一次端口计数，与上一次计数之差除以实际经过的时间得到速率
+	 * 端口第一次出现或计数器被重置时只记录计数，不产生速率样本
+	 * @param timeNanos 统计应答到达的时间(System.nanoTime)
+	 * @return 是否产生了新的速率样本
+	 */
+	public synchronized boolean record(long dpid, short port, long txBytes, long rxBytes,
+			long timeNanos) {
+		int slot = slotOf(dpid, port, true);
+		boolean sampled = false;
+		if (hasLast[slot]) {
+			double interval = (timeNanos - lastTime[slot]) / 1e9;
+			if (interval > 0 && txBytes >= lastTx[slot] && rxBytes >= lastRx[slot]) {
+				int pos = slot * capacity + head[slot];
+				txRate[pos] = 8 * (txBytes - lastTx[slot]) / (BITS_PER_MBPS * interval);
+				rxRate[pos] = 8 * (rxBytes - lastRx[slot]) / (BITS_PER_MBPS * interval);
+				sampleTime[pos] = System.currentTimeMillis();
+				head[slot] = (head[slot] + 1) % capacity;
+				if (count[slot] < capacity) count[slot]++;
+				sampled = true;
+			}
+		}
+		lastTx[slot] = txBytes;
+		lastRx[slot] = rxBytes;
+		lastTime[slot] = timeNanos;
+		hasLast[slot] = true;
+		return sampled;
+	}
+
+	/**
+	 * 最近一个周期的发送速率(Mbps)，没有样本时返回NaN
+	 */
+	public synchronized double getTxRate(long dpid, short port) {
+		return latest(txRate, dpid, port);
+	}
+
+	/**
+	 * 最近一个周期的接收速率(Mbps)，没有样本时返回NaN
+	 */
+	public synchronized double getRxRate(long dpid, short port) {
+		return latest(rxRate, dpid, port);
+	}
+
+	/**
+	 * 按时间先后返回端口的速率历史
+	 * @param transmit true为发送速率，false为接收速率
+	 */
+	public synchronized double[] getHistory(long dpid, short port, boolean transmit) {
+		int slot = slotOf(dpid, port, false);
+		if (slot < 0) return new double[0];
+		return ordered(transmit ? txRate : rxRate, slot);
+	}
+
+	/**
+	 * 按时间先后返回速率样本的时间戳(ms)，与getHistory一一对应
+	 */
+	public synchronized long[] getHistoryTime(long dpid, short port) {
+		int slot = slotOf(dpid, port, false);
+		if (slot < 0) return new long[0];
+		int n = count[slot];
+		long[] result = new long[n];
+		int start = (head[slot] - n + capacity) % capacity;
+		for (int k = 0; k < n; k++) {
+			result[k] = sampleTime[slot * capacity + (start + k) % capacity];
+		}
+		return result;
+	}
+
+	/**
+	 * 历史窗口内速率的百分位数(最近秩法)，没有样本时返回NaN
+	 * @param percentile 0到100之间
+	 */
+	public synchronized double getPercentile(long dpid, short port, boolean transmit,
+			double percentile) {
+		int slot = slotOf(dpid, port, false);
+		if (slot < 0 || count[slot] == 0) return Double.NaN;
+		double[] values = ordered(transmit ? txRate : rxRate, slot);
+		Arrays.sort(values);
+		int rank = (int) Math.ceil(percentile / 100.0 * values.length);
+		return values[Math.min(values.length - 1, Math.max(0, rank - 1))];
+	}
+
+	/**
+	 * 当前记录的<dpid, 端口号>
+	 */
+	public synchronized Map<Long, short[]> getPorts() {
+		Map<Long, short[]> result = new HashMap<Long, short[]>();
+		for (Map.Entry<Long, PortIntMap> e : portSlots.entrySet()) {
+			result.put(e.getKey(), e.getValue().ports());
+		}
+		return result;
+	}
+
+	/**
+	 * 交换机断开后释放其全部端口的槽位
+	 */
+	public synchronized void removeSwitch(long dpid) {
+		PortIntMap slots = portSlots.remove(dpid);
+		if (slots == null) return;
+		for (short port : slots.ports()) {
+			freeSlots[freeCount++] = slots.get(port) - 1;
+		}
+	}
+
+	private double latest(double[] rates, long dpid, short port) {
+		int slot = slotOf(dpid, port, false);
+		if (slot < 0 || count[slot] == 0) return Double.NaN;
+		return rates[slot * capacity + (head[slot] + capacity - 1) % capacity];
+	}
+
+	private double[] ordered(double[] rates, int slot) {
+		int n = count[slot];
+		double[] result = new double[n];
+		int start = (head[slot] - n + capacity) % capacity;
+		for (int k = 0; k < n; k++) {
+			result[k] = rates[slot * capacity + (start + k) % capacity];
+		}
+		return result;
+	}
+
+	/**
+	 * 查找端口的槽位，create为true时为新端口分配槽位，否则找不到时返回-1
+	 */
+	private int slotOf(long dpid, short port, boolean create) {
+		PortIntMap slots = portSlots.get(dpid);
+		int s = (slots == null) ? 0 : slots.get(port);
+		if (s != 0) return s - 1;
+		if (!create) return -1;
+		if (slots == null) {
+			slots = new PortIntMap();
+			portSlots.put(dpid, slots);
+		}
+		int slot = allocate();
+		slots.put(port, slot + 1);
+		return slot;
+	}
+
+	private int allocate() {
+		if (freeCount == 0) grow();
+		int slot = freeSlots[--freeCount];
+		hasLast[slot] = false;
+		count[slot] = 0;
+		head[slot] = 0;
+		return slot;
+	}
+
+	private void grow() {
+		int n = Math.max(16, slotCount * 2);
+		lastTx = Arrays.copyOf(lastTx, n);
+		lastRx = Arrays.copyOf(lastRx, n);
+		lastTime = Arrays.copyOf(lastTime, n);
+		hasLast = Arrays.copyOf(hasLast, n);
+		count = Arrays.copyOf(count, n);
+		head = Arrays.copyOf(head, n);
+		txRate = Arrays.copyOf(txRate, n * capacity);
+		rxRate = Arrays.copyOf(rxRate, n * capacity);
+		sampleTime = Arrays.copyOf(sampleTime, n * capacity);
+		freeSlots = Arrays.copyOf(freeSlots, n);
+		for (int s = n - 1; s >= slotCount; s--) {
+			freeSlots[freeCount++] = s;
+		}
+		slotCount = n;
+	}
+}
@@ -0,0 +1,68 @@
+package net.floodlightcontroller.linkCostService.web;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import net.floodlightcontroller.linkCostService.ILinkCostService;
+import net.floodlightcontroller.linkCostService.LinkCapacityModel;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+
+/**
+ * 查询或重新加载链路容量模型
+ * POST的内容与模块配置项相同，例如
+ * {"fiberNodes":"1,2,3", "fiberCapacity":"8", "cableCapacity":"5", "linkCapacities":"1-2=10"}，
+ * 没有给出的项使用默认值
+ */
+public class LinkCapacityResource extends ServerResource {
+
+	@Get("json")
+	public LinkCapacityModel retrieve() {
+		ILinkCostService linkCost = (ILinkCostService) getContext().getAttributes().
+				get(ILinkCostService.class.getCanonicalName());
+		return linkCost.getCapacityModel();
+	}
+
+	@Post("json")
+	public LinkCapacityModel reload(String entity) {
+		ILinkCostService linkCost = (ILinkCostService) getContext().getAttributes().
+				get(ILinkCostService.class.getCanonicalName());
+		LinkCapacityModel model;
+		try {
+			Map<String, Object> config = new ObjectMapper().readValue(entity,
+					new TypeReference<Map<String, Object>>() {});
+			model = LinkCapacityModel.parse(stringOf(config.get("fiberNodes")),
+					stringOf(config.get("fiberCapacity")), stringOf(config.get("cableCapacity")),
+					stringOf(config.get("linkCapacities")));
+		} catch (IOException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid JSON");
+			return null;
+		} catch (IllegalArgumentException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+			return null;
+		}
+		linkCost.setCapacityModel(model);
+		return model;
+	}
+
+	/**
+	 * 配置项可以写成字符串、数值或数组
+	 */
+	private static String stringOf(Object value) {
+		if (value instanceof Collection) {
+			StringBuilder sb = new StringBuilder();
+			for (Object item : (Collection<?>) value) {
+				if (sb.length() > 0) sb.append(',');
+				sb.append(item);
+			}
+			return sb.toString();
+		}
+		return (value == null) ? null : value.toString();
+	}
+}
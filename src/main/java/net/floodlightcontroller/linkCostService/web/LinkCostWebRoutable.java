@@ -0,0 +1,28 @@
+package net.floodlightcontroller.linkCostService.web;
+
+import net.floodlightcontroller.restserver.RestletRoutable;
+
+import org.restlet.Context;
+import org.restlet.routing.Router;
+
+public class LinkCostWebRoutable implements RestletRoutable {
+	/**
+	 * Create the Restlet router and bind to the proper resources.
+	 */
+	@Override
+	public Router getRestlet(Context context) {
+		Router router = new Router(context);
+		// dpid和port都可以为all
+		router.attach("/portrate/{dpid}/{port}/json", PortRateResource.class);
+		router.attach("/capacity/json", LinkCapacityResource.class);
+		return router;
+	}
+
+	/**
+	 * Set the base path for the link cost service
+	 */
+	@Override
+	public String basePath() {
+		return "/wm/linkcost";
+	}
+}
@@ -0,0 +1,81 @@
+package net.floodlightcontroller.linkCostService.web;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.linkCostService.ILinkCostService;
+import net.floodlightcontroller.linkCostService.PortRateHistory;
+
+import org.openflow.util.HexString;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * 查询端口收发速率的百分位数和历史
+ * 指定单个端口时返回完整历史，dpid或port为all时只返回统计值
+ */
+public class PortRateResource extends ServerResource {
+	private static final double[] PERCENTILES = { 50, 90, 95, 99 };
+
+	@Get("json")
+	public List<Map<String, Object>> retrieve() {
+		ILinkCostService linkCost = (ILinkCostService) getContext().getAttributes().
+				get(ILinkCostService.class.getCanonicalName());
+		List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+		PortRateHistory history = (linkCost == null) ? null : linkCost.getPortRateHistory();
+		if (history == null) return result;
+
+		String dpidStr = (String) getRequestAttributes().get("dpid");
+		String portStr = (String) getRequestAttributes().get("port");
+		Long dpidFilter = null;
+		Short portFilter = null;
+		try {
+			if (!"all".equalsIgnoreCase(dpidStr)) dpidFilter = HexString.toLong(dpidStr);
+			if (!"all".equalsIgnoreCase(portStr)) portFilter = Short.valueOf(portStr);
+		} catch (NumberFormatException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+			return result;
+		}
+		boolean withHistory = dpidFilter != null && portFilter != null;
+
+		for (Map.Entry<Long, short[]> e : history.getPorts().entrySet()) {
+			long dpid = e.getKey();
+			if (dpidFilter != null && dpidFilter != dpid) continue;
+			for (short port : e.getValue()) {
+				if (portFilter != null && portFilter != port) continue;
+				Map<String, Object> entry = new LinkedHashMap<String, Object>();
+				entry.put("dpid", HexString.toHexString(dpid));
+				entry.put("port", port & 0xffff);
+				entry.put("tx", rateStats(history, dpid, port, true, withHistory));
+				entry.put("rx", rateStats(history, dpid, port, false, withHistory));
+				if (withHistory) {
+					entry.put("time", history.getHistoryTime(dpid, port));
+				}
+				result.add(entry);
+			}
+		}
+		return result;
+	}
+
+	private static Map<String, Object> rateStats(PortRateHistory history, long dpid,
+			short port, boolean transmit, boolean withHistory) {
+		Map<String, Object> stats = new LinkedHashMap<String, Object>();
+		double[] values = history.getHistory(dpid, port, transmit);
+		stats.put("samples", values.length);
+		if (values.length > 0) {
+			stats.put("current", values[values.length - 1]);
+			Map<String, Double> percentiles = new HashMap<String, Double>();
+			for (double p : PERCENTILES) {
+				percentiles.put("p" + (int) p,
+						history.getPercentile(dpid, port, transmit, p));
+			}
+			stats.put("percentiles", percentiles);
+		}
+		if (withHistory) stats.put("history", values);
+		return stats;
+	}
+}
@@ -0,0 +1,258 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 主机IPv4地址到接入点(dpid, 端口)的并发索引
+ * 按地址哈希分成若干段，每段是一张以int为键的开放寻址表，键和值都存放在基本类型数组中，
+ * 读写只锁住所在的段；总条目数有上限，段满时淘汰该段中最久未出现的主机
+ */
+public class AttachmentIndex {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int maxPerSegment;
+
+    /**
+     * 某一时刻全部条目的拷贝，第i个主机为(ips[i], dpids[i], ports[i])
+     */
+    public static class Entries {
+        public final int size;
+        public final int[] ips;
+        public final long[] dpids;
+        public final short[] ports;
+
+        Entries(int size, int[] ips, long[] dpids, short[] ports) {
+            this.size = size;
+            this.ips = ips;
+            this.dpids = dpids;
+            this.ports = ports;
+        }
+    }
+
+    /**
+     * 线性探测的哈希段，删除时把后续条目前移，不留墓碑
+     */
+    private static class Segment {
+        int[] keys = new int[16];
+        long[] dpids = new long[16];
+        short[] ports = new short[16];
+        long[] lastSeen = new long[16];
+        boolean[] used = new boolean[16];
+        int count = 0;
+
+        int find(int ip) {
+            int mask = keys.length - 1;
+            for (int slot = mix(ip) & mask; used[slot]; slot = (slot + 1) & mask) {
+                if (keys[slot] == ip) return slot;
+            }
+            return -1;
+        }
+
+        void put(int ip, long dpid, short port, long now) {
+            if ((count + 1) * 2 > keys.length) resize(keys.length * 2);
+            int mask = keys.length - 1;
+            int slot = mix(ip) & mask;
+            while (used[slot] && keys[slot] != ip) slot = (slot + 1) & mask;
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = ip;
+                count++;
+            }
+            dpids[slot] = dpid;
+            ports[slot] = port;
+            lastSeen[slot] = now;
+        }
+
+        void removeAt(int slot) {
+            int mask = keys.length - 1;
+            used[slot] = false;
+            count--;
+            //把探测链上后面的条目移到空出的位置
+            int hole = slot;
+            for (int cur = (slot + 1) & mask; used[cur]; cur = (cur + 1) & mask) {
+                int home = mix(keys[cur]) & mask;
+                //home不在(hole, cur]区间内时，该条目可以前移到hole
+                boolean movable = (hole <= cur) ? (home <= hole || home > cur)
+                                                : (home <= hole && home > cur);
+                if (movable) {
+                    keys[hole] = keys[cur];
+                    dpids[hole] = dpids[cur];
+                    ports[hole] = ports[cur];
+                    lastSeen[hole] = lastSeen[cur];
+                    used[hole] = true;
+                    used[cur] = false;
+                    hole = cur;
+                }
+            }
+        }
+
+        int oldestSlot() {
+            int oldest = -1;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (used[slot] && (oldest < 0 || lastSeen[slot] < lastSeen[oldest])) oldest = slot;
+            }
+            return oldest;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            long[] oldDpids = dpids;
+            short[] oldPorts = ports;
+            long[] oldSeen = lastSeen;
+            boolean[] oldUsed = used;
+            keys = new int[capacity];
+            dpids = new long[capacity];
+            ports = new short[capacity];
+            lastSeen = new long[capacity];
+            used = new boolean[capacity];
+            count = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) put(oldKeys[i], oldDpids[i], oldPorts[i], oldSeen[i]);
+            }
+        }
+    }
+
+    /**
+     * @param maxHosts 最多记录的主机数
+     */
+    public AttachmentIndex(int maxHosts) {
+        if (maxHosts < 1) throw new IllegalArgumentException("maxHosts must be positive");
+        this.maxPerSegment = (maxHosts + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    private static int mix(int ip) {
+        int h = ip * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segmentFor(int ip) {
+        return segments[(ip * 0x9E3779B9) >>> (32 - SEGMENT_BITS)];
+    }
+
+    /**
+     * 登记或更新主机的接入点
+     * @param now 主机最近出现的时间(ms)
+     */
+    public void put(int ip, long dpid, short port, long now) {
+        Segment seg = segmentFor(ip);
+        synchronized (seg) {
+            if (seg.find(ip) < 0 && seg.count >= maxPerSegment) {
+                seg.removeAt(seg.oldestSlot());
+            }
+            seg.put(ip, dpid, port, now);
+        }
+    }
+
+    /**
+     * 刷新已登记主机的最近出现时间，未登记的主机忽略
+     */
+    public void touch(int ip, long now) {
+        Segment seg = segmentFor(ip);
+        synchronized (seg) {
+            int slot = seg.find(ip);
+            if (slot >= 0 && seg.lastSeen[slot] < now) seg.lastSeen[slot] = now;
+        }
+    }
+
+    public void remove(int ip) {
+        Segment seg = segmentFor(ip);
+        synchronized (seg) {
+            int slot = seg.find(ip);
+            if (slot >= 0) seg.removeAt(slot);
+        }
+    }
+
+    /**
+     * 查询主机的接入点，未登记时返回null
+     */
+    public SwitchPort get(int ip) {
+        Segment seg = segmentFor(ip);
+        synchronized (seg) {
+            int slot = seg.find(ip);
+            if (slot < 0) return null;
+            return new SwitchPort(seg.dpids[slot], seg.ports[slot] & 0xffff);
+        }
+    }
+
+    /**
+     * 删除最近出现时间早于cutoff的主机
+     * @return 删除的条目数
+     */
+    public int evictOlderThan(long cutoff) {
+        int evicted = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                for (int slot = 0; slot < seg.keys.length; ) {
+                    if (seg.used[slot] && seg.lastSeen[slot] < cutoff) {
+                        //删除后后续条目可能前移到当前位置，需要重新检查
+                        seg.removeAt(slot);
+                        evicted++;
+                    } else {
+                        slot++;
+                    }
+                }
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                size += seg.count;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 拷贝当前全部条目，每一段内部是一致的
+     */
+    public Entries entries() {
+        int capacity = size() + SEGMENTS;
+        int[] ips = new int[capacity];
+        long[] dpids = new long[capacity];
+        short[] ports = new short[capacity];
+        int n = 0;
+        for (Segment seg : segments) {
+            synchronized (seg) {
+                if (n + seg.count > ips.length) {
+                    int grow = Math.max(ips.length * 2, n + seg.count);
+                    ips = Arrays.copyOf(ips, grow);
+                    dpids = Arrays.copyOf(dpids, grow);
+                    ports = Arrays.copyOf(ports, grow);
+                }
+                for (int slot = 0; slot < seg.keys.length; slot++) {
+                    if (!seg.used[slot]) continue;
+                    ips[n] = seg.keys[slot];
+                    dpids[n] = seg.dpids[slot];
+                    ports[n] = seg.ports[slot];
+                    n++;
+                }
+            }
+        }
+        return new Entries(n, ips, dpids, ports);
+    }
+
+    /**
+     * 以Map形式返回当前全部条目的拷贝
+     */
+    public Map<Integer, SwitchPort> toMap() {
+        Entries e = entries();
+        Map<Integer, SwitchPort> map = new HashMap<>(e.size * 2);
+        for (int i = 0; i < e.size; i++) {
+            map.put(e.ips[i], new SwitchPort(e.dpids[i], e.ports[i] & 0xffff));
+        }
+        return map;
+    }
+}
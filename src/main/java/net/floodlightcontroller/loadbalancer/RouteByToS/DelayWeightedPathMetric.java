@@ -0,0 +1,78 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import java.util.BitSet;
+
+/**
+ * 带宽/时延加权的最短路
+ * 链路代价 = hopCost + 1/剩余带宽，后一项按M/M/1排队时延与剩余带宽成反比估计，
+ * 剩余带宽越少的链路代价越高；对每个目的节点在反向图上做Dijkstra
+ */
+public class DelayWeightedPathMetric implements IPathMetric {
+    public static final String NAME = "delay";
+    // 剩余带宽的下限(Mbps)，避免除零
+    private static final double MIN_RESIDUAL = 1e-3;
+
+    // 每一跳固定的传播/处理代价
+    private final double hopCost;
+
+    public DelayWeightedPathMetric() {
+        this(1.0);
+    }
+
+    public DelayWeightedPathMetric(double hopCost) {
+        this.hopCost = hopCost;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * 链路x->y的代价
+     */
+    public double linkCost(LinkGraph graph, int x, int y) {
+        return hopCost + 1.0 / Math.max(MIN_RESIDUAL, graph.getResidual(x, y));
+    }
+
+    @Override
+    public IRouteTable compute(LinkGraph graph, IRouteTable previous, BitSet changedDst) {
+        int n = graph.size();
+        int[] next = new int[n * n];
+        double[] cost = new double[n * n];
+        boolean[] done = new boolean[n];
+        for (int d = 0; d < n; d++) {
+            for (int i = 0; i < n; i++) {
+                cost[i * n + d] = Double.POSITIVE_INFINITY;
+                next[i * n + d] = -1;
+                done[i] = false;
+            }
+            cost[d * n + d] = 0;
+            next[d * n + d] = d;
+            //邻接矩阵上的Dijkstra，每次取未确定节点中代价最小的一个
+            for (int round = 0; round < n; round++) {
+                int y = -1;
+                double min = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < n; i++) {
+                    if (!done[i] && cost[i * n + d] < min) {
+                        min = cost[i * n + d];
+                        y = i;
+                    }
+                }
+                if (y < 0) break;
+                done[y] = true;
+                for (int x = 0; x < n; x++) {
+                    if (done[x] || !graph.isOpen(x, y)) continue;
+                    double c = min + linkCost(graph, x, y);
+                    if (c < cost[x * n + d]) {
+                        cost[x * n + d] = c;
+                        next[x * n + d] = y;
+                    }
+                }
+            }
+        }
+        PathTable table = new PathTable(n, next, cost);
+        PathTable.diff(previous, table, changedDst);
+        return (previous != null && changedDst.isEmpty()) ? previous : table;
+    }
+}
@@ -0,0 +1,233 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.linkCostService.LinkCostSnapshot;
+import net.floodlightcontroller.linkCostService.PortRateHistory;
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleKey;
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionOutput;
+import org.openflow.protocol.statistics.OFFlowStatisticsReply;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由ToS规则的流统计估计(入口交换机, 出口交换机, ToS)流量需求矩阵
+ *
+ * ToS规则只匹配目的前缀和ToS，同一ToS下到同一目的的规则沿路径构成一棵树，
+ * 因此交换机s上某条规则的速率是经过s到该目的的流量，减去上游交换机转发到s的部分即为从s进入网络的流量：
+ *   需求[s][e][t] = 经过s到出口e的流量[t] - 邻居转发到s的到出口e的流量[t]
+ * 规则的出口交换机由前缀内主机的接入点确定，前缀覆盖多个出口时按主机数平分；
+ * 同一目的在某台交换机上用了不匹配ToS的规则时，按ToS的差值先分配，剩余部分记在不区分级别的一列，
+ * 各列之和始终等于总的入口流量
+ *
+ * 速率按规则自身的持续时间计算，不受轮询时延影响；结果按alpha做指数平滑，本轮没有应答的交换机保留上一轮的值
+ * 非线程安全，由轮询线程单独使用
+ */
+public class DemandEstimator {
+    private final double alpha;
+    // 各交换机上每条规则上一次的计数<dpid, <规则, {字节数, 持续时间(ns)}>>
+    private Map<Long, Map<FlowRuleKey, long[]>> lastCounters = new HashMap<>();
+    private DemandMatrix current = DemandMatrix.EMPTY;
+
+    /**
+     * @param alpha 新样本的权重，取值(0, 1]，为1时不做平滑
+     */
+    public DemandEstimator(double alpha) {
+        if (alpha <= 0 || alpha > 1) throw new IllegalArgumentException("alpha must be in (0, 1]");
+        this.alpha = alpha;
+    }
+
+    public DemandMatrix getCurrent() {
+        return current;
+    }
+
+    /**
+     * 用一轮流统计更新需求矩阵
+     * @param stats 本轮应答完整的交换机上RouteByToS下发的规则<dpid, 规则统计>
+     * @param topology 拓扑快照，用于确定交换机下标和出端口对应的下一跳
+     * @param hosts 主机接入点，用于确定规则的出口交换机
+     * @param levels 全部ToS级别
+     * @param now 当前时间(ms)
+     * @return 新的需求矩阵
+     */
+    public DemandMatrix update(Map<Long, List<OFFlowStatisticsReply>> stats, LinkCostSnapshot topology,
+                               AttachmentIndex.Entries hosts, Collection<Byte> levels, long now) {
+        int n = topology.size();
+        long[] dpids = new long[n];
+        for (int i = 0; i < n; i++) {
+            dpids[i] = topology.getDpid(i);
+        }
+        byte[] columns = new byte[levels.size() + 1];
+        int L = 0;
+        for (Byte ToS : levels) {
+            columns[L++] = ToS;
+        }
+        columns[L++] = FlowRuleKey.ANY_TOS;
+        int[] levelIndex = new int[256];
+        Arrays.fill(levelIndex, -1);
+        for (int t = 0; t < L; t++) {
+            levelIndex[columns[t] & 0xff] = t;
+        }
+
+        //主机按无符号地址排序，便于查找前缀内的主机
+        long[] order = new long[hosts.size];
+        for (int h = 0; h < hosts.size; h++) {
+            order[h] = ((hosts.ips[h] & 0xffffffffL) << 31) | h;
+        }
+        Arrays.sort(order);
+        long[] hostIp = new long[hosts.size];
+        int[] hostEgress = new int[hosts.size];
+        for (int h = 0; h < hosts.size; h++) {
+            hostIp[h] = order[h] >>> 31;
+            hostEgress[h] = topology.indexOf(hosts.dpids[(int) (order[h] & 0x7fffffff)]);
+        }
+
+        double[] transit = new double[n * n * L];
+        double[] inflow = new double[n * n * L];
+        boolean[] sampled = new boolean[n];
+        int[] egressCount = new int[n];
+        Map<Long, Map<FlowRuleKey, long[]>> counters = new HashMap<>();
+        for (Map.Entry<Long, List<OFFlowStatisticsReply>> e : stats.entrySet()) {
+            int s = topology.indexOf(e.getKey());
+            if (s < 0) continue;
+            sampled[s] = true;
+            Map<FlowRuleKey, long[]> last = lastCounters.get(e.getKey());
+            Map<FlowRuleKey, long[]> swCounters = new HashMap<>();
+            counters.put(e.getKey(), swCounters);
+            for (OFFlowStatisticsReply reply : e.getValue()) {
+                FlowRuleKey key = FlowRuleKey.fromMatch(reply.getMatch());
+                if (key == null) continue;
+                int t = levelIndex[key.getToS() & 0xff];
+                if (t < 0) continue;
+                long bytes = reply.getByteCount();
+                long duration = (reply.getDurationSeconds() & 0xffffffffL) * 1000000000L
+                        + (reply.getDurationNanoseconds() & 0xffffffffL);
+                swCounters.put(key, new long[] { bytes, duration });
+                long[] prev = (last == null) ? null : last.get(key);
+                //规则重新下发后计数从0开始，此时与第一次出现一样用安装以来的平均速率
+                if (prev == null || bytes < prev[0] || duration <= prev[1]) prev = new long[] { 0, 0 };
+                if (duration <= prev[1]) continue;
+                double rate = 8 * (bytes - prev[0])
+                        / (PortRateHistory.BITS_PER_MBPS * ((duration - prev[1]) / 1e9));
+                if (rate <= 0) continue;
+
+                int next = nextHop(topology, s, outPort(reply));
+                long lo = key.getDstIp() & 0xffffffffL;
+                long hi = lo + (1L << (32 - key.getMaskLen())) - 1;
+                int first = lowerBound(hostIp, lo);
+                //按出口交换机统计前缀内的主机数
+                int total = 0;
+                for (int h = first; h < hostIp.length && hostIp[h] <= hi; h++) {
+                    if (hostEgress[h] < 0) continue;
+                    egressCount[hostEgress[h]]++;
+                    total++;
+                }
+                if (total == 0) continue;
+                for (int h = first; h < hostIp.length && hostIp[h] <= hi; h++) {
+                    int egress = hostEgress[h];
+                    if (egress < 0 || egressCount[egress] == 0) continue;
+                    double share = rate * egressCount[egress] / total;
+                    egressCount[egress] = 0;
+                    transit[(s * n + egress) * L + t] += share;
+                    if (next >= 0) inflow[(next * n + egress) * L + t] += share;
+                }
+            }
+        }
+        //没有应答的交换机下次仍与最近一次的计数比较
+        for (Map.Entry<Long, Map<FlowRuleKey, long[]>> e : lastCounters.entrySet()) {
+            if (!counters.containsKey(e.getKey()) && topology.indexOf(e.getKey()) >= 0) {
+                counters.put(e.getKey(), e.getValue());
+            }
+        }
+        lastCounters = counters;
+
+        DemandMatrix previous = current;
+        double[] rate = new double[n * n * L];
+        double[] residual = new double[L];
+        for (int s = 0; s < n; s++) {
+            int ps = previous.indexOf(dpids[s]);
+            for (int d = 0; d < n; d++) {
+                int pd = previous.indexOf(dpids[d]);
+                int base = (s * n + d) * L;
+                if (sampled[s]) {
+                    ingress(transit, inflow, base, L, residual);
+                }
+                for (int t = 0; t < L; t++) {
+                    int pt = previous.levelIndexOf(columns[t]);
+                    boolean hasOld = ps >= 0 && pd >= 0 && pt >= 0;
+                    double old = hasOld ? previous.getRate(ps, pd, pt) : 0;
+                    if (!sampled[s]) {
+                        rate[base + t] = old;
+                    } else if (hasOld) {
+                        rate[base + t] = alpha * residual[t] + (1 - alpha) * old;
+                    } else {
+                        rate[base + t] = residual[t];
+                    }
+                }
+            }
+        }
+        current = new DemandMatrix(dpids, columns, rate, now);
+        return current;
+    }
+
+    /**
+     * 由经过的流量和流入的流量计算入口流量，结果写入residual
+     * 各ToS列先取差值，总和超过总入口流量时按比例缩小，不足的部分记在最后一列
+     */
+    private static void ingress(double[] transit, double[] inflow, int base, int L, double[] residual) {
+        double total = 0;
+        double sum = 0;
+        for (int t = 0; t < L; t++) {
+            total += transit[base + t] - inflow[base + t];
+        }
+        total = Math.max(0, total);
+        for (int t = 0; t < L - 1; t++) {
+            residual[t] = Math.max(0, transit[base + t] - inflow[base + t]);
+            sum += residual[t];
+        }
+        if (sum > total) {
+            for (int t = 0; t < L - 1; t++) {
+                residual[t] = residual[t] * total / sum;
+            }
+            residual[L - 1] = 0;
+        } else {
+            residual[L - 1] = total - sum;
+        }
+    }
+
+    /**
+     * 规则的第一个输出动作的端口，没有时返回0
+     */
+    static short outPort(OFFlowStatisticsReply reply) {
+        List<OFAction> actions = reply.getActions();
+        if (actions != null) {
+            for (OFAction action : actions) {
+                if (action instanceof OFActionOutput) return ((OFActionOutput) action).getPort();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 交换机s的出端口所连的下一跳交换机下标，连接主机或未知时返回-1
+     */
+    private static int nextHop(LinkCostSnapshot topology, int s, short port) {
+        for (int e = topology.edgeBegin(s); e < topology.edgeEnd(s); e++) {
+            if (topology.getLink(e).getSrcPort() == port) return topology.getTarget(e);
+        }
+        return -1;
+    }
+
+    private static int lowerBound(long[] sorted, long key) {
+        int lo = 0, hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
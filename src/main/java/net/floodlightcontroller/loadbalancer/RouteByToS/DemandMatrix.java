@@ -0,0 +1,130 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleKey;
+import org.openflow.util.HexString;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按(入口交换机, 出口交换机, ToS)统计的流量需求矩阵(不可变)
+ * 交换机按dpid从小到大编号，ToS级别按从小到大编号，最后一列为不匹配ToS的规则上无法区分级别的流量；
+ * 速率(Mbps)按[(入口*n + 出口)*级别数 + 级别]展开存放在一个double数组中
+ */
+public class DemandMatrix {
+    public static final DemandMatrix EMPTY = new DemandMatrix(new long[0],
+            new byte[] { FlowRuleKey.ANY_TOS }, new double[0], 0);
+
+    private final long[] dpids;
+    private final byte[] levels;
+    private final double[] rate;
+    // 生成矩阵的时间(ms)
+    private final long timestamp;
+    // ToS到列下标，不在表中的ToS为-1
+    private final int[] levelIndex = new int[256];
+
+    DemandMatrix(long[] dpids, byte[] levels, double[] rate, long timestamp) {
+        this.dpids = dpids;
+        this.levels = levels;
+        this.rate = rate;
+        this.timestamp = timestamp;
+        Arrays.fill(levelIndex, -1);
+        for (int t = 0; t < levels.length; t++) {
+            levelIndex[levels[t] & 0xff] = t;
+        }
+    }
+
+    /**
+     * 交换机数目
+     */
+    public int size() {
+        return dpids.length;
+    }
+
+    public long getDpid(int index) {
+        return dpids[index];
+    }
+
+    /**
+     * dpid对应的下标，不存在时返回-1
+     */
+    public int indexOf(long dpid) {
+        int i = Arrays.binarySearch(dpids, dpid);
+        return (i < 0) ? -1 : i;
+    }
+
+    /**
+     * 各列对应的ToS，最后一列为FlowRuleKey.ANY_TOS
+     */
+    public byte[] getLevels() {
+        return levels.clone();
+    }
+
+    /**
+     * ToS对应的列下标，不在表中时返回-1
+     */
+    public int levelIndexOf(byte ToS) {
+        return levelIndex[ToS & 0xff];
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 按下标取速率(Mbps)
+     */
+    public double getRate(int src, int dst, int level) {
+        return rate[(src * dpids.length + dst) * levels.length + level];
+    }
+
+    /**
+     * 从src交换机进入、从dst交换机离开网络的某个ToS级别的流量(Mbps)，未知时为0
+     */
+    public double getDemand(long src, long dst, byte ToS) {
+        int s = indexOf(src), d = indexOf(dst), t = levelIndexOf(ToS);
+        if (s < 0 || d < 0 || t < 0) return 0;
+        return getRate(s, d, t);
+    }
+
+    /**
+     * 从src交换机进入、从dst交换机离开网络的全部流量(Mbps)
+     */
+    public double getTotalDemand(long src, long dst) {
+        int s = indexOf(src), d = indexOf(dst);
+        if (s < 0 || d < 0) return 0;
+        double total = 0;
+        for (int t = 0; t < levels.length; t++) {
+            total += getRate(s, d, t);
+        }
+        return total;
+    }
+
+    /**
+     * 非零的需求<入口dpid, <出口dpid, <ToS, 速率>>>，不区分级别的流量ToS记为"*"
+     */
+    public Map<String, Map<String, Map<String, Double>>> toMap() {
+        Map<String, Map<String, Map<String, Double>>> result = new LinkedHashMap<>();
+        int n = dpids.length;
+        for (int s = 0; s < n; s++) {
+            Map<String, Map<String, Double>> row = null;
+            for (int d = 0; d < n; d++) {
+                Map<String, Double> cell = null;
+                for (int t = 0; t < levels.length; t++) {
+                    double r = getRate(s, d, t);
+                    if (r <= 0) continue;
+                    if (cell == null) cell = new LinkedHashMap<>();
+                    cell.put(levels[t] == FlowRuleKey.ANY_TOS ? "*" : Byte.toString(levels[t]), r);
+                }
+                if (cell == null) continue;
+                if (row == null) {
+                    row = new LinkedHashMap<>();
+                    result.put(HexString.toHexString(dpids[s]), row);
+                }
+                row.put(HexString.toHexString(dpids[d]), cell);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,99 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleKey;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ToS流表的规则编译：把按主机(目的IP/32, ToS)计算出的期望流表聚合成更少的规则
+ * 1. 某台交换机上到同一目的IP的所有ToS级别出端口都相同时，合成一条不匹配ToS的规则
+ *    (OpenFlow 1.0的nw_tos不支持掩码，只能整体通配)
+ * 2. 同一ToS(或不匹配ToS)下，出端口相同的两个兄弟前缀合并为上一级前缀，逐级向上直到不能再合并
+ *
+ * 只合并两个兄弟都存在的前缀，聚合后的规则恰好覆盖原来的主机地址，不会吸收未知主机的流量，
+ * 同一交换机上的规则之间也不会重叠，因此都使用同一优先级
+ */
+public class FlowRuleCompiler {
+
+    /**
+     * @param hostRules 按主机计算的期望流表<dpid, <(目的IP/32, ToS), 出端口>>
+     * @param levels 全部ToS级别
+     * @return 聚合后的期望流表
+     */
+    public Map<Long, Map<FlowRuleKey, Short>> compile(Map<Long, Map<FlowRuleKey, Short>> hostRules,
+                                                      Collection<Byte> levels) {
+        Map<Long, Map<FlowRuleKey, Short>> result = new HashMap<>();
+        for (Map.Entry<Long, Map<FlowRuleKey, Short>> e : hostRules.entrySet()) {
+            result.put(e.getKey(), compileSwitch(e.getValue(), levels));
+        }
+        return result;
+    }
+
+    private Map<FlowRuleKey, Short> compileSwitch(Map<FlowRuleKey, Short> rules, Collection<Byte> levels) {
+        // <目的IP, 各级别出端口一致时的出端口>，不一致时为null
+        Map<Integer, Short> commonPort = new HashMap<>();
+        Map<Integer, Integer> levelCount = new HashMap<>();
+        for (Map.Entry<FlowRuleKey, Short> rule : rules.entrySet()) {
+            int ip = rule.getKey().getDstIp();
+            Integer n = levelCount.get(ip);
+            if (n == null) {
+                levelCount.put(ip, 1);
+                commonPort.put(ip, rule.getValue());
+            } else {
+                levelCount.put(ip, n + 1);
+                Short port = commonPort.get(ip);
+                if (port != null && !port.equals(rule.getValue())) commonPort.put(ip, null);
+            }
+        }
+
+        // 按ToS分组，不匹配ToS的规则使用ANY_TOS组
+        Map<Byte, Map<Integer, Short>> groups = new HashMap<>();
+        for (Map.Entry<FlowRuleKey, Short> rule : rules.entrySet()) {
+            FlowRuleKey key = rule.getKey();
+            int ip = key.getDstIp();
+            boolean anyToS = commonPort.get(ip) != null && levelCount.get(ip) == levels.size();
+            byte group = anyToS ? FlowRuleKey.ANY_TOS : key.getToS();
+            Map<Integer, Short> hosts = groups.get(group);
+            if (hosts == null) {
+                hosts = new HashMap<>();
+                groups.put(group, hosts);
+            }
+            hosts.put(ip, rule.getValue());
+        }
+
+        Map<FlowRuleKey, Short> compiled = new HashMap<>();
+        for (Map.Entry<Byte, Map<Integer, Short>> g : groups.entrySet()) {
+            aggregate(g.getKey(), g.getValue(), compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * 自/32开始逐级合并出端口相同的兄弟前缀，不能再合并的前缀输出为规则
+     */
+    private void aggregate(byte ToS, Map<Integer, Short> hosts, Map<FlowRuleKey, Short> out) {
+        Map<Integer, Short> cur = hosts;
+        for (int len = 32; len > 0; len--) {
+            if (cur.isEmpty()) return;
+            int bit = 1 << (32 - len);
+            Map<Integer, Short> parent = new HashMap<>();
+            for (Map.Entry<Integer, Short> p : cur.entrySet()) {
+                int prefix = p.getKey();
+                Short port = p.getValue();
+                Short siblingPort = cur.get(prefix ^ bit);
+                if (port.equals(siblingPort)) {
+                    // 兄弟两个前缀都会走到这里，只由低位为0的一个生成父前缀
+                    if ((prefix & bit) == 0) parent.put(prefix, port);
+                } else {
+                    out.put(new FlowRuleKey(prefix, len, ToS), port);
+                }
+            }
+            cur = parent;
+        }
+        for (Map.Entry<Integer, Short> p : cur.entrySet()) {
+            out.put(new FlowRuleKey(p.getKey(), 0, ToS), p.getValue());
+        }
+    }
+}
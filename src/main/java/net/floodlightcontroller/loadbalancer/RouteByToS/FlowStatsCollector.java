@@ -0,0 +1,174 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IOFMessageListener;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.packet.Ethernet;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPort;
+import org.openflow.protocol.OFStatisticsReply;
+import org.openflow.protocol.OFStatisticsRequest;
+import org.openflow.protocol.OFType;
+import org.openflow.protocol.statistics.OFFlowStatisticsReply;
+import org.openflow.protocol.statistics.OFFlowStatisticsRequest;
+import org.openflow.protocol.statistics.OFStatistics;
+import org.openflow.protocol.statistics.OFStatisticsType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 采集交换机上某个应用下发的IPv4规则的流统计
+ * 请求只匹配dl_type=IPv4，应答中按cookie的应用号过滤；先向所有交换机发出请求再统一等待，
+ * 截止时仍未应答完的交换机本轮跳过
+ */
+public class FlowStatsCollector {
+    protected static Logger log = LoggerFactory.getLogger(FlowStatsCollector.class);
+
+    private final IFloodlightProviderService floodlightProvider;
+    private final int appId;
+    private final long timeout;
+
+    /**
+     * @param appId 只保留cookie中为该应用号的规则
+     * @param timeout 等待应答的时间(ms)
+     */
+    public FlowStatsCollector(IFloodlightProviderService floodlightProvider, int appId, long timeout) {
+        this.floodlightProvider = floodlightProvider;
+        this.appId = appId;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 接收一台交换机的流统计应答，应答可能分成多个分片
+     */
+    private class FlowStatsCallback implements IOFMessageListener {
+        private final long dpid;
+        private final int xid;
+        private final CountDownLatch latch;
+        private final List<OFFlowStatisticsReply> statistics = new ArrayList<>();
+        private boolean complete = false;
+        private boolean closed = false;
+
+        FlowStatsCallback(long dpid, int xid, CountDownLatch latch) {
+            this.dpid = dpid;
+            this.xid = xid;
+            this.latch = latch;
+        }
+
+        @Override
+        public String getName() {
+            return "flowstatscollector";
+        }
+
+        @Override
+        public boolean isCallbackOrderingPrereq(OFType type, String name) {
+            return false;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPostreq(OFType type, String name) {
+            return false;
+        }
+
+        @Override
+        public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+            if (!(msg instanceof OFStatisticsReply)) return Command.CONTINUE;
+            OFStatisticsReply reply = (OFStatisticsReply) msg;
+            boolean last = (reply.getFlags() & 0x1) == 0;
+            synchronized (this) {
+                if (closed || complete) return Command.CONTINUE;
+                for (OFStatistics stat : reply.getStatistics()) {
+                    OFFlowStatisticsReply flow = (OFFlowStatisticsReply) stat;
+                    if (AppCookie.extractApp(flow.getCookie()) == appId) statistics.add(flow);
+                }
+                if (!last) return Command.CONTINUE;
+                complete = true;
+            }
+            // 应答已完整，注销回调
+            sw.cancelStatisticsReply(xid);
+            latch.countDown();
+            return Command.CONTINUE;
+        }
+
+        /**
+         * 结束等待，返回完整的统计结果；未按时完成时返回null，之后到达的分片被忽略
+         */
+        synchronized List<OFFlowStatisticsReply> close() {
+            closed = true;
+            return complete ? statistics : null;
+        }
+    }
+
+    /**
+     * 向交换机请求流统计并等待应答
+     * @return <dpid, 该应用的规则统计>，只包含按时应答完整的交换机
+     */
+    public Map<Long, List<OFFlowStatisticsReply>> collect(Collection<Long> switches) {
+        Map<Long, List<OFFlowStatisticsReply>> result = new HashMap<>();
+        List<FlowStatsCallback> callbacks = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(switches.size());
+
+        for (Long dpid : switches) {
+            IOFSwitch sw = floodlightProvider.getSwitch(dpid);
+            if (sw == null) {
+                latch.countDown();
+                continue;
+            }
+            OFStatisticsRequest req = new OFStatisticsRequest();
+            req.setStatisticType(OFStatisticsType.FLOW);
+            int requestLength = req.getLengthU();
+
+            OFFlowStatisticsRequest specificReq = new OFFlowStatisticsRequest();
+            OFMatch match = new OFMatch();
+            match.setDataLayerType(Ethernet.TYPE_IPv4);
+            match.setWildcards(OFMatch.OFPFW_ALL & ~OFMatch.OFPFW_DL_TYPE);
+            specificReq.setMatch(match);
+            specificReq.setOutPort(OFPort.OFPP_NONE.getValue());
+            specificReq.setTableId((byte) 0xff);
+            req.setStatistics(Collections.singletonList((OFStatistics) specificReq));
+            requestLength += specificReq.getLength();
+            req.setLengthU(requestLength);
+
+            int xid = sw.getNextTransactionId();
+            FlowStatsCallback callback = new FlowStatsCallback(dpid, xid, latch);
+            try {
+                sw.sendStatsQuery(req, xid, callback);
+                callbacks.add(callback);
+            } catch (Exception e) {
+                log.error("Failure sending flow statistics request to switch " + sw, e);
+                sw.cancelStatisticsReply(xid);
+                latch.countDown();
+            }
+        }
+
+        try {
+            latch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (FlowStatsCallback callback : callbacks) {
+            List<OFFlowStatisticsReply> statistics = callback.close();
+            if (statistics != null) {
+                result.put(callback.dpid, statistics);
+            } else {
+                log.warn("Timed out retrieving flow statistics from switch {}", callback.dpid);
+                IOFSwitch sw = floodlightProvider.getSwitch(callback.dpid);
+                if (sw != null) sw.cancelStatisticsReply(callback.xid);
+            }
+        }
+        return result;
+    }
+}
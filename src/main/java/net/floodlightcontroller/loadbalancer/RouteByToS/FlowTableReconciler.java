@@ -0,0 +1,266 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import org.openflow.protocol.OFFlowMod;
+import org.openflow.protocol.OFMatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ToS流表的增量下发
+ * 记录每台交换机上已下发的(目的前缀, ToS) -> 出端口，每个周期与期望的流表比较，
+ * 只对新增、出端口变化和不再需要的规则分别生成ADD、MODIFY_STRICT和DELETE_STRICT
+ *
+ * 已下发记录由交换机的FLOW_REMOVED消息和周期性的流统计审计校正，
+ * 超时或被删除的规则以及与交换机实际不一致的规则在下一轮重新下发
+ * 下发、FLOW_REMOVED和审计分别在不同线程中进行，所有方法都是同步的
+ */
+public class FlowTableReconciler {
+
+    /**
+     * 交换机上一条ToS规则的匹配键：目的地址前缀和ToS，ToS为ANY_TOS时表示不匹配ToS
+     */
+    public static class FlowRuleKey {
+        // 不匹配ToS的规则使用的ToS值，正常的ToS只有低6位
+        public static final byte ANY_TOS = (byte) 0xff;
+
+        private final int dstIp;
+        private final int maskLen;
+        private final byte ToS;
+
+        public FlowRuleKey(int dstIp, byte ToS) {
+            this(dstIp, 32, ToS);
+        }
+
+        public FlowRuleKey(int dstIp, int maskLen, byte ToS) {
+            if (maskLen < 0 || maskLen > 32) {
+                throw new IllegalArgumentException("Invalid prefix length " + maskLen);
+            }
+            this.dstIp = (maskLen == 0) ? 0 : dstIp & (0xffffffff << (32 - maskLen));
+            this.maskLen = maskLen;
+            this.ToS = ToS;
+        }
+
+        public int getDstIp() {
+            return dstIp;
+        }
+
+        public int getMaskLen() {
+            return maskLen;
+        }
+
+        public byte getToS() {
+            return ToS;
+        }
+
+        public boolean isAnyToS() {
+            return ToS == ANY_TOS;
+        }
+
+        /**
+         * 由交换机上规则的匹配域得到匹配键，不是IPv4目的前缀规则时返回null
+         */
+        public static FlowRuleKey fromMatch(OFMatch match) {
+            if (match == null) return null;
+            int wildcards = match.getWildcards();
+            if ((wildcards & OFMatch.OFPFW_DL_TYPE) != 0 || match.getDataLayerType() != Ethernet.TYPE_IPv4) {
+                return null;
+            }
+            int maskLen = Math.min(32, match.getNetworkDestinationMaskLen());
+            byte ToS = ((wildcards & OFMatch.OFPFW_NW_TOS) != 0) ? ANY_TOS
+                                                                 : match.getNetworkTypeOfService();
+            return new FlowRuleKey(match.getNetworkDestination(), maskLen, ToS);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * dstIp + maskLen) * 31 + ToS;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof FlowRuleKey)) return false;
+            FlowRuleKey other = (FlowRuleKey) obj;
+            return dstIp == other.dstIp && maskLen == other.maskLen && ToS == other.ToS;
+        }
+
+        @Override
+        public String toString() {
+            return "FlowRuleKey [dstIp=" + IPv4.fromIPv4Address(dstIp) + "/" + maskLen
+                    + ", ToS=" + (isAnyToS() ? "*" : ToS) + "]";
+        }
+    }
+
+    /**
+     * 某台交换机上需要执行的一条规则变更
+     */
+    public static class FlowRuleChange {
+        private final FlowRuleKey key;
+        private final short command;
+        private final short outPort;
+
+        public FlowRuleChange(FlowRuleKey key, short command, short outPort) {
+            this.key = key;
+            this.command = command;
+            this.outPort = outPort;
+        }
+
+        public FlowRuleKey getKey() {
+            return key;
+        }
+
+        public short getCommand() {
+            return command;
+        }
+
+        public short getOutPort() {
+            return outPort;
+        }
+    }
+
+    // 已下发的规则<dpid, <规则, 出端口>>
+    private final Map<Long, Map<FlowRuleKey, Short>> installed = new HashMap<>();
+    private int installedCount = 0;
+    private int desiredCount = 0;
+    // 每轮reconcile加1，以及各交换机最近一次产生变更的轮次，用于判断审计所用的流统计是否已过期
+    private long version = 0;
+    private final Map<Long, Long> changedVersion = new HashMap<>();
+
+    /**
+     * 比较期望流表与已下发流表，生成每台交换机需要执行的变更，并把期望流表记为已下发
+     * 若某台交换机的变更未能成功写出，调用方应调用forgetSwitch使其下个周期全部重发
+     * @param desired 本周期期望的流表<dpid, <规则, 出端口>>
+     * @return <dpid, 变更列表>，没有变化的交换机不出现在结果中
+     */
+    public synchronized Map<Long, List<FlowRuleChange>> reconcile(Map<Long, Map<FlowRuleKey, Short>> desired) {
+        Map<Long, List<FlowRuleChange>> changes = new HashMap<>();
+        int total = 0;
+        version++;
+        for (Map.Entry<Long, Map<FlowRuleKey, Short>> e : desired.entrySet()) {
+            Map<FlowRuleKey, Short> want = e.getValue();
+            Map<FlowRuleKey, Short> have = installed.get(e.getKey());
+            List<FlowRuleChange> swChanges = new ArrayList<>();
+            for (Map.Entry<FlowRuleKey, Short> rule : want.entrySet()) {
+                Short port = (have == null) ? null : have.get(rule.getKey());
+                if (port == null) {
+                    swChanges.add(new FlowRuleChange(rule.getKey(), OFFlowMod.OFPFC_ADD, rule.getValue()));
+                } else if (!port.equals(rule.getValue())) {
+                    swChanges.add(new FlowRuleChange(rule.getKey(), OFFlowMod.OFPFC_MODIFY_STRICT, rule.getValue()));
+                }
+            }
+            if (have != null) {
+                for (Map.Entry<FlowRuleKey, Short> rule : have.entrySet()) {
+                    if (!want.containsKey(rule.getKey())) {
+                        swChanges.add(new FlowRuleChange(rule.getKey(), OFFlowMod.OFPFC_DELETE_STRICT, rule.getValue()));
+                    }
+                }
+            }
+            if (!swChanges.isEmpty()) changes.put(e.getKey(), swChanges);
+            total += want.size();
+        }
+        // 期望流表中已不存在的交换机，其上的规则全部删除
+        for (Map.Entry<Long, Map<FlowRuleKey, Short>> e : installed.entrySet()) {
+            if (desired.containsKey(e.getKey())) continue;
+            List<FlowRuleChange> swChanges = new ArrayList<>();
+            for (Map.Entry<FlowRuleKey, Short> rule : e.getValue().entrySet()) {
+                swChanges.add(new FlowRuleChange(rule.getKey(), OFFlowMod.OFPFC_DELETE_STRICT, rule.getValue()));
+            }
+            if (!swChanges.isEmpty()) changes.put(e.getKey(), swChanges);
+        }
+
+        installed.clear();
+        for (Map.Entry<Long, Map<FlowRuleKey, Short>> e : desired.entrySet()) {
+            installed.put(e.getKey(), new HashMap<>(e.getValue()));
+        }
+        for (Long dpid : changes.keySet()) {
+            changedVersion.put(dpid, version);
+        }
+        desiredCount = total;
+        installedCount = total;
+        return changes;
+    }
+
+    /**
+     * 交换机不可用或写入失败时，清除其已下发记录
+     */
+    public synchronized void forgetSwitch(long dpid) {
+        Map<FlowRuleKey, Short> rules = installed.remove(dpid);
+        if (rules != null) installedCount -= rules.size();
+    }
+
+    /**
+     * 交换机报告规则已被删除(超时或被其他应用删除)时清除其已下发记录，下一轮需要时重新下发
+     * @return 该规则是否在已下发记录中
+     */
+    public synchronized boolean markRemoved(long dpid, FlowRuleKey key) {
+        Map<FlowRuleKey, Short> rules = installed.get(dpid);
+        if (rules == null || rules.remove(key) == null) return false;
+        installedCount--;
+        return true;
+    }
+
+    /**
+     * 当前的轮次，发出审计用的流统计请求前取得
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * 用交换机上实际存在的规则校正已下发记录：
+     * 记录中有而交换机上没有的规则删去记录，下一轮重新下发；出端口不一致的按实际记录，下一轮修改；
+     * 交换机上有而记录中没有的规则按实际记录，下一轮不需要时删除
+     * @param actual 交换机上实际的规则<规则, 出端口>
+     * @param observedVersion 发出流统计请求时的getVersion()，之后该交换机又有变更时不做校正
+     * @return 校正的规则数
+     */
+    public synchronized int audit(long dpid, Map<FlowRuleKey, Short> actual, long observedVersion) {
+        Long changed = changedVersion.get(dpid);
+        if (changed != null && changed > observedVersion) return 0;
+        Map<FlowRuleKey, Short> have = installed.get(dpid);
+        if (have == null) {
+            if (actual.isEmpty()) return 0;
+            have = new HashMap<>();
+            installed.put(dpid, have);
+        }
+        int repaired = 0;
+        Iterator<Map.Entry<FlowRuleKey, Short>> it = have.entrySet().iterator();
+        while (it.hasNext()) {
+            if (!actual.containsKey(it.next().getKey())) {
+                it.remove();
+                installedCount--;
+                repaired++;
+            }
+        }
+        for (Map.Entry<FlowRuleKey, Short> rule : actual.entrySet()) {
+            Short port = have.put(rule.getKey(), rule.getValue());
+            if (port == null) {
+                installedCount++;
+                repaired++;
+            } else if (!port.equals(rule.getValue())) {
+                repaired++;
+            }
+        }
+        return repaired;
+    }
+
+    /**
+     * 当前认为已下发到交换机上的规则数
+     */
+    public synchronized int getInstalledCount() {
+        return installedCount;
+    }
+
+    /**
+     * 最近一次计算得到的期望规则数
+     */
+    public synchronized int getDesiredCount() {
+        return desiredCount;
+    }
+}
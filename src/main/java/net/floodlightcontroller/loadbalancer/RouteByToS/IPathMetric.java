@@ -0,0 +1,23 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import java.util.BitSet;
+
+/**
+ * 路径度量：在某个ToS级别的开放链路上选择路径的策略
+ * 不同ToS级别可以使用不同的度量，通过IRouteByToS.registerPathMetric注册、setPathMetric选择
+ */
+public interface IPathMetric {
+    /**
+     * 度量的名字，用于配置中选择度量
+     */
+    public String getName();
+
+    /**
+     * 计算一个ToS级别的路由表
+     * @param graph 该级别下的开放链路及其剩余带宽
+     * @param previous 上一轮同一级别的路由表，交换机下标变化时为null；不能修改该表
+     * @param changedDst 输出参数，路由发生变化的目的节点下标
+     * @return 新的路由表；与previous完全相同时可以直接返回previous
+     */
+    public IRouteTable compute(LinkGraph graph, IRouteTable previous, BitSet changedDst);
+}
@@ -6,6 +6,7 @@ import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Link;
 import net.floodlightcontroller.routing.Route;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -14,7 +15,16 @@ import java.util.Set;
  */
 public interface IRouteByToS extends IFloodlightService, IRoutingService {
     public Map<Link, Double> getLinkCost();
+    /**
+     * 当前全部主机接入点的拷贝<IP地址, 接入点>
+     */
     public Map<Integer, SwitchPort> getAttachmentMap();
+    /**
+     * 查询主机的接入点
+     * @param ip 主机IPv4地址
+     * @return 接入点，未知主机返回null
+     */
+    public SwitchPort getAttachmentPoint(int ip);
     /**
      * 根据ToS级别获取相应路由
      * @param src 源交换机dpid
@@ -27,4 +37,92 @@ public interface IRouteByToS extends IFloodlightService, IRoutingService {
     public Route getRoute(long src, long dst, long cookie, Byte ToS, boolean tunnelEnabled);
     public Route getRoute(long srcId, short srcPort, long dstId, short dstPort, long cookie, Byte ToS, boolean tunnelEnabled);
     public Map<Long, Set<Link>> getWholeTopology() ;
+
+    /**
+     * 根据ToS级别获取src到dst的等价多路径，路径不含主机端口，不可达时返回空列表
+     */
+    public List<Route> getRoutes(long src, long dst, Byte ToS);
+
+    /**
+     * 根据流的哈希值在等价多路径中确定地选择一条路径，并计入该路径的选中次数
+     * ToS级别下不可达时自动降到不高于ToS且可达的最高级别
+     * @param flowHash 由流的五元组计算的哈希值，同一条流每次传入相同的值
+     * @return 含源、目的主机端口的路由，不可达时返回null
+     */
+    public Route getRoute(long srcId, short srcPort, long dstId, short dstPort, Byte ToS, int flowHash);
+
+    /**
+     * 自上次拓扑变化以来，各路径被getRoute选中的次数
+     * 每次选路计一次(同一条流在规则安装前或超时后的packet-in会重复计数)，不是路径上当前的流数；
+     * 不在当前快照中的路径不会出现
+     */
+    public Map<Route, Long> getPathSelectionCounts();
+
+    /**
+     * 获取当前发布的路由快照，快照不可变，可在多次查询间保持一致
+     */
+    public RouteSnapshot getRouteSnapshot();
+
+    /**
+     * 当前路由快照的代数，每完成一轮路由计算加1
+     * 调用方可以记录下发路由时的代数，以此判断其是否已经过期
+     */
+    public long getRouteGeneration();
+
+    /**
+     * 当前认为已下发到各交换机上的ToS规则总数
+     */
+    public int getInstalledRuleCount();
+
+    /**
+     * 最近一轮计算得到的期望ToS规则总数
+     */
+    public int getDesiredRuleCount();
+
+    /**
+     * 各ToS级别下链路开放/关闭状态切换的累计次数
+     */
+    public long getLinkFlapCount();
+
+    /**
+     * 当前使用的ToS分类表
+     */
+    public ToSClassTable getToSClassTable();
+
+    /**
+     * 替换ToS分类表并尽快按新的门限重新计算路由
+     * @throws IllegalArgumentException 新表的ToS级别集合与当前不同
+     */
+    public void setToSClassTable(ToSClassTable table);
+
+    /**
+     * 最近一轮由流统计估计的(入口交换机, 出口交换机, ToS)流量需求矩阵，不可变
+     */
+    public DemandMatrix getDemandMatrix();
+
+    /**
+     * 下发FlowMod的批大小分布<批大小范围, 批数>
+     */
+    public Map<String, Long> getFlowModBatchSizes();
+
+    /**
+     * 注册一个路径度量，之后可以通过名字为ToS级别选用
+     */
+    public void registerPathMetric(IPathMetric metric);
+
+    /**
+     * 为某个ToS级别选择已注册的路径度量，从下一轮路由计算开始生效
+     * @throws IllegalArgumentException 没有该名字的度量
+     */
+    public void setPathMetric(Byte ToS, String name);
+
+    /**
+     * 某个ToS级别当前使用的路径度量
+     */
+    public IPathMetric getPathMetric(Byte ToS);
+
+    /**
+     * 请求尽快重新计算路由并更新流表，短时间内的多次请求会被合并
+     */
+    public void requestRouteUpdate();
 }
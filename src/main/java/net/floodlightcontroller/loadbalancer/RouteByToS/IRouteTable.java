@@ -0,0 +1,26 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+/**
+ * 单个ToS级别下的全源路由表，i、j为dpIdMap中的交换机下标
+ * 路由表发布后不再修改，可被多个线程同时读取
+ */
+public interface IRouteTable {
+    /**
+     * 路由表中的交换机数目
+     */
+    public int size();
+
+    /**
+     * src到dst的路径上src之后的下一跳
+     */
+    public int getNextHop(int src, int dst);
+
+    public boolean isReachable(int src, int dst);
+
+    /**
+     * src到dst的所有等价下一跳，按下标从小到大写入hops
+     * @param hops 长度至少为size()
+     * @return 下一跳的个数，不可达或src==dst时为0
+     */
+    public int getNextHops(int src, int dst, int[] hops);
+}
@@ -0,0 +1,88 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.routing.Link;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 单个ToS级别下链路开放/关闭的滞回判定
+ * 开放的链路只有在剩余带宽低于 门限-band 时才关闭，关闭的链路只有在剩余带宽达到 门限+band 时才重新开放，
+ * 且每次状态变化后至少保持holdMillis，负载在门限附近波动时链路状态不会每个周期来回切换
+ *
+ * 同一级别的判定只由该级别的计算任务调用，不需要加锁
+ */
+public class LinkAdmissionControl {
+    private final double band;
+    private final long holdMillis;
+
+    // <链路, 状态>
+    private final Map<Link, State> states = new HashMap<>();
+    // 链路状态切换的累计次数
+    private volatile long flapCount = 0;
+
+    private static class State {
+        boolean open;
+        // 最近一次状态变化的时间(ms)
+        long since;
+
+        State(boolean open, long since) {
+            this.open = open;
+            this.since = since;
+        }
+    }
+
+    /**
+     * @param band 滞回带宽度(Mbps)
+     * @param holdMillis 状态变化后的最短保持时间(ms)
+     */
+    public LinkAdmissionControl(double band, long holdMillis) {
+        this.band = band;
+        this.holdMillis = holdMillis;
+    }
+
+    /**
+     * 判断链路在当前级别下是否开放
+     * 第一次出现的链路直接按门限判定
+     * @param leftBandwidth 链路剩余带宽
+     * @param threshold 当前级别的带宽门限
+     * @param now 当前时间(ms)
+     */
+    public boolean admit(Link link, double leftBandwidth, double threshold, long now) {
+        State state = states.get(link);
+        if (state == null) {
+            boolean open = leftBandwidth >= threshold;
+            states.put(link, new State(open, now));
+            return open;
+        }
+        if (now - state.since < holdMillis) return state.open;
+        boolean open = state.open ? leftBandwidth >= threshold - band
+                                  : leftBandwidth >= threshold + band;
+        if (open != state.open) {
+            state.open = open;
+            state.since = now;
+            flapCount++;
+        }
+        return open;
+    }
+
+    /**
+     * 丢弃已不存在的链路的状态
+     */
+    public void retain(Collection<Link> links) {
+        Iterator<Link> it = states.keySet().iterator();
+        while (it.hasNext()) {
+            if (!links.contains(it.next())) it.remove();
+        }
+    }
+
+    public long getFlapCount() {
+        return flapCount;
+    }
+
+    public int size() {
+        return states.size();
+    }
+}
@@ -0,0 +1,38 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+/**
+ * 某个ToS级别下供路径度量使用的有向图
+ * 以一维数组按行存放，(i,j)对应下标i*n+j
+ */
+public class LinkGraph {
+    private final int n;
+    // adj[i*n+j]表示链路i->j在该级别下开放
+    private final boolean[] adj;
+    // residual[i*n+j]为链路i->j的剩余带宽(Mbps)
+    private final double[] residual;
+
+    public LinkGraph(int n, boolean[] adj, double[] residual) {
+        if (adj.length != n * n || residual.length != n * n) {
+            throw new IllegalArgumentException("Matrix size does not match " + n);
+        }
+        this.n = n;
+        this.adj = adj;
+        this.residual = residual;
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public boolean[] getAdjacency() {
+        return adj;
+    }
+
+    public boolean isOpen(int src, int dst) {
+        return adj[src * n + dst];
+    }
+
+    public double getResidual(int src, int dst) {
+        return residual[src * n + dst];
+    }
+}
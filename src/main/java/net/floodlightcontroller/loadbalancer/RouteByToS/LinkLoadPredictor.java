@@ -0,0 +1,169 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.routing.Link;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 链路负载的流式预测
+ * 每次链路权重更新时喂入各链路的当前负载，为每条链路维护一个EWMA平滑值，
+ * 并在最近window个样本上做最小二乘拟合得到负载变化的斜率，
+ * 预测值 = EWMA + 斜率 * horizon，使路由在链路真正拥塞之前就开始避开
+ *
+ * 每条链路占用一个槽位，样本和时间戳以槽位为单位存放在一维环形数组中，
+ * 槽位slot的第k个样本位于下标slot*window+k
+ */
+public class LinkLoadPredictor {
+    private final double alpha;
+    private final int window;
+    // 预测的时间跨度(s)
+    private final double horizon;
+
+    // 链路到槽位的映射
+    private final Map<Link, Integer> slots = new HashMap<>();
+    // 空闲槽位栈
+    private int[] freeSlots = new int[0];
+    private int freeCount = 0;
+    private int capacity = 0;
+
+    private double[] ewma = new double[0];
+    // 槽位中已有的样本数(不超过window)
+    private int[] count = new int[0];
+    // 下一个样本写入的位置
+    private int[] head = new int[0];
+    private double[] samples = new double[0];
+    private double[] times = new double[0];
+
+    /**
+     * @param alpha EWMA的平滑系数，越大越偏向最新样本
+     * @param window 拟合趋势使用的样本数
+     * @param horizonMillis 向前预测的时间(ms)
+     */
+    public LinkLoadPredictor(double alpha, int window, long horizonMillis) {
+        if (alpha <= 0 || alpha > 1) throw new IllegalArgumentException("alpha must be in (0,1]");
+        if (window < 1) throw new IllegalArgumentException("window must be positive");
+        this.alpha = alpha;
+        this.window = window;
+        this.horizon = horizonMillis / 1000.0;
+    }
+
+    /**
+     * 喂入一轮链路负载，本轮没有出现的链路视为已消失，释放其槽位
+     * @param load <链路，负载>
+     * @param timeMillis 本轮负载的测量时间
+     */
+    public synchronized void update(Map<Link, Double> load, long timeMillis) {
+        Iterator<Map.Entry<Link, Integer>> it = slots.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Link, Integer> e = it.next();
+            if (!load.containsKey(e.getKey())) {
+                release(e.getValue());
+                it.remove();
+            }
+        }
+        double t = timeMillis / 1000.0;
+        for (Map.Entry<Link, Double> e : load.entrySet()) {
+            if (e.getValue() == null) continue;
+            double value = e.getValue();
+            Integer slot = slots.get(e.getKey());
+            if (slot == null) {
+                slot = allocate();
+                slots.put(e.getKey(), slot);
+                ewma[slot] = value;
+            } else {
+                // 同一时刻的重复样本不再计入
+                int lastPos = slot * window + (head[slot] + window - 1) % window;
+                if (count[slot] > 0 && times[lastPos] >= t) continue;
+                ewma[slot] = alpha * value + (1 - alpha) * ewma[slot];
+            }
+            int pos = slot * window + head[slot];
+            samples[pos] = value;
+            times[pos] = t;
+            head[slot] = (head[slot] + 1) % window;
+            if (count[slot] < window) count[slot]++;
+        }
+    }
+
+    /**
+     * 预测单条链路horizon之后的负载，没有历史样本时返回NaN
+     */
+    public synchronized double predict(Link link) {
+        Integer slot = slots.get(link);
+        if (slot == null) return Double.NaN;
+        return forecast(slot);
+    }
+
+    /**
+     * 对当前负载中的每条链路给出预测负载，没有历史样本的链路沿用当前值
+     */
+    public synchronized Map<Link, Double> predict(Map<Link, Double> current) {
+        Map<Link, Double> result = new HashMap<>(current.size() * 2);
+        for (Map.Entry<Link, Double> e : current.entrySet()) {
+            Integer slot = slots.get(e.getKey());
+            result.put(e.getKey(), slot == null ? e.getValue() : forecast(slot));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    private double forecast(int slot) {
+        double value = ewma[slot] + slope(slot) * horizon;
+        return value < 0 ? 0 : value;
+    }
+
+    /**
+     * 在槽位的最近样本上做最小二乘拟合，返回负载随时间的变化率(每秒)
+     */
+    private double slope(int slot) {
+        int n = count[slot];
+        if (n < 2) return 0;
+        int base = slot * window;
+        double t0 = times[base + (head[slot] + window - 1) % window];
+        double sumT = 0, sumV = 0;
+        for (int k = 0; k < n; k++) {
+            sumT += times[base + k] - t0;
+            sumV += samples[base + k];
+        }
+        double meanT = sumT / n, meanV = sumV / n;
+        double num = 0, den = 0;
+        for (int k = 0; k < n; k++) {
+            double dt = times[base + k] - t0 - meanT;
+            num += dt * (samples[base + k] - meanV);
+            den += dt * dt;
+        }
+        return den == 0 ? 0 : num / den;
+    }
+
+    private int allocate() {
+        if (freeCount == 0) grow();
+        int slot = freeSlots[--freeCount];
+        count[slot] = 0;
+        head[slot] = 0;
+        return slot;
+    }
+
+    private void release(int slot) {
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void grow() {
+        int newCapacity = Math.max(16, capacity * 2);
+        ewma = Arrays.copyOf(ewma, newCapacity);
+        count = Arrays.copyOf(count, newCapacity);
+        head = Arrays.copyOf(head, newCapacity);
+        samples = Arrays.copyOf(samples, newCapacity * window);
+        times = Arrays.copyOf(times, newCapacity * window);
+        freeSlots = Arrays.copyOf(freeSlots, newCapacity);
+        // 新槽位倒序入栈，使分配从小下标开始
+        for (int s = newCapacity - 1; s >= capacity; s--) {
+            freeSlots[freeCount++] = s;
+        }
+        capacity = newCapacity;
+    }
+}
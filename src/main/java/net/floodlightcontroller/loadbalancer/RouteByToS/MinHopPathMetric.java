@@ -0,0 +1,33 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import java.util.BitSet;
+
+/**
+ * 最少跳数：只看链路是否开放，不区分剩余带宽
+ * 使用ToSRouteTable，在上一轮的表上按链路开关的增量修复
+ */
+public class MinHopPathMetric implements IPathMetric {
+    public static final String NAME = "minhop";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public IRouteTable compute(LinkGraph graph, IRouteTable previous, BitSet changedDst) {
+        int n = graph.size();
+        if (previous instanceof ToSRouteTable && previous.size() == n) {
+            //在副本上更新，正在使用的表保持不变
+            ToSRouteTable table = ((ToSRouteTable) previous).copy();
+            BitSet changed = table.update(graph.getAdjacency());
+            if (changed.isEmpty()) return previous;
+            changedDst.or(changed);
+            return table;
+        }
+        ToSRouteTable table = new ToSRouteTable(n);
+        table.update(graph.getAdjacency());
+        PathTable.diff(previous, table, changedDst);
+        return table;
+    }
+}
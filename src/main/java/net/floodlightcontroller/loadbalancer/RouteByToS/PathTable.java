@@ -0,0 +1,69 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import java.util.BitSet;
+
+/**
+ * 带权路径度量计算出的路由表
+ * next和cost都以一维数组按行存放，(i,j)对应下标i*n+j，cost为该度量下i到j的路径代价
+ */
+public class PathTable implements IRouteTable {
+    private final int n;
+    private final int[] next;
+    private final double[] cost;
+
+    public PathTable(int n, int[] next, double[] cost) {
+        this.n = n;
+        this.next = next;
+        this.cost = cost;
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    @Override
+    public int getNextHop(int src, int dst) {
+        return next[src * n + dst];
+    }
+
+    @Override
+    public boolean isReachable(int src, int dst) {
+        return src == dst || next[src * n + dst] >= 0;
+    }
+
+    /**
+     * 带权度量下代价恰好相等的路径很少，只返回唯一的下一跳
+     */
+    @Override
+    public int getNextHops(int src, int dst, int[] hops) {
+        if (src == dst || !isReachable(src, dst)) return 0;
+        hops[0] = next[src * n + dst];
+        return 1;
+    }
+
+    public double getCost(int src, int dst) {
+        return cost[src * n + dst];
+    }
+
+    /**
+     * 找出与上一轮路由表相比可达性或下一跳有变化的目的节点
+     */
+    public static void diff(IRouteTable previous, IRouteTable current, BitSet changedDst) {
+        int n = current.size();
+        if (previous == null || previous.size() != n) {
+            changedDst.set(0, n);
+            return;
+        }
+        for (int d = 0; d < n; d++) {
+            for (int i = 0; i < n; i++) {
+                boolean reachable = current.isReachable(i, d);
+                if (reachable != previous.isReachable(i, d)
+                        || (reachable && i != d && current.getNextHop(i, d) != previous.getNextHop(i, d))) {
+                    changedDst.set(d);
+                    break;
+                }
+            }
+        }
+    }
+}
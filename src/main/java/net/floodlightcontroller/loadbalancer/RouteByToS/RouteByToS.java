@@ -8,40 +8,65 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.core.util.OFMessageBatcher;
 import net.floodlightcontroller.core.util.SingletonTask;
+import net.floodlightcontroller.counter.CounterStore;
+import net.floodlightcontroller.counter.CounterValue;
+import net.floodlightcontroller.counter.ICounter;
 import net.floodlightcontroller.counter.ICounterStoreService;
 import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceListener;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.SwitchPort;
+import net.floodlightcontroller.linkCostService.ILinkCostListener;
 import net.floodlightcontroller.linkCostService.ILinkCostService;
-import net.floodlightcontroller.linkCostService.LinkBandwidthType;
+import net.floodlightcontroller.linkCostService.LinkCostSnapshot;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryListener;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.linkdiscovery.LinkInfo;
+import net.floodlightcontroller.loadbalancer.RouteByToS.web.RouteByToSWebRoutable;
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleChange;
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleKey;
+import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.Link;
 import net.floodlightcontroller.routing.Route;
 import net.floodlightcontroller.routing.RouteId;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.topology.ITopologyListener;
+import net.floodlightcontroller.topology.ITopologyService;
 import net.floodlightcontroller.topology.NodePortTuple;
 import net.floodlightcontroller.util.OFMessageDamper;
 import org.openflow.protocol.*;
 import org.openflow.protocol.action.OFAction;
 import org.openflow.protocol.action.OFActionOutput;
+import org.openflow.protocol.statistics.OFFlowStatisticsReply;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Victor on 2017/2/8.
  */
-public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageListener{
+public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageListener,
+        ILinkDiscoveryListener, ITopologyListener, ILinkCostListener {
     private IFloodlightProviderService floodlightProvider;
     private IThreadPoolService threadPool;
     private ILinkDiscoveryService linkDiscoveryManager;
     private ILinkCostService linkCostService;
     private IDeviceService deviceManager;
+    private ITopologyService topology;
+    private IRestApiService restApi;
     protected ICounterStoreService counterStore;
     protected OFMessageDamper messageDamper;
     private SingletonTask newInstanceTask;
@@ -53,54 +78,100 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
     protected static short FLOWMOD_DEFAULT_HARD_TIMEOUT = 0; // infinite
     protected static short FLOWMOD_PRIORITY = 100;
 
-    //当前网络中链路的最大容量
-    protected static double maxLinkCompacity;
-
-    //业务的带宽占用类型<ToS号，带宽占用>
-    private static Map<Integer, Double> BandwidthType = new HashMap<>();
+    public static final int ROUTE_BY_TOS_APP_ID = 30;
+    static {
+        AppCookie.registerApp(ROUTE_BY_TOS_APP_ID, "RouteByToS");
+    }
 
-    //业务的丢包率要求<ToS号，丢包率要求百分比>
-    private static Map<Integer, Double> LossRateType = new HashMap<>();
 
-    //业务的时延要求
-    private static Map<Integer, Integer> DelayType = new HashMap<>();
+    //业务的带宽占用、丢包率要求和时延要求分类表，可通过REST整体替换
+    private volatile ToSClassTable tosClassTable;
 
     //ToS分级数目
     //private static int ToSLevelNum ;
     //拓扑描述
-    Map<Long, Set<Link>> switchLinks = new HashMap<>();
-    Map<Link, LinkInfo> allLinks = new HashMap<>();
-    //链路权重<链路，速率>
-    private Map<Link, Double> linkCost = new HashMap<>();
-    //链路带宽容量map
-    private Map<Link,LinkBandwidthType> linkTypeMap = new HashMap<>();
+    //链路权重模块发布的拓扑快照(交换机下标、邻接关系、链路负载和容量)，直接持有引用
+    private volatile LinkCostSnapshot topo = LinkCostSnapshot.EMPTY;
+    //链路发现模块当前的链路，用于及时关闭已断开的链路
+    private Map<Link, LinkInfo> liveLinks = new HashMap<>();
     //预测链路权重<链路，速率>
     private Map<Link, Double> predictLinkCost;
+    //链路负载预测器，由链路权重更新事件喂入样本
+    private LinkLoadPredictor linkLoadPredictor;
+    protected static double PREDICT_ALPHA = 0.5;
+    protected static int PREDICT_WINDOW = 6;
+    protected static int PREDICT_HORIZON = 5000; // ms
     //拓扑图<dpId, 链路>
     private Map<Long, Set<Link>> wholeTopology;
 
 
-    //dpId和拓扑邻接矩阵下标之间的映射关系
-    private Map<Long, Integer>  dpIdMap;
-    private Map<Integer, Long>  IndexMap;
-
-    //拓扑图(邻接矩阵形式)
-    private List<List<Link>> TopoMatrix;
     //拓扑中的设备
     private Collection<? extends IDevice> allDevices;
-    //拓扑中的交换机数目
-    private int switchNum = 0;
     // 路由表，即ToS分级下的path
     //private Map<Byte, List<List<Integer>>> routeTable;
     // 距离表，即ToS分级下的dist
     //private Map<Byte, List<List<Integer>>> dist;
     // 路由结果
-    private TreeMap<Byte,Map<RouteId,Route>> routeCache = new TreeMap<>();
-
-
-
-    //IP地址对应的接入点
-    private Map<Integer, SwitchPort>  attachmentMap = new HashMap<>();
+    // ToS分级
+    private TreeSet<Byte> ToSLevels = new TreeSet<>();
+    // 当前发布的路由快照(各ToS分级下的最短路表和路径cache)，每轮计算完成后整体替换
+    private volatile RouteSnapshot routeSnapshot;
+    // 并行计算各ToS级别路由的线程池
+    private ForkJoinPool routeComputePool;
+    protected static int ROUTE_COMPUTE_THREADS = Runtime.getRuntime().availableProcessors();
+    // 事件触发路由计算的合并等待时间，以及没有事件时的兜底周期
+    protected static int ROUTE_UPDATE_DEBOUNCE = 200; // ms
+    protected static int ROUTE_UPDATE_INTERVAL = 5000; // ms
+    private volatile long lastRouteUpdateTime = 0;
+    private volatile boolean routeUpdateRequested = false;
+    // 已注册的路径度量<名字, 度量>，以及各ToS级别选用的度量
+    private Map<String, IPathMetric> pathMetrics = new ConcurrentHashMap<>();
+    private Map<Byte, IPathMetric> levelPathMetric = new ConcurrentHashMap<>();
+    // 默认的路径度量，以及按ToS范围指定的度量，形如"0-15=minhop,48-63=delay"
+    protected static String PATH_METRIC = MinHopPathMetric.NAME;
+    protected static String PATH_METRIC_BY_TOS = "";
+    // 每对交换机之间最多使用的等价路径数
+    protected static int MAX_PATHS = 4;
+    // 各路径被getRoute选中的次数<路径, 次数>，路径不含主机端口
+    // 每次选路(即每个packet-in)计一次，并不是路径上的流数
+    private ConcurrentHashMap<Route, AtomicLong> pathSelections = new ConcurrentHashMap<>();
+    // 各ToS级别下链路开放/关闭的滞回判定
+    private Map<Byte, LinkAdmissionControl> linkAdmission = new HashMap<>();
+    protected static double ADMISSION_BAND = 0.5; // Mbps
+    protected static int ADMISSION_HOLD = 10000; // ms
+
+
+
+    //IP地址对应的接入点，由设备事件维护，packet-in线程和路由计算线程共同读取
+    private AttachmentIndex attachmentIndex;
+    //设备当前登记的IP地址<设备key, IP地址>，用于设备IP变化或删除时清理旧地址
+    private final Map<Long, int[]> deviceIPs = new HashMap<>();
+    protected static int MAX_HOSTS = 65536;
+    protected static int HOST_TIMEOUT = 3600; // s
+    protected DeviceListenerImpl deviceListener;
+    //已下发流表的记录，用于增量下发
+    private FlowTableReconciler flowTableReconciler = new FlowTableReconciler();
+    private FlowRuleCompiler flowRuleCompiler = new FlowRuleCompiler();
+    //按(入口, 出口, ToS)的流量需求矩阵，由ToS规则的流统计周期性估计，同一份统计也用于审计已下发记录
+    private volatile DemandMatrix demandMatrix = DemandMatrix.EMPTY;
+    private DemandEstimator demandEstimator;
+    private FlowStatsCollector flowStatsCollector;
+    private SingletonTask demandTask;
+    protected static int DEMAND_POLL_INTERVAL = 5000; // ms，为0时不采集
+    protected static double DEMAND_ALPHA = 0.5;
+    protected static int FLOW_STATS_TIMEOUT = 2000; // ms
+    //FlowMod按交换机合并发送，每批最多FLOWMOD_BATCH_SIZE条
+    private OFMessageBatcher flowModBatcher;
+    protected static int FLOWMOD_BATCH_SIZE = 100;
+    protected static int FLOWMOD_BATCH_DELAY = 10; // ms
+    private ICounter ctrFlowModAdd;
+    private ICounter ctrFlowModModify;
+    private ICounter ctrFlowModDelete;
+    private ICounter ctrInstalledRules;
+    private ICounter ctrDesiredRules;
+    private ICounter ctrLinkFlaps;
+    private ICounter ctrFlowRemoved;
+    private ICounter ctrAuditRepairs;
     // 顶点集合
     private char[] mVexs;
     // ToS分级下的拓扑
@@ -111,137 +182,24 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
     protected static Logger log = LoggerFactory.getLogger(RouteByToS.class);
 
     /**
-     * 完成对网络拓扑信息的复制, 将网络的初始拓扑保存下来
-     * getSwitchLinks获得的是双工链路，这里将其视为一条
+     * 取得链路权重模块最新发布的拓扑快照
+     * 快照不可变，只保存引用，不再复制链路表和构造邻接矩阵
      */
     public void copySwitchLinks() {
-        synchronized (linkCostService) {
-            linkCost.clear();
-            switchLinks.clear();
-            allLinks.clear();
-            linkTypeMap.clear();
-            switchLinks.putAll(linkCostService.getSwitchLinks());
-            allLinks.putAll(linkCostService.getLinks());
-            linkCost.putAll(linkCostService.getLinkCost());  //获取链路速率
-            maxLinkCompacity = linkCostService.getMaxLinkCompacity();
-            linkTypeMap.putAll(linkCostService.getLinkTypeMap());
-        }
-        //如果linkDiscoveryManager还未更新则不更新任何数据
-        if(switchLinks==null||switchLinks.isEmpty())    return;
-
-        for(Link link : linkCost.keySet()){
-            log.info("LinkCostRecord {} to {} : {} Mbps",new Object[]{link.getSrc(),link.getDst(),linkCost.get(link)});
-        }
-
-        /**
-         * 将拓扑结构复制为邻接矩阵的形式
-         * @Author Victor
-         */
-        wholeTopology = new HashMap<>();
-        TopoMatrix = new ArrayList<>();
-        dpIdMap = new HashMap<>();
-        IndexMap = new HashMap<>();
-        Set<Long> allSwitches = switchLinks.keySet();
-        switchNum = allSwitches.size();
-
-        int index = 0;
-        //建立dpid和index之间的映射关系
-        for(long dpid : allSwitches){
-            dpIdMap.put(dpid, index);
-            IndexMap.put(index, dpid);
-            index++;
-        }
-
-        for(int i=0;i<switchNum;i++){   //初始化TopoMatrix
-            TopoMatrix.add(new ArrayList<>(switchNum));
-            for(int j=0;j<switchNum;j++)   {
-                if(i!=j)    TopoMatrix.get(i).add(null);
-                else        TopoMatrix.get(i).add(new Link());  // 什么都没有的link表示自己连接自己
-            }
-        }
-        //建立邻接矩阵形式的拓扑图
-        for(Link link : allLinks.keySet()){
-            int srcIndex = dpIdMap.get(link.getSrc());
-            int dstIndex = dpIdMap.get(link.getDst());
-            TopoMatrix.get(srcIndex).set(dstIndex, link);
-            //TopoMatrix.get(dstIndex).set(srcIndex, link);
-        }
-        log.info("copy topo finished");
-		/*
-		 * Set<Long> dpids=wholeTopology.keySet(); Iterator<Long>
-		 * iter3=keys.iterator(); while(iter3.hasNext()){ long
-		 * dpid=iter3.next(); Set<Link> links=wholeTopology.get(dpid);
-		 * Iterator<Link> iter4=links.iterator(); while(iter4.hasNext()){ Link
-		 * link=iter4.next(); System.out.println(link); } }
-		 */
-    }
-
-    /**
-     * floyd最短路径。
-     * 即，统计图中各个顶点间的最短路径。
-     *
-     * 参数说明：
-     *     path -- 路径。path[i][j]=k表示，"顶点i"到"顶点j"的最短路径会经过顶点k，即routeTable[i]
-     *     dist -- 长度数组。即，dist[i][j]=sum表示，"顶点i"到"顶点j"的最短路径的长度是sum。
-     *     mMatrix -- 某个ToS阈值下的拓扑邻接矩阵
-     */
-    public void floyd(int[][] path, int[][] dist, int[][] mMatrix) {
-
-        // 初始化
-        for (int i = 0; i < switchNum; i++) {
-            for (int j = 0; j < switchNum; j++) {
-                dist[i][j] = mMatrix[i][j];    // "顶点i"到"顶点j"的路径长度为"i到j的权值"。
-                path[i][j] = j;                // "顶点i"到"顶点j"的最短路径是经过顶点j。
+        LinkCostSnapshot snapshot = linkCostService.getSnapshot();
+        //链路集合直接取自链路发现模块(返回的已是拷贝)，链路断开后无需等待下一轮链路权重计算即可生效
+        liveLinks = linkDiscoveryManager.getLinks();
+        //如果链路权重模块还未发布拓扑则不更新任何数据
+        if(snapshot.size() == 0)    return;
+
+        if (snapshot.getVersion() != topo.getVersion()) {
+            for (Map.Entry<Link, Double> e : snapshot.getLinkCost().entrySet()) {
+                log.info("LinkCostRecord {} to {} : {} Mbps",
+                        new Object[]{e.getKey().getSrc(), e.getKey().getDst(), e.getValue()});
             }
         }
-
-        // 计算最短路径
-        for (int k = 0; k < switchNum; k++) {
-            for (int i = 0; i < switchNum; i++) {
-                for (int j = 0; j < switchNum; j++) {
-
-                    // 如果经过下标为k顶点路径比原两点间路径更短，则更新dist[i][j]和path[i][j]
-                    int tmp = (dist[i][k]==INF || dist[k][j]==INF) ? INF : (dist[i][k] + dist[k][j]);
-                    if (dist[i][j] > tmp) {
-                        // "i到j最短路径"对应的值设，为更小的一个(即经过k)
-                        dist[i][j] = tmp;
-                        // "i到j最短路径"对应的路径，经过k
-                        path[i][j] = path[i][k];
-                    }
-                }
-            }
-        }
-    }
-
-
-    public void floyd(List<List<Integer>> path, List<List<Integer>> dist, List<List<Integer>> mMatrix) {
-        try {
-            // 初始化
-            for (int i = 0; i < switchNum; i++) {
-                for (int j = 0; j < switchNum; j++) {
-                    dist.get(i).set(j, mMatrix.get(i).get(j));    // "顶点i"到"顶点j"的路径长度为"i到j的权值"。
-                    path.get(i).set(j, j);                // "顶点i"到"顶点j"的最短路径是经过顶点j。
-                }
-            }
-
-            // 计算最短路径
-            for (int k = 0; k < switchNum; k++) {
-                for (int i = 0; i < switchNum; i++) {
-                    for (int j = 0; j < switchNum; j++) {
-                        // 如果经过下标为k顶点路径比原两点间路径更短，则更新dist[i][j]和path[i][j]
-                        int tmp = (dist.get(i).get(k) == INF || dist.get(k).get(j) == INF) ? INF : (dist.get(i).get(k) + dist.get(k).get(j));
-                        if (dist.get(i).get(j) > tmp) {
-                            // "i到j最短路径"对应的值设，为更小的一个(即经过k)
-                            dist.get(i).set(j, tmp);
-                            // "i到j最短路径"对应的路径，经过k (path是从第一个坐标为起点，到达第二个坐标时的下一跳)
-                            path.get(i).set(j, path.get(i).get(k));
-                        }
-                    }
-                }
-            }
-        }catch (Exception e){
-            log.error("Floyd failed to execute!");
-        }
+        topo = snapshot;
+        log.info("copy topo finished");
     }
 
     /**
@@ -253,95 +211,155 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
             log.error("LinkCost is null");
             return;
         }
-        //初始化距离矩阵
-        //dist = new HashMap<>();
-        //初始化总的routeTable
-        //routeTable = new HashMap<>();
-        for(Byte ToS : routeCache.keySet()){
-            double threshold = ThresholdCompute(ToS);
-            //初始化每一张routeTable、dist
-            //routeTable.put(ToS, new ArrayList<>());
-            //dist.put(ToS, new ArrayList<>());
-            //不同ToS分级下的邻接矩阵(1表示邻接)
-            List<List<Integer>> curTopoMatrix = new ArrayList<>();
-            //初始化邻接矩阵
-            for(int i=0;i<switchNum;i++){
-                curTopoMatrix.add(new ArrayList<>(switchNum));
-                for(int j=0;j < switchNum;j++){
-                    if(i!=j)    curTopoMatrix.get(i).add(INF);
-                    else    curTopoMatrix.get(i).add(0);
-                }
-            }
-            List<List<Integer>> curRouteTable = new ArrayList<>();
-            List<List<Integer>> curDist = new ArrayList<>();
+        //交换机下标或端口对应关系发生变化时，增量结果不再可用，需要整体重算
+        RouteSnapshot oldSnapshot = routeSnapshot;
+        LinkCostSnapshot topology = topo;
+        boolean topoChanged = topology.getTopologyVersion() != oldSnapshot.getTopology().getTopologyVersion();
+        //各ToS级别基于同一份predictLinkCost独立计算，并行提交到ForkJoin线程池
+        List<ToSComputeTask> tasks = new ArrayList<>(ToSLevels.size());
+        long now = System.currentTimeMillis();
+        //本轮所有级别使用同一份分类表
+        ToSClassTable classes = tosClassTable;
+        for(Byte ToS : ToSLevels){
+            ToSComputeTask task = new ToSComputeTask(ToS, classes.threshold(ToS, topology.getMaxLinkCompacity()),
+                    topology, oldSnapshot, topoChanged, now);
+            tasks.add(task);
+            routeComputePool.execute(task);
+        }
+        TreeMap<Byte,Map<RouteId,Route>> newRouteCache = new TreeMap<>();
+        Map<Byte, IRouteTable> newRouteTables = new HashMap<>();
+        for(ToSComputeTask task : tasks){
+            task.join();
+            newRouteCache.put(task.ToS, task.cache);
+            newRouteTables.put(task.ToS, task.table);
+        }
+        //所有级别都计算完成后再整体替换快照，读者不会看到只算了一半的结果
+        routeSnapshot = new RouteSnapshot(oldSnapshot.getGeneration() + 1,
+                topology, newRouteTables, newRouteCache, MAX_PATHS);
+        //拓扑变化后旧路径不再有意义，重新统计各路径的选中次数；
+        //否则只丢弃新快照中已不存在的路径(如准入或门限变化后被排除的路径)
+        if (topoChanged) {
+            pathSelections.clear();
+        } else {
+            prunePathSelections(routeSnapshot);
+        }
+        if (ctrLinkFlaps != null) {
+            CounterValue v = new CounterValue(CounterValue.CounterType.LONG);
+            v.setLongValue(getLinkFlapCount());
+            ctrLinkFlaps.setCounter(new Date(), v);
+        }
+    }
 
-            //List<List<Integer>> everyRouteTable = routeTable.get(ToS);
-            //List<List<Integer>> everyDist = dist.get(ToS);
+    /**
+     * 单个ToS级别的路由计算任务：构造门限邻接矩阵，更新最短路表，并生成该级别新的路径cache
+     * 不修改当前正在使用的路由表和cache，结果由routeCompute统一发布
+     */
+    private class ToSComputeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Byte ToS;
+        private final double threshold;
+        private final LinkCostSnapshot topology;
+        private final RouteSnapshot oldSnapshot;
+        private final boolean topoChanged;
+        private final long now;
+        private IRouteTable table;
+        private Map<RouteId,Route> cache;
+
+        ToSComputeTask(Byte ToS, double threshold, LinkCostSnapshot topology,
+                       RouteSnapshot oldSnapshot, boolean topoChanged, long now) {
+            this.ToS = ToS;
+            this.threshold = threshold;
+            this.topology = topology;
+            this.oldSnapshot = oldSnapshot;
+            this.topoChanged = topoChanged;
+            this.now = now;
+        }
 
-            for(int j=0;j<switchNum;j++){
-                curRouteTable.add(new ArrayList<>(switchNum));
-                curDist.add(new ArrayList<>(switchNum));
-                //在floyd算法中还会被初始化
-                for(int k=0;k<switchNum;k++){
-                    curRouteTable.get(j).add(INF);
-                    curDist.get(j).add(INF);
+        @Override
+        protected void compute() {
+            int switchCount = topology.size();
+            //不同ToS分级下的邻接矩阵(按行展开，true表示链路开放)
+            boolean[] curTopoMatrix = new boolean[switchCount * switchCount];
+            //开放链路的剩余带宽，供带权的路径度量使用
+            double[] residual = new double[switchCount * switchCount];
+            LinkAdmissionControl admission = linkAdmission.get(ToS);
+            //按快照的邻接关系构造当前ToS下的拓扑邻接矩阵，没有负载样本的链路不开放
+            for (int srcIndex = 0; srcIndex < switchCount; srcIndex++) {
+                for (int e = topology.edgeBegin(srcIndex); e < topology.edgeEnd(srcIndex); e++) {
+                    Link link = topology.getLink(e);
+                    Double curLoad = predictLinkCost.get(link);
+                    if (curLoad == null) continue;
+                    double curLeftBandwidth = topology.getCapacity(e) - curLoad;
+                    int dstIndex = topology.getTarget(e);
+                    //剩余带宽相对门限带滞回地判定链路是否开放，链路断开则立即关闭
+                    if(admission.admit(link, curLeftBandwidth, threshold, now)) {
+                        if(liveLinks.containsKey(link)) {
+                            curTopoMatrix[srcIndex * switchCount + dstIndex] = true;
+                            residual[srcIndex * switchCount + dstIndex] = curLeftBandwidth;
+                        }
+                    }
                 }
             }
-            Set<Link> linkSet = predictLinkCost.keySet();
-            //构造当前ToS下的拓扑邻接矩阵
-            for(Link link : linkSet){
-                double curLoad = predictLinkCost.get(link);
-                double curLeftBandwidth =  linkTypeMap.get(link).getBandwidth()-curLoad;
-                int srcIndex = dpIdMap.get(link.getSrc());
-                int dstIndex = dpIdMap.get(link.getDst());
-                if(curLeftBandwidth >= threshold) {   //当剩余带宽大于等于门限，则链路开放
-                    if(allLinks.containsKey(link)) curTopoMatrix.get(srcIndex).set(dstIndex, 1);
-                    //curTopoMatrix.get(dstIndex).set(srcIndex, 1);
+            admission.retain(predictLinkCost.keySet());
+            IRouteTable oldTable = oldSnapshot.getRouteTable(ToS);
+            Map<RouteId,Route> oldCache = oldSnapshot.getRouteCache(ToS);
+            boolean rebuild = topoChanged || oldTable == null || oldTable.size() != switchCount;
+            //由该级别选用的路径度量计算路由表，只有路由变化的目的节点需要重建cache
+            BitSet changedDst = new BitSet(switchCount);
+            table = getPathMetric(ToS).compute(new LinkGraph(switchCount, curTopoMatrix, residual),
+                    rebuild ? null : oldTable, changedDst);
+            if(!rebuild && changedDst.isEmpty()){
+                table = oldTable;
+                cache = oldCache;
+                return;
+            }
+            if(rebuild) {
+                cache = new HashMap<>();   //拓扑变化时重建当前级别的全部cache
+                changedDst.set(0, switchCount);
+            }else{
+                cache = new HashMap<>(oldCache);
+                Iterator<RouteId> it = cache.keySet().iterator();
+                while(it.hasNext()){
+                    if(changedDst.get(topology.indexOf(it.next().getDst()))) it.remove();
                 }
             }
-            //Floyd算法计算该ToS下的最短路
-            floyd(curRouteTable,curDist,curTopoMatrix);
-            //将路由计算结果写入routeCache
-            Map<RouteId,Route> curCache = routeCache.get(ToS);
-            //循环+递归更新路径cache
-            synchronized (curCache) {
-                curCache.clear();   //更新前应先删除当前级别的cache
-                for (int src = 0; src < switchNum; src++) {
-                    for (int dst = 0; dst < switchNum; dst++) {
-                        addCache(src, dst, curCache, curDist, curRouteTable);
-                    }
+            //将路由计算结果写入cache
+            for (int dst = changedDst.nextSetBit(0); dst >= 0; dst = changedDst.nextSetBit(dst + 1)) {
+                for (int src = 0; src < switchCount; src++) {
+                    addCache(topology, src, dst, cache, table);
                 }
             }
+            if(log.isDebugEnabled()){
+                log.debug("ToS {} : {} destinations recomputed", ToS, changedDst.cardinality());
+            }
         }
-
     }
 
     /**
      * 递归增添路径到cache
+     * @param topology 计算该级别路由表所用的拓扑快照
      * @param src 起点对应邻接矩阵的下标
      * @param dst 终点对应的邻接矩阵的下标
      * @param curCache 当前ToS级别下的路径cache
-     * @param everyDist 当前ToS级别下的距离矩阵
-     * @param everyRouteTable 当前ToS级别下的路由表
+     * @param table 当前ToS级别下的最短路表
      */
-    public void addCache(int src,int dst,
+    public void addCache(LinkCostSnapshot topology,int src,int dst,
                          Map<RouteId,Route> curCache,
-                         List<List<Integer>> everyDist,
-                         List<List<Integer>> everyRouteTable
+                         IRouteTable table
                          )
     {
         //如果路径存在并且在cache中不存在该路径则添加路径(源和目的相同的情况不包括在内)
-        if(everyDist.get(src).get(dst)!=INF && src!=dst) {
-            RouteId curId = new RouteId(IndexMap.get(src),IndexMap.get(dst));
+        if(table.isReachable(src, dst) && src!=dst) {
+            RouteId curId = new RouteId(topology.getDpid(src), topology.getDpid(dst));
             if(!curCache.containsKey(curId)){
                 List<NodePortTuple> path = new ArrayList<>();
-                int nextHopIndex = everyRouteTable.get(src).get(dst);
+                int nextHopIndex = table.getNextHop(src, dst);
                 int routeCount = 0;
                 if(nextHopIndex!=dst){
-                    RouteId nextHopId = new RouteId((IndexMap.get(nextHopIndex)),IndexMap.get(dst));
+                    RouteId nextHopId = new RouteId(topology.getDpid(nextHopIndex), topology.getDpid(dst));
                     //如果cache中不存在下一跳到终点的记录，则递归寻找
                     if(!curCache.containsKey(nextHopId)){
-                        addCache(nextHopIndex,dst,curCache,everyDist,everyRouteTable);
+                        addCache(topology,nextHopIndex,dst,curCache,table);
                     }
                     Route tmp = curCache.get(nextHopId);
                     path.addAll(tmp.getPath());
@@ -349,7 +367,7 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
                 }
                 try {
                     //根据拓扑矩阵确定src到nextHop之间的端口对应关系
-                    Link link = TopoMatrix.get(src).get(nextHopIndex);
+                    Link link = topology.getLink(topology.findEdge(src, nextHopIndex));
                     NodePortTuple srcNPT = new NodePortTuple(link.getSrc(), link.getSrcPort());
                     NodePortTuple nextHopNPT = new NodePortTuple(link.getDst(), link.getDstPort());
                     path.add(0,nextHopNPT);
@@ -357,157 +375,263 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
                     Route tmp = new Route(curId,path);
                     tmp.setRouteCount(routeCount++);
                     curCache.put(curId,tmp);
-                }catch (NullPointerException e){
-                    log.error("TopoMatrix is not consist with RouteTable");
+                }catch (ArrayIndexOutOfBoundsException e){
+                    log.error("Topology snapshot is not consist with RouteTable");
                 }
             }
         }
     }
 
     /**
-     * 根据ToS计算threshold的工具类
-     */
-    private double ThresholdCompute(byte ToS){
-        try {
-            double RequiredBandwith = BandwidthType.get((ToS>>4)&(byte)3);
-            double RequiredLossRate = LossRateType.get((ToS>>3)&(byte)1);
-            int RequiredDelay = DelayType.get(ToS&(byte)7);
-            double basicThreshold = (1-RequiredLossRate)*RequiredBandwith;
-            double diff = maxLinkCompacity-basicThreshold;
-            int bucketNum = Math.min((int)(diff/BandwidthType.get(1)),DelayType.size());
-            //匹配桶的区域
-            for (double i=bucketNum-1.0;i>=0.0;i--){
-                if((double)RequiredDelay/DelayType.size()>=i/bucketNum)  return  basicThreshold+i/bucketNum*diff;
-            }
-//            for (double i=1.0;i<=bucketNum;i++){
-//                if((double)RequiredDelay/DelayType.size()>i/bucketNum)   return  basicThreshold+i/bucketNum*diff;
-//            }
-            return basicThreshold;
-        }catch (Exception e){
-            log.warn("No suitable ToS found");
-            return 0.0;
-        }
-
-    }
-    /**
-     * 生成默认OFMatch的工具类
-     * 参考pushStaticVipRoute
+     * 根据规则键直接构造OFMatch：IPv4报文、目的地址前缀，以及ToS(不匹配ToS的规则通配nw_tos)
      */
-    private OFMatch matchGenerate(Integer dstIP, byte ToS, IOFSwitch sw){
-        String matchString = null;
-        matchString = "nw_dst="+ IPv4.fromIPv4Address(dstIP)+","
-                    + "nw_tos="+ToS;
+    private OFMatch buildMatch(FlowRuleKey key) {
         OFMatch ofMatch = new OFMatch();
-        try {
-            ofMatch.fromString(matchString);
-        }catch (Exception e){
-            log.error("Fail to generate OFMatch");
+        int wildcards = OFMatch.OFPFW_ALL
+                & ~OFMatch.OFPFW_DL_TYPE
+                & ~OFMatch.OFPFW_NW_DST_MASK
+                | ((32 - key.getMaskLen()) << OFMatch.OFPFW_NW_DST_SHIFT);
+        ofMatch.setDataLayerType(Ethernet.TYPE_IPv4);
+        ofMatch.setNetworkDestination(key.getDstIp());
+        if (!key.isAnyToS()) {
+            wildcards &= ~OFMatch.OFPFW_NW_TOS;
+            ofMatch.setNetworkTypeOfService(key.getToS());
         }
-
-        // L2 only wildcard if there is no prior route decision
-        Integer wildcard_hints = null;
-        wildcard_hints = ((Integer) sw
-                .getAttribute(IOFSwitch.PROP_FASTWILDCARDS))
-                .intValue()
-                & ~OFMatch.OFPFW_IN_PORT
-                & ~OFMatch.OFPFW_DL_VLAN
-                & ~OFMatch.OFPFW_DL_SRC
-                & ~OFMatch.OFPFW_DL_DST
-                & ~OFMatch.OFPFW_NW_SRC_MASK
-                & ~OFMatch.OFPFW_NW_DST_MASK;
-        return ofMatch.setWildcards(wildcard_hints.intValue());
-
+        return ofMatch.setWildcards(wildcards);
     }
 
     /**
-     * 下发匹配各个ToS字段的FlowMod(借鉴LearningSwitch中的writeFlowMod)
+     * 生成匹配各个ToS字段的FlowMod(借鉴LearningSwitch中的writeFlowMod)
      *
      * @return
      */
-    private void writeFlowMod(IOFSwitch sw, short command, int bufferId,
-                              OFMatch match, short outPort) {
+    private OFFlowMod buildFlowMod(IOFSwitch sw, short command, int bufferId,
+                                   OFMatch match, short outPort) {
 
         OFFlowMod flowMod = (OFFlowMod) floodlightProvider.getOFMessageFactory().getMessage(OFType.FLOW_MOD);
+        boolean delete = (command == OFFlowMod.OFPFC_DELETE || command == OFFlowMod.OFPFC_DELETE_STRICT);
         flowMod.setMatch(match);
-        flowMod.setCookie(0);
+        flowMod.setCookie(AppCookie.makeCookie(ROUTE_BY_TOS_APP_ID, 0));
         flowMod.setCommand(command);
         flowMod.setIdleTimeout(RouteByToS.FLOWMOD_DEFAULT_IDLE_TIMEOUT);
         flowMod.setHardTimeout(RouteByToS.FLOWMOD_DEFAULT_HARD_TIMEOUT);
         flowMod.setPriority(RouteByToS.FLOWMOD_PRIORITY);
         flowMod.setBufferId(bufferId);
-        flowMod.setOutPort((command == OFFlowMod.OFPFC_DELETE) ? outPort : OFPort.OFPP_NONE.getValue());
-        flowMod.setFlags((command == OFFlowMod.OFPFC_DELETE) ? 0 : (short) (1 << 0)); // OFPFF_SEND_FLOW_REM
+        flowMod.setOutPort(delete ? outPort : OFPort.OFPP_NONE.getValue());
+        flowMod.setFlags(delete ? 0 : (short) (1 << 0)); // OFPFF_SEND_FLOW_REM
         flowMod.setActions(Arrays.asList((OFAction) new OFActionOutput(outPort, (short) 0xffff)));
         flowMod.setLength((short) (OFFlowMod.MINIMUM_LENGTH + OFActionOutput.MINIMUM_LENGTH));
 
         if (log.isTraceEnabled()) {
             log.trace("{} {} flow mod {}",
-                    new Object[]{ sw, (command == OFFlowMod.OFPFC_DELETE) ? "deleting" : "adding", flowMod });
+                    new Object[]{ sw, delete ? "deleting" : "adding", flowMod });
         }
+        return flowMod;
+    }
 
-        counterStore.updatePktOutFMCounterStoreLocal(sw, flowMod);
+    /**
+     * 计算所有接入主机在各ToS级别下的期望流表<dpid, <(目的IP, ToS), 出端口>>
+     * 同一快照中到同一目的交换机的路径构成一棵树，因此对每个(目的IP, ToS)只需处理每个源交换机一次
+     */
+    private Map<Long, Map<FlowRuleKey, Short>> desiredFlowTable(RouteSnapshot snapshot) {
+        Map<Long, Map<FlowRuleKey, Short>> desired = new HashMap<>();
+        //整个计算过程使用同一份接入点拷贝
+        AttachmentIndex.Entries hosts = attachmentIndex.entries();
+        for(Byte ToS : snapshot.getLevels()){
+            for(int d = 0; d < hosts.size; d++) {
+                long dstDpid = hosts.dpids[d];
+                FlowRuleKey key = new FlowRuleKey(hosts.ips[d], ToS);
+                Set<Long> srcSwitches = new HashSet<>();
+                for(int s = 0; s < hosts.size; s++){
+                    if (s == d) continue;
+                    long srcDpid = hosts.dpids[s];
+                    if (!srcSwitches.add(srcDpid)) continue;
+                    //没有合适路由时降到可达的最高ToS级别
+                    int level = snapshot.resolveLevel(srcDpid, dstDpid, ToS);
+                    if (level < 0) continue;
+                    Route route = getRoute(snapshot, srcDpid, hosts.ports[s],
+                            dstDpid, hosts.ports[d], (byte) level);
+                    if (route == null) continue;
+                    List<NodePortTuple> path = route.getPath();
+                    for (int indx = path.size() - 1; indx > 0; indx -= 2) {
+                        long switchDPID = path.get(indx).getNodeId();
+                        Map<FlowRuleKey, Short> swRules = desired.get(switchDPID);
+                        if (swRules == null) {
+                            swRules = new HashMap<>();
+                            desired.put(switchDPID, swRules);
+                        }
+                        swRules.put(key, path.get(indx).getPortId());
+                    }
+                }
+            }
+        }
+        return desired;
+    }
 
-        // and write it out
-        try {
-            sw.write(flowMod, null);
-        } catch (IOException e) {
-            log.error("Failed to write {} to switch {}", new Object[]{ flowMod, sw }, e);
+    /**
+     * 遍历查找所有接入主机的路由，与已下发的流表比较后只下发变化的部分(借鉴Forwarding中的pushRoute)
+     * 每台交换机的变更合并为一次写入
+     */
+    public void UpdateFlowTable(){
+        //整个下发过程使用同一份路由快照
+        RouteSnapshot snapshot = routeSnapshot;
+        //按主机计算的期望流表聚合为前缀规则后再与已下发的流表比较
+        Map<Long, Map<FlowRuleKey, Short>> desired =
+                flowRuleCompiler.compile(desiredFlowTable(snapshot), snapshot.getLevels());
+        Map<Long, List<FlowRuleChange>> changes = flowTableReconciler.reconcile(desired);
+        for (Map.Entry<Long, List<FlowRuleChange>> e : changes.entrySet()) {
+            long switchDPID = e.getKey();
+            IOFSwitch sw = floodlightProvider.getSwitch(switchDPID);
+            if (sw == null) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Unable to push route, switch at DPID {} " +
+                            "not available", switchDPID);
+                }
+                flowTableReconciler.forgetSwitch(switchDPID);
+                flowModBatcher.removeSwitch(switchDPID);
+                continue;
+            }
+            //变更按批写入，本交换机的变更全部入队后发出剩余部分
+            try {
+                for (FlowRuleChange change : e.getValue()) {
+                    OFMatch match = buildMatch(change.getKey());
+                    OFFlowMod flowMod = buildFlowMod(sw, change.getCommand(), OFPacketOut.BUFFER_ID_NONE,
+                            match, change.getOutPort());
+                    counterStore.updatePktOutFMCounterStoreLocal(sw, flowMod);
+                    flowModBatcher.write(sw, flowMod);
+                    switch (change.getCommand()) {
+                        case OFFlowMod.OFPFC_ADD:
+                            ctrFlowModAdd.increment();
+                            break;
+                        case OFFlowMod.OFPFC_MODIFY_STRICT:
+                            ctrFlowModModify.increment();
+                            break;
+                        default:
+                            ctrFlowModDelete.increment();
+                            break;
+                    }
+                }
+                flowModBatcher.flush(sw);
+            } catch (IOException ex) {
+                log.error("Failed to write flow mods to switch {}", sw, ex);
+                flowTableReconciler.forgetSwitch(switchDPID);
+            }
+        }
+        Date now = new Date();
+        CounterValue v = new CounterValue(CounterValue.CounterType.LONG);
+        v.setLongValue(flowTableReconciler.getInstalledCount());
+        ctrInstalledRules.setCounter(now, v);
+        v = new CounterValue(CounterValue.CounterType.LONG);
+        v.setLongValue(flowTableReconciler.getDesiredCount());
+        ctrDesiredRules.setCounter(now, v);
+        if (log.isDebugEnabled()) {
+            log.debug("Flow table reconciled: {} switches changed, {} rules installed",
+                    changes.size(), flowTableReconciler.getInstalledCount());
         }
     }
 
+    /**
+     * 注册流表下发相关的计数器
+     */
+    private ICounter createCounter(String name) {
+        String key = getName() + CounterStore.TitleDelimitor + name;
+        ICounter counter = counterStore.getCounter(key);
+        if (counter == null) {
+            counter = counterStore.createCounter(key, CounterValue.CounterType.LONG);
+        }
+        return counter;
+    }
 
+    @Override
+    public int getInstalledRuleCount() {
+        return flowTableReconciler.getInstalledCount();
+    }
 
+    @Override
+    public int getDesiredRuleCount() {
+        return flowTableReconciler.getDesiredCount();
+    }
+
+    @Override
+    public void registerPathMetric(IPathMetric metric) {
+        pathMetrics.put(metric.getName(), metric);
+    }
+
+    @Override
+    public void setPathMetric(Byte ToS, String name) {
+        IPathMetric metric = pathMetrics.get(name);
+        if (metric == null) {
+            throw new IllegalArgumentException("Unknown path metric " + name);
+        }
+        levelPathMetric.put(ToS, metric);
+    }
+
+    @Override
+    public IPathMetric getPathMetric(Byte ToS) {
+        IPathMetric metric = levelPathMetric.get(ToS);
+        return (metric == null) ? pathMetrics.get(MinHopPathMetric.NAME) : metric;
+    }
 
     /**
-     * 遍历查找所有接入主机的路由，并下发对应流表到各交换机(借鉴Forwarding中的pushRoute)
-     * 借鉴pushRoute()的写法
+     * 按配置为各ToS级别选择路径度量，配置有误的项忽略并使用默认度量
      */
-    public void UpdateFlowTable(){
-        for(Byte ToS : routeCache.keySet()){
-            Byte curToS = ToS;                              //用于在没有合适路由的情况下改变路由级别
-            Set<Integer> IPSet = attachmentMap.keySet();    //遍历所有登记过的主机地址
-            for(Integer IpSrc : IPSet){
-                for(Integer IpDst : IPSet) {
-                    if (IpDst.equals(IpSrc)) continue;
-                    SwitchPort dst = attachmentMap.get(IpDst);
-                    SwitchPort src = attachmentMap.get(IpSrc);
-
-                    while (curToS-- > 0){
-                        Route route = getRoute(src.getSwitchDPID(), (short) src.getPort(),
-                                dst.getSwitchDPID(), (short) dst.getPort(),
-                                0, curToS, true);
-
-                        //如果当前ToS下有合适的链路
-                        if (route != null) {
-                            List<NodePortTuple> path = route.getPath();
-
-                            for (int indx = path.size() - 1; indx > 0; indx -= 2) {
-                                long switchDPID = path.get(indx).getNodeId();
-                                IOFSwitch sw = floodlightProvider.getSwitch(switchDPID);
-                                if (sw == null) {
-                                    if (log.isWarnEnabled()) {
-                                        log.warn("Unable to push route, switch at DPID {} " +
-                                                "not available", switchDPID);
-                                    }
-                                    break;
-                                }
-                                OFMatch match = matchGenerate(IpDst, ToS, sw);
-                                short outPort = path.get(indx).getPortId();
-                                writeFlowMod(sw, OFFlowMod.OFPFC_ADD, OFPacketOut.BUFFER_ID_NONE, match, outPort);
-
-                            }
-                            break;
-                        }
-                        //if(curToS>0)    log.info("No matched route for current ToS , auto decrease ToS level to {}",curToS);
-                        //else            log.warn("No matched route in route cache");
-                    }
+    private void configurePathMetrics() {
+        for (Byte ToS : ToSLevels) {
+            levelPathMetric.put(ToS, pathMetrics.get(MinHopPathMetric.NAME));
+        }
+        try {
+            for (Byte ToS : ToSLevels) {
+                setPathMetric(ToS, PATH_METRIC);
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown path metric {}, using default of {}",
+                     PATH_METRIC, MinHopPathMetric.NAME);
+        }
+        for (String entry : PATH_METRIC_BY_TOS.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            try {
+                String[] kv = entry.split("=");
+                if (kv.length != 2) throw new IllegalArgumentException(entry);
+                String[] range = kv[0].trim().split("-");
+                int lo = Integer.parseInt(range[0].trim());
+                int hi = (range.length > 1) ? Integer.parseInt(range[1].trim()) : lo;
+                for (Byte ToS : ToSLevels) {
+                    if (ToS >= lo && ToS <= hi) setPathMetric(ToS, kv[1].trim());
                 }
+            } catch (IllegalArgumentException e) {
+                log.warn("Error parsing path metric entry {}, ignoring it", entry);
             }
         }
     }
 
+    @Override
+    public ToSClassTable getToSClassTable() {
+        return tosClassTable;
+    }
+
+    @Override
+    public void setToSClassTable(ToSClassTable table) {
+        //ToS级别集合决定了路由快照、流表和各级别的状态，运行期间只允许修改各类型的取值
+        if (!table.getLevels().equals(ToSLevels)) {
+            throw new IllegalArgumentException("ToS levels cannot change at runtime");
+        }
+        tosClassTable = table;
+        log.info("ToS class table reloaded");
+        requestRouteUpdate();
+    }
+
+    @Override
+    public long getLinkFlapCount() {
+        long flaps = 0;
+        for (LinkAdmissionControl admission : linkAdmission.values()) {
+            flaps += admission.getFlapCount();
+        }
+        return flaps;
+    }
+
     public Map<Link, Double> getLinkCost() {
-        return linkCost;
+        return topo.getLinkCost();
     }
 
     public Map<Long, Set<Link>> getWholeTopology() {
@@ -534,6 +658,12 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
         Collection<Class<? extends IFloodlightService>> l =
                 new ArrayList<Class<? extends IFloodlightService>>();
         l.add(IFloodlightProviderService.class);
+        l.add(IThreadPoolService.class);
+        l.add(ILinkDiscoveryService.class);
+        l.add(ITopologyService.class);
+        l.add(ILinkCostService.class);
+        l.add(IDeviceService.class);
+        l.add(IRestApiService.class);
         return l;
     }
 
@@ -550,109 +680,366 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
                 .getServiceImpl(ILinkDiscoveryService.class);
         deviceManager = context.getServiceImpl(IDeviceService.class);
         counterStore = context.getServiceImpl(ICounterStoreService.class);
+        topology = context.getServiceImpl(ITopologyService.class);
+        restApi = context.getServiceImpl(IRestApiService.class);
 
-        //初始化各个ToS类型
-        //前两位
-        BandwidthType.put(0, 0.0);    //0表示无带宽占用
-        BandwidthType.put(1, 1.0);    //1表示低带宽占用
-        BandwidthType.put(2, 2.0);    //2表示高带宽占用
-        BandwidthType.put(3, 3.0);    //3表示极高带宽占用
-        //中间一位
-        LossRateType.put(0,1.0);       //0表示无要求
-        LossRateType.put(1,0.0);       //1表示有要求
-        //后三位
-        DelayType.put(0, 0);           //0表示高时延要求
-        DelayType.put(1, 1);
-        DelayType.put(2, 2);
-        DelayType.put(3, 3);
-        DelayType.put(4, 4);
-        DelayType.put(5, 5);
-        DelayType.put(6, 6);
-        DelayType.put(7, 7);           //7表示低时延要求
-
-        //我不确定这个是不是需要，先写着吧
-        //ToSLevelNum = BandwidthType.size()*LossRateType.size()*DelayType.size();
-
-        //初始化自定义ToS类型
-        for(Integer bandwith : BandwidthType.keySet()){
-            for(Integer lossRate : LossRateType.keySet()){
-                for(Integer delay : DelayType.keySet()){
-                    byte ToS = (byte)((bandwith<<4)|(lossRate<<3)|delay);
-                    routeCache.put(ToS,new HashMap<>());
-                }
+        // read our config options
+        Map<String, String> configOptions = context.getConfigParams(this);
+        try {
+            String threads = configOptions.get("routeComputeThreads");
+            if (threads != null) {
+                ROUTE_COMPUTE_THREADS = Integer.parseInt(threads);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing route compute threads, using default of {}",
+                     ROUTE_COMPUTE_THREADS);
+        }
+        try {
+            String debounce = configOptions.get("routeUpdateDebounce");
+            if (debounce != null) {
+                ROUTE_UPDATE_DEBOUNCE = Integer.parseInt(debounce);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing route update debounce, using default of {} ms",
+                     ROUTE_UPDATE_DEBOUNCE);
+        }
+        try {
+            String interval = configOptions.get("routeUpdateInterval");
+            if (interval != null) {
+                ROUTE_UPDATE_INTERVAL = Integer.parseInt(interval);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing route update interval, using default of {} ms",
+                     ROUTE_UPDATE_INTERVAL);
+        }
+        try {
+            String alpha = configOptions.get("predictAlpha");
+            if (alpha != null) {
+                double value = Double.parseDouble(alpha);
+                if (value <= 0 || value > 1) throw new NumberFormatException(alpha);
+                PREDICT_ALPHA = value;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing predict alpha, using default of {}",
+                     PREDICT_ALPHA);
+        }
+        try {
+            String window = configOptions.get("predictWindow");
+            if (window != null) {
+                int value = Integer.parseInt(window);
+                if (value < 1) throw new NumberFormatException(window);
+                PREDICT_WINDOW = value;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing predict window, using default of {}",
+                     PREDICT_WINDOW);
+        }
+        try {
+            String horizon = configOptions.get("predictHorizon");
+            if (horizon != null) {
+                PREDICT_HORIZON = Integer.parseInt(horizon);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing predict horizon, using default of {} ms",
+                     PREDICT_HORIZON);
+        }
+        try {
+            String band = configOptions.get("admissionBand");
+            if (band != null) {
+                ADMISSION_BAND = Double.parseDouble(band);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing admission band, using default of {} Mbps",
+                     ADMISSION_BAND);
+        }
+        try {
+            String hold = configOptions.get("admissionHold");
+            if (hold != null) {
+                ADMISSION_HOLD = Integer.parseInt(hold);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing admission hold time, using default of {} ms",
+                     ADMISSION_HOLD);
+        }
+        try {
+            String maxPaths = configOptions.get("maxPaths");
+            if (maxPaths != null) {
+                int value = Integer.parseInt(maxPaths);
+                if (value < 1) throw new NumberFormatException(maxPaths);
+                MAX_PATHS = value;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing max paths, using default of {}",
+                     MAX_PATHS);
+        }
+        try {
+            String maxHosts = configOptions.get("maxHosts");
+            if (maxHosts != null) {
+                int value = Integer.parseInt(maxHosts);
+                if (value < 1) throw new NumberFormatException(maxHosts);
+                MAX_HOSTS = value;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing max hosts, using default of {}",
+                     MAX_HOSTS);
+        }
+        try {
+            String hostTimeout = configOptions.get("hostTimeout");
+            if (hostTimeout != null) {
+                HOST_TIMEOUT = Integer.parseInt(hostTimeout);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing host timeout, using default of {} s",
+                     HOST_TIMEOUT);
+        }
+        try {
+            String pollInterval = configOptions.get("demandPollInterval");
+            if (pollInterval != null) {
+                int value = Integer.parseInt(pollInterval);
+                if (value < 0) throw new NumberFormatException(pollInterval);
+                DEMAND_POLL_INTERVAL = value;
             }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing demand poll interval, using default of {} ms",
+                     DEMAND_POLL_INTERVAL);
+        }
+        try {
+            String alpha = configOptions.get("demandAlpha");
+            if (alpha != null) {
+                double value = Double.parseDouble(alpha);
+                if (value <= 0 || value > 1) throw new NumberFormatException(alpha);
+                DEMAND_ALPHA = value;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Error parsing demand alpha, using default of {}",
+                     DEMAND_ALPHA);
+        }
+        String metric = configOptions.get("pathMetric");
+        if (metric != null) {
+            PATH_METRIC = metric.trim();
+        }
+        String metricByToS = configOptions.get("pathMetricByToS");
+        if (metricByToS != null) {
+            PATH_METRIC_BY_TOS = metricByToS;
         }
+        routeComputePool = new ForkJoinPool(Math.max(1, ROUTE_COMPUTE_THREADS));
+        linkLoadPredictor = new LinkLoadPredictor(PREDICT_ALPHA, PREDICT_WINDOW, PREDICT_HORIZON);
+        attachmentIndex = new AttachmentIndex(MAX_HOSTS);
+        demandEstimator = new DemandEstimator(DEMAND_ALPHA);
+        flowStatsCollector = new FlowStatsCollector(floodlightProvider, ROUTE_BY_TOS_APP_ID,
+                Math.min(FLOW_STATS_TIMEOUT, Math.max(1, DEMAND_POLL_INTERVAL)));
+
+        //初始化ToS分类表，每种类型组合构成一个ToS级别
+        try {
+            tosClassTable = ToSClassTable.parse(configOptions.get("bandwidthClasses"),
+                    configOptions.get("lossRateClasses"), configOptions.get("delayClasses"));
+        } catch (IllegalArgumentException e) {
+            tosClassTable = ToSClassTable.defaultTable();
+            log.warn("Error parsing ToS class table, using default of {} levels",
+                     tosClassTable.getLevels().size());
+        }
+        ToSLevels.addAll(tosClassTable.getLevels());
+        for(Byte ToS : ToSLevels){
+            linkAdmission.put(ToS, new LinkAdmissionControl(ADMISSION_BAND, ADMISSION_HOLD));
+        }
+        registerPathMetric(new MinHopPathMetric());
+        registerPathMetric(new WidestShortestPathMetric());
+        registerPathMetric(new DelayWeightedPathMetric());
+        configurePathMetrics();
+        routeSnapshot = RouteSnapshot.empty(ToSLevels);
     }
 
     @Override
     public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
         wholeTopology = new HashMap<Long, Set<Link>>();
         floodlightProvider.addOFMessageListener(OFType.PACKET_IN, this);
-
-
-//        ScheduledExecutorService ses = threadPool.getScheduledExecutor();
-//        newInstanceTask = new SingletonTask(ses, new Runnable(){
-//           public void run(){
-//               try {
-//                   //linkCostService.runLinkCostService();
-//                   copySwitchLinks();  //获取拓扑
-//                   linkCost = linkCostService.getLinkCost();   //获取链路速率
-//                   predictLinkCost = linkCost;     //暂时先这么写
-//                   routeCompute();
-//                   UpdateFlowTable();
-//                   //allDevices = deviceManager.getAllDevices();
-//                   log.info("run RouteByToS");
-//               }catch (Exception e){
-//                   log.error("exception",e);
-//               }finally{
-//                   newInstanceTask.reschedule(30, TimeUnit.SECONDS);
-//               }
-//           }
-//        });
-//        newInstanceTask.reschedule(5, TimeUnit.SECONDS);
-
-        Thread t = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                   while(true) {
-                       try {
-                           copySwitchLinks();  //获取拓扑
-                           predictLinkCost = linkCost;     //暂时先这么写
-                           routeCompute();
-                           for(Byte tos : routeCache.keySet()){
-                               for(RouteId rID : routeCache.get(tos).keySet()){
-                                   if(rID.getSrc().equals(new Long(1))&&rID.getDst().equals(new Long(8))){
-                                       log.info("ToS {} route 1 to 8 : next hop is {}", new Object[]{tos,
-                                               routeCache.get(tos).get(rID).getPath().get(1).getNodeId()});
-                                   }
-                               }
-                           }
-                           UpdateFlowTable();
-                           //allDevices = deviceManager.getAllDevices();
-                           log.info("run RouteByToS");
-                       } catch (Exception e) {
-                           e.printStackTrace();
-                       } finally {
-                           try {
-                               Thread.sleep(5000);
-                           } catch (InterruptedException e) {
-                               e.printStackTrace();
+        floodlightProvider.addOFMessageListener(OFType.FLOW_REMOVED, this);
+        ctrFlowModAdd = createCounter("flowmod-add");
+        ctrFlowModModify = createCounter("flowmod-modify");
+        ctrFlowModDelete = createCounter("flowmod-delete");
+        ctrInstalledRules = createCounter("installed-rules");
+        ctrDesiredRules = createCounter("desired-rules");
+        ctrLinkFlaps = createCounter("link-flaps");
+        ctrFlowRemoved = createCounter("flow-removed");
+        ctrAuditRepairs = createCounter("audit-repairs");
+
+
+        //路由计算由拓扑变化、链路权重更新等事件触发，并保证至少每ROUTE_UPDATE_INTERVAL执行一次
+        ScheduledExecutorService ses = threadPool.getScheduledExecutor();
+        flowModBatcher = new OFMessageBatcher(FLOWMOD_BATCH_SIZE, FLOWMOD_BATCH_DELAY, ses);
+        newInstanceTask = new SingletonTask(ses, new Runnable(){
+           public void run(){
+               lastRouteUpdateTime = System.currentTimeMillis();
+               routeUpdateRequested = false;
+               try {
+                   copySwitchLinks();  //获取拓扑
+                   predictLinkCost = linkLoadPredictor.predict(topo.getLinkCost());   //用预测负载而不是当前负载计算路由
+                   routeCompute();
+                   RouteSnapshot snapshot = routeSnapshot;
+                   for(Byte tos : snapshot.getLevels()){
+                       for(RouteId rID : snapshot.getRouteCache(tos).keySet()){
+                           if(rID.getSrc().equals(new Long(1))&&rID.getDst().equals(new Long(8))){
+                               log.info("ToS {} route 1 to 8 : next hop is {}", new Object[]{tos,
+                                       snapshot.getRouteCache(tos).get(rID).getPath().get(1).getNodeId()});
                            }
                        }
                    }
+                   //长时间没有出现的主机不再为其下发流表
+                   attachmentIndex.evictOlderThan(System.currentTimeMillis() - HOST_TIMEOUT * 1000L);
+                   UpdateFlowTable();
+                   //allDevices = deviceManager.getAllDevices();
+                   log.info("run RouteByToS");
+               }catch (Exception e){
+                   log.error("exception",e);
+               }finally{
+                   //计算期间又有新的事件到达时尽快再算一次，否则按周期兜底
+                   if (routeUpdateRequested) {
+                       newInstanceTask.reschedule(ROUTE_UPDATE_DEBOUNCE, TimeUnit.MILLISECONDS);
+                   } else {
+                       newInstanceTask.reschedule(ROUTE_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+                   }
+               }
+           }
+        });
+        newInstanceTask.reschedule(5, TimeUnit.SECONDS);
+
+        //流量需求的采集与路由计算相互独立，按自己的周期轮询
+        if (DEMAND_POLL_INTERVAL > 0) {
+            demandTask = new SingletonTask(ses, new Runnable() {
+                public void run() {
+                    try {
+                        pollFlowStats();
+                    } catch (Exception e) {
+                        log.error("Exception in flow stats poll", e);
+                    } finally {
+                        demandTask.reschedule(DEMAND_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+            demandTask.reschedule(DEMAND_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        }
 
+        linkDiscoveryManager.addListener(this);
+        topology.addListener(this);
+        deviceListener = new DeviceListenerImpl();
+        deviceManager.addListener(deviceListener);
+        restApi.addRestletRoutable(new RouteByToSWebRoutable());
+        linkCostService.addListener(this);
+    }
+
+    /**
+     * 向拓扑中的交换机请求ToS规则的流统计，用其审计已下发记录并更新流量需求矩阵
+     */
+    protected void pollFlowStats() {
+        LinkCostSnapshot topology = linkCostService.getSnapshot();
+        if (topology.size() == 0) return;
+        List<Long> switches = new ArrayList<>(topology.size());
+        for (int i = 0; i < topology.size(); i++) {
+            switches.add(topology.getDpid(i));
+        }
+        //请求发出之后又有变更的交换机，其应答不反映当前状态，不用于审计
+        long version = flowTableReconciler.getVersion();
+        Map<Long, List<OFFlowStatisticsReply>> stats = flowStatsCollector.collect(switches);
+        int repaired = 0;
+        for (Map.Entry<Long, List<OFFlowStatisticsReply>> e : stats.entrySet()) {
+            Map<FlowRuleKey, Short> actual = new HashMap<>();
+            for (OFFlowStatisticsReply reply : e.getValue()) {
+                FlowRuleKey key = FlowRuleKey.fromMatch(reply.getMatch());
+                if (key != null) actual.put(key, DemandEstimator.outPort(reply));
             }
-        });
-        t.start();
+            repaired += flowTableReconciler.audit(e.getKey(), actual, version);
+        }
+        if (repaired > 0) {
+            log.debug("Flow stats audit repaired {} ToS rules", repaired);
+            ctrAuditRepairs.increment();
+            requestRouteUpdate();
+        }
+        demandMatrix = demandEstimator.update(stats, topology, attachmentIndex.entries(),
+                ToSLevels, System.currentTimeMillis());
+    }
+
+    @Override
+    public DemandMatrix getDemandMatrix() {
+        return demandMatrix;
+    }
+
+    @Override
+    public Map<String, Long> getFlowModBatchSizes() {
+        return flowModBatcher.getBatchSizeHistogram();
+    }
+
+    /**
+     * 请求重新计算路由
+     * 短时间内的多次请求合并为一次，在最后一次请求ROUTE_UPDATE_DEBOUNCE毫秒后执行；
+     * 距上次计算已超过ROUTE_UPDATE_INTERVAL时不再等待
+     */
+    @Override
+    public void requestRouteUpdate() {
+        if (newInstanceTask == null) return;
+        routeUpdateRequested = true;
+        if (System.currentTimeMillis() - lastRouteUpdateTime >= ROUTE_UPDATE_INTERVAL) {
+            newInstanceTask.reschedule(0, TimeUnit.MILLISECONDS);
+        } else {
+            newInstanceTask.reschedule(ROUTE_UPDATE_DEBOUNCE, TimeUnit.MILLISECONDS);
+        }
     }
+
+    @Override
+    public void linkDiscoveryUpdate(LDUpdate update) {
+        linkDiscoveryUpdate(Collections.singletonList(update));
+    }
+
+    @Override
+    public void linkDiscoveryUpdate(List<LDUpdate> updateList) {
+        boolean update = false;
+        for (LDUpdate u : updateList) {
+            switch (u.getOperation()) {
+                case SWITCH_REMOVED:
+                    //断开的交换机不再下发，丢弃其待发队列，避免一直持有旧连接
+                    flowModBatcher.removeSwitch(u.getSrc());
+                    update = true;
+                    break;
+                case LINK_UPDATED:
+                case LINK_REMOVED:
+                case PORT_DOWN:
+                    update = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (update) {
+            requestRouteUpdate();
+        }
+    }
+
+    @Override
+    public void topologyChanged(List<LDUpdate> linkUpdates) {
+        requestRouteUpdate();
+    }
+
+    @Override
+    public void linkCostUpdated() {
+        //每轮链路权重更新恰好喂入一次样本，与路由计算的触发频率无关
+        linkLoadPredictor.update(linkCostService.getSnapshot().getLinkCost(), System.currentTimeMillis());
+        requestRouteUpdate();
+    }
+
     @Override
     public Route getRoute(long srcId, short srcPort, long dstId, short dstPort, long cookie, Byte TosLevel, boolean tunnelEnabled){
+        return getRoute(routeSnapshot, srcId, srcPort, dstId, dstPort, TosLevel);
+    }
+
+    /**
+     * 在指定的路由快照中查询带首尾端口的路由
+     */
+    private Route getRoute(RouteSnapshot snapshot, long srcId, short srcPort, long dstId, short dstPort, Byte TosLevel){
         if (srcId == dstId && srcPort == dstPort)
             return new Route(srcId,dstId);
 
         List<NodePortTuple> nptList;
         NodePortTuple npt;
-        Route r = getRoute(srcId, dstId,0 , TosLevel, true);
+        Route r = getRoute(snapshot, srcId, dstId, TosLevel);
         if (r == null && srcId != dstId) return null;
 
         if (r != null) {
@@ -669,25 +1056,30 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
         r = new Route(id, nptList);
         return r;
     }
+
     @Override
     public Route getRoute(long src, long dst, long cookie, Byte ToS, boolean tunnelEnabled){
+        return getRoute(routeSnapshot, src, dst, ToS);
+    }
+
+    private Route getRoute(RouteSnapshot snapshot, long src, long dst, Byte ToS){
         if(src==dst) return new Route(src,dst);
-        RouteId id = new RouteId(src, dst);
-        Route result = null;
-        try {
-            //Byte tmp = routeCache.ceilingKey(ToS);
-            Map<RouteId, Route> curCache = routeCache.get(routeCache.floorKey(ToS));    //对于不准确的ToS，查找最相邻的
-            //if (curCache.containsKey(id)) {
-            result = curCache.get(id);
-            if (log.isTraceEnabled()) {
-                log.trace("getRoute: {} -> {}", id, result);
-            }
-            return result;
-           // }
-        }catch (Exception e){
-            log.warn("Route not found");
-            return null;
+        //快照不可变，查询无需加锁
+        Route result = snapshot.getRoute(src, dst, ToS);
+        if (log.isTraceEnabled()) {
+            log.trace("getRoute: {} -> {} : {}", new Object[]{src, dst, result});
         }
+        return result;
+    }
+
+    @Override
+    public long getRouteGeneration() {
+        return routeSnapshot.getGeneration();
+    }
+
+    @Override
+    public RouteSnapshot getRouteSnapshot() {
+        return routeSnapshot;
     }
 
     @Override
@@ -711,54 +1103,211 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
         return getRoute(srcId, srcPort, dstId, dstPort, cookie, (byte)0, true);
     }
 
+    /**
+     * 不区分ToS时使用最低的ToS级别
+     */
     @Override
     public ArrayList<Route> getRoutes(long longSrcDpid, long longDstDpid, boolean tunnelEnabled) {
-        return null;
+        return new ArrayList<>(getRoutes(longSrcDpid, longDstDpid, ToSLevels.first()));
     }
 
     @Override
     public boolean routeExists(long src, long dst) {
-        return false;
+        return routeExists(src, dst, true);
     }
 
     @Override
     public boolean routeExists(long src, long dst, boolean tunnelEnabled) {
-        return false;
+        return src == dst || routeSnapshot.getRoute(src, dst, ToSLevels.first()) != null;
+    }
+
+    @Override
+    public List<Route> getRoutes(long src, long dst, Byte ToS) {
+        return routeSnapshot.getRoutes(src, dst, ToS);
+    }
+
+    @Override
+    public Route getRoute(long srcId, short srcPort, long dstId, short dstPort, Byte ToS, int flowHash) {
+        RouteSnapshot snapshot = routeSnapshot;
+        if (srcId == dstId) {
+            return getRoute(snapshot, srcId, srcPort, dstId, dstPort, ToS);
+        }
+        //一次确定可达的最高级别，不可达的级别不会构造任何路由对象
+        int level = snapshot.resolveLevel(srcId, dstId, ToS);
+        if (level < 0) return null;
+        List<Route> routes = snapshot.getRoutes(srcId, dstId, (byte) level);
+        if (routes.isEmpty()) return null;
+        //同一条流的哈希值不变，在同一快照中总是选到同一条路径
+        Route path = routes.get((flowHash & 0x7fffffff) % routes.size());
+        AtomicLong count = pathSelections.get(path);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = pathSelections.putIfAbsent(path, newCount);
+            if (count == null) count = newCount;
+        }
+        count.incrementAndGet();
+
+        List<NodePortTuple> nptList = new ArrayList<NodePortTuple>(path.getPath().size() + 2);
+        nptList.add(new NodePortTuple(srcId, srcPort));
+        nptList.addAll(path.getPath());
+        nptList.add(new NodePortTuple(dstId, dstPort));
+        Route r = new Route(path.getId(), nptList);
+        r.setRouteCount(path.getRouteCount());
+        return r;
+    }
+
+    @Override
+    public Map<Route, Long> getPathSelectionCounts() {
+        Map<Route, Long> result = new HashMap<>();
+        for (Map.Entry<Route, AtomicLong> e : pathSelections.entrySet()) {
+            result.put(e.getKey(), e.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * 丢弃在快照的任何ToS级别下都已不是等价路径之一的路径的选中次数
+     */
+    private void prunePathSelections(RouteSnapshot snapshot) {
+        Iterator<Route> it = pathSelections.keySet().iterator();
+        while (it.hasNext()) {
+            Route path = it.next();
+            boolean current = false;
+            for (Byte level : snapshot.getLevels()) {
+                if (snapshot.getRoutes(path.getId().getSrc(), path.getId().getDst(), level)
+                        .contains(path)) {
+                    current = true;
+                    break;
+                }
+            }
+            if (!current) it.remove();
+        }
     }
 
 
     @Override
     public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+        if (msg.getType() == OFType.FLOW_REMOVED) {
+            return processFlowRemoved(sw, (OFFlowRemoved) msg);
+        }
+        //接入点由设备事件维护，这里只刷新源主机的最近出现时间
         if(msg.getType()==OFType.PACKET_IN&&cntx!=null) {
-            IDevice dstDevice = IDeviceService.fcStore.
-                            get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
-            IDevice srcDevice = IDeviceService.fcStore.
-                            get(cntx, IDeviceService.CONTEXT_SRC_DEVICE);
-            if (dstDevice != null&&dstDevice.getIPv4Addresses()!=null&&dstDevice.getIPv4Addresses().length!=0) {
-                try {
-                    Integer[] IPs = dstDevice.getIPv4Addresses();
-                    SwitchPort[] Daps = dstDevice.getAttachmentPoints();
-                    if(IPs!=null&&IPs.length>0&&Daps!=null&&Daps.length>0) {
-                        attachmentMap.put(IPs[0], Daps[0]);
-                    }
-                }catch (Exception e){
-                    log.error("dst Device error");
+            Ethernet eth = IFloodlightProviderService.bcStore.
+                    get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+            if (eth != null && eth.getPayload() instanceof IPv4) {
+                attachmentIndex.touch(((IPv4) eth.getPayload()).getSourceAddress(),
+                        System.currentTimeMillis());
+            }
+        }
+        return Command.CONTINUE;
+    }
+
+    /**
+     * 交换机上的ToS规则超时或被删除后清除其已下发记录，下一轮需要时重新下发
+     * 空闲超时的规则没有流量，等待下一轮即可；被其他途径删除的规则尽快重新下发
+     */
+    private Command processFlowRemoved(IOFSwitch sw, OFFlowRemoved flowRemoved) {
+        if (AppCookie.extractApp(flowRemoved.getCookie()) != ROUTE_BY_TOS_APP_ID) {
+            return Command.CONTINUE;
+        }
+        FlowRuleKey key = FlowRuleKey.fromMatch(flowRemoved.getMatch());
+        if (key != null && flowTableReconciler.markRemoved(sw.getId(), key)) {
+            if (log.isTraceEnabled()) {
+                log.trace("{} removed from switch {}, reason {}",
+                        new Object[]{ key, sw, flowRemoved.getReason() });
+            }
+            ctrFlowRemoved.increment();
+            if (flowRemoved.getReason() == OFFlowRemoved.OFFlowRemovedReason.OFPRR_DELETE) {
+                requestRouteUpdate();
+            }
+        }
+        return Command.STOP;
+    }
+
+    /**
+     * 按设备当前的IP地址和接入点更新索引，设备不再使用的地址以及没有接入点的设备的地址从索引中删除
+     * 设备有多个接入点时取第一个
+     */
+    private void updateDevice(IDevice device) {
+        Integer[] IPs = device.getIPv4Addresses();
+        SwitchPort[] Daps = device.getAttachmentPoints();
+        int[] ips = new int[IPs.length];
+        for (int i = 0; i < IPs.length; i++) {
+            ips[i] = IPs[i];
+        }
+        long lastSeen = device.getLastSeen() == null ? System.currentTimeMillis()
+                                                     : device.getLastSeen().getTime();
+        synchronized (deviceIPs) {
+            int[] old = deviceIPs.put(device.getDeviceKey(), ips);
+            if (old != null) {
+                for (int ip : old) {
+                    if (!contains(ips, ip)) attachmentIndex.remove(ip);
+                }
+            }
+            for (int ip : ips) {
+                if (Daps.length > 0) {
+                    attachmentIndex.put(ip, Daps[0].getSwitchDPID(), (short) Daps[0].getPort(), lastSeen);
+                } else {
+                    attachmentIndex.remove(ip);
                 }
             }
+        }
+    }
 
-            if (srcDevice != null&&srcDevice.getIPv4Addresses()!=null&&srcDevice.getIPv4Addresses().length!=0) {
-                try {
-                    Integer[] IPs = srcDevice.getIPv4Addresses();
-                    SwitchPort[] Daps = srcDevice.getAttachmentPoints();
-                    if (IPs != null && IPs.length>0 && Daps != null && Daps.length>0) {
-                        attachmentMap.put(IPs[0], Daps[0]);
-                    }
-                }catch(Exception e){
-                    log.error("src Device error");
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+
+    // IDeviceListener
+    class DeviceListenerImpl implements IDeviceListener {
+        @Override
+        public void deviceAdded(IDevice device) {
+            updateDevice(device);
+        }
+
+        @Override
+        public void deviceRemoved(IDevice device) {
+            synchronized (deviceIPs) {
+                int[] old = deviceIPs.remove(device.getDeviceKey());
+                if (old == null) return;
+                for (int ip : old) {
+                    attachmentIndex.remove(ip);
                 }
             }
         }
-        return Command.CONTINUE;
+
+        @Override
+        public void deviceMoved(IDevice device) {
+            updateDevice(device);
+        }
+
+        @Override
+        public void deviceIPV4AddrChanged(IDevice device) {
+            updateDevice(device);
+        }
+
+        @Override
+        public void deviceVlanChanged(IDevice device) {
+            // 流表只匹配IP地址，与VLAN无关
+        }
+
+        @Override
+        public String getName() {
+            return RouteByToS.this.getName();
+        }
+
+        @Override
+        public boolean isCallbackOrderingPrereq(String type, String name) {
+            return false;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPostreq(String type, String name) {
+            return false;
+        }
     }
 
     @Override
@@ -766,8 +1315,14 @@ public class RouteByToS implements IFloodlightModule, IRouteByToS, IOFMessageLis
         return "RouteByToS";
     }
 
+    @Override
     public Map<Integer, SwitchPort> getAttachmentMap() {
-        return attachmentMap;
+        return attachmentIndex.toMap();
+    }
+
+    @Override
+    public SwitchPort getAttachmentPoint(int ip) {
+        return attachmentIndex.get(ip);
     }
 
     @Override
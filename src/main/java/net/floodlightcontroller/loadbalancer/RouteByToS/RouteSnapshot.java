@@ -0,0 +1,218 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.linkCostService.LinkCostSnapshot;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Route;
+import net.floodlightcontroller.routing.RouteId;
+import net.floodlightcontroller.topology.NodePortTuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 某一轮路由计算发布的不可变路由快照
+ * 包含该轮使用的拓扑快照(dpid下标映射和邻接关系)、各ToS级别的最短路表以及路径cache，
+ * 每轮计算完成后整体替换，读者拿到引用后无需加锁，也不会看到计算到一半的结果
+ * 等价多路径在第一次查询时由最短路表展开，并缓存在快照中
+ */
+public class RouteSnapshot {
+    private final long generation;
+    // 拓扑快照，最短路表的下标即快照中交换机的下标
+    private final LinkCostSnapshot topology;
+    // 各ToS级别下的最短路表
+    private final Map<Byte, IRouteTable> routeTables;
+    // 各ToS级别下的路径cache
+    private final NavigableMap<Byte, Map<RouteId, Route>> routeCache;
+    // 各ToS级别下已展开的等价多路径
+    private final Map<Byte, Map<RouteId, List<Route>>> multipathCache = new ConcurrentHashMap<>();
+    // 每对交换机之间最多展开的路径数
+    private final int maxPaths;
+
+    // 以下为packet-in路径上使用的无分配索引
+    // 按从小到大排列的ToS级别，以及各级别对应的最短路表
+    private final byte[] levelArray;
+    private final IRouteTable[] levelTables;
+    // floorLevel[ToS & 0xff]为不高于该ToS的最高级别在levelArray中的位置，没有时为-1
+    private final int[] floorLevel = new int[256];
+
+    public RouteSnapshot(long generation,
+                         LinkCostSnapshot topology,
+                         Map<Byte, IRouteTable> routeTables,
+                         TreeMap<Byte, Map<RouteId, Route>> routeCache,
+                         int maxPaths) {
+        this.generation = generation;
+        this.maxPaths = Math.max(1, maxPaths);
+        this.topology = topology;
+        this.routeTables = Collections.unmodifiableMap(routeTables);
+        TreeMap<Byte, Map<RouteId, Route>> levels = new TreeMap<>();
+        for (Map.Entry<Byte, Map<RouteId, Route>> e : routeCache.entrySet()) {
+            levels.put(e.getKey(), Collections.unmodifiableMap(e.getValue()));
+            multipathCache.put(e.getKey(), new ConcurrentHashMap<RouteId, List<Route>>());
+        }
+        this.routeCache = Collections.unmodifiableNavigableMap(levels);
+
+        levelArray = new byte[levels.size()];
+        levelTables = new IRouteTable[levels.size()];
+        int pos = 0;
+        for (Byte ToS : levels.keySet()) {
+            levelArray[pos] = ToS;
+            levelTables[pos] = routeTables.get(ToS);
+            pos++;
+        }
+        for (int t = 0; t < 256; t++) {
+            floorLevel[t] = -1;
+            for (int p = levelArray.length - 1; p >= 0; p--) {
+                if (levelArray[p] <= (byte) t) {
+                    floorLevel[t] = p;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * dpId对应的最短路表下标，不存在时返回-1，不产生装箱
+     */
+    public int indexOf(long dpid) {
+        return topology.indexOf(dpid);
+    }
+
+    /**
+     * 确定src到dst实际使用的ToS级别：不高于ToS且src可达dst的最高级别
+     * 只读取基本类型数组，不分配对象
+     * @return 级别，没有任何级别可达时返回-1
+     */
+    public int resolveLevel(long src, long dst, byte ToS) {
+        int p = floorLevel[ToS & 0xff];
+        if (p < 0) return -1;
+        int srcIndex = indexOf(src);
+        int dstIndex = indexOf(dst);
+        if (srcIndex < 0 || dstIndex < 0) return -1;
+        for (; p >= 0; p--) {
+            IRouteTable table = levelTables[p];
+            if (table != null && table.isReachable(srcIndex, dstIndex)) return levelArray[p];
+        }
+        return -1;
+    }
+
+    /**
+     * 还没有任何路由结果时使用的空快照
+     */
+    public static RouteSnapshot empty(Iterable<Byte> levels) {
+        TreeMap<Byte, Map<RouteId, Route>> cache = new TreeMap<>();
+        for (Byte ToS : levels) {
+            cache.put(ToS, new HashMap<RouteId, Route>());
+        }
+        return new RouteSnapshot(0, LinkCostSnapshot.EMPTY,
+                new HashMap<Byte, IRouteTable>(), cache, 1);
+    }
+
+    /**
+     * 快照的代数，每发布一次加1，调用方可据此判断手中的路由是否过期
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public LinkCostSnapshot getTopology() {
+        return topology;
+    }
+
+    public IRouteTable getRouteTable(Byte ToS) {
+        return routeTables.get(ToS);
+    }
+
+    public Map<RouteId, Route> getRouteCache(Byte ToS) {
+        return routeCache.get(ToS);
+    }
+
+    public NavigableSet<Byte> getLevels() {
+        return routeCache.navigableKeySet();
+    }
+
+    /**
+     * 对于不准确的ToS，查找不高于它的最相邻级别
+     */
+    public Byte getLevel(Byte ToS) {
+        return routeCache.floorKey(ToS);
+    }
+
+    /**
+     * 查询ToS级别下src到dst的路由，不可达时返回null
+     */
+    public Route getRoute(long src, long dst, Byte ToS) {
+        Byte level = getLevel(ToS);
+        if (level == null) return null;
+        //先在最短路表中判断可达性，不可达时不必再查cache
+        IRouteTable table = routeTables.get(level);
+        int srcIndex = topology.indexOf(src);
+        int dstIndex = topology.indexOf(dst);
+        if (table == null || srcIndex < 0 || dstIndex < 0
+                || !table.isReachable(srcIndex, dstIndex)) {
+            return null;
+        }
+        return routeCache.get(level).get(new RouteId(src, dst));
+    }
+
+    /**
+     * 查询ToS级别下src到dst的等价多路径，最多maxPaths条，不可达时返回空列表
+     * 路径的顺序只由快照决定，同一快照中多次查询结果相同
+     */
+    public List<Route> getRoutes(long src, long dst, Byte ToS) {
+        Byte level = getLevel(ToS);
+        if (level == null) return Collections.emptyList();
+        IRouteTable table = routeTables.get(level);
+        int srcIndex = topology.indexOf(src);
+        int dstIndex = topology.indexOf(dst);
+        if (table == null || srcIndex < 0 || dstIndex < 0
+                || src == dst || !table.isReachable(srcIndex, dstIndex)) {
+            return Collections.emptyList();
+        }
+        RouteId id = new RouteId(src, dst);
+        Map<RouteId, List<Route>> cache = multipathCache.get(level);
+        List<Route> routes = cache.get(id);
+        if (routes == null) {
+            routes = new ArrayList<>();
+            expand(table, srcIndex, dstIndex, id, new ArrayList<NodePortTuple>(), routes);
+            routes = Collections.unmodifiableList(routes);
+            cache.put(id, routes);
+        }
+        return routes;
+    }
+
+    public int getMaxPaths() {
+        return maxPaths;
+    }
+
+    /**
+     * 沿最短路表的等价下一跳深度优先展开路径
+     */
+    private void expand(IRouteTable table, int cur, int dst, RouteId id,
+                        List<NodePortTuple> prefix, List<Route> out) {
+        if (cur == dst) {
+            Route route = new Route(id, new ArrayList<>(prefix));
+            route.setRouteCount(out.size());
+            out.add(route);
+            return;
+        }
+        int[] hops = new int[table.size()];
+        int count = table.getNextHops(cur, dst, hops);
+        for (int k = 0; k < count && out.size() < maxPaths; k++) {
+            int edge = topology.findEdge(cur, hops[k]);
+            if (edge < 0) continue;
+            Link link = topology.getLink(edge);
+            prefix.add(new NodePortTuple(link.getSrc(), link.getSrcPort()));
+            prefix.add(new NodePortTuple(link.getDst(), link.getDstPort()));
+            expand(table, hops[k], dst, id, prefix, out);
+            prefix.remove(prefix.size() - 1);
+            prefix.remove(prefix.size() - 1);
+        }
+    }
+}
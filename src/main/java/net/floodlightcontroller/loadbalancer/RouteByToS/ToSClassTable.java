@@ -0,0 +1,154 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * ToS分类表(不可变)
+ * ToS的第4-5位为带宽占用类型，第3位为丢包率要求类型，第0-2位为时延要求类型，
+ * 各类型的取值由表给出，表中列出的类型组合构成全部ToS级别
+ *
+ * 每个级别的基础门限 (1-丢包率)*带宽 和时延所在的比例在构造时一次算好，
+ * 每轮路由计算只需按当前最大剩余带宽做简单的分桶
+ */
+public class ToSClassTable {
+    private static final int BANDWIDTH_CLASSES = 4;
+    private static final int LOSS_RATE_CLASSES = 2;
+    private static final int DELAY_CLASSES = 8;
+
+    private final double[] bandwidth;
+    private final double[] lossRate;
+    private final int[] delay;
+    private final SortedSet<Byte> levels;
+    // 分桶的宽度，取带宽占用类型1的带宽
+    private final double bucketWidth;
+    // 按ToS下标的基础门限和时延比例，defined为false的ToS不在表中
+    private final double[] basicThreshold = new double[256];
+    private final double[] delayRatio = new double[256];
+    private final boolean[] defined = new boolean[256];
+
+    /**
+     * @param bandwidth 各带宽占用类型的带宽(Mbps)，至多4项
+     * @param lossRate 各丢包率要求类型的丢包率，至多2项
+     * @param delay 各时延要求类型的时延等级，至多8项
+     */
+    public ToSClassTable(double[] bandwidth, double[] lossRate, int[] delay) {
+        if (bandwidth.length < 2 || bandwidth.length > BANDWIDTH_CLASSES)
+            throw new IllegalArgumentException("need 2 to " + BANDWIDTH_CLASSES + " bandwidth classes");
+        if (lossRate.length < 1 || lossRate.length > LOSS_RATE_CLASSES)
+            throw new IllegalArgumentException("need 1 to " + LOSS_RATE_CLASSES + " loss rate classes");
+        if (delay.length < 1 || delay.length > DELAY_CLASSES)
+            throw new IllegalArgumentException("need 1 to " + DELAY_CLASSES + " delay classes");
+        if (bandwidth[1] <= 0)
+            throw new IllegalArgumentException("bandwidth class 1 must be positive");
+        this.bandwidth = bandwidth.clone();
+        this.lossRate = lossRate.clone();
+        this.delay = delay.clone();
+        this.bucketWidth = bandwidth[1];
+        TreeSet<Byte> set = new TreeSet<>();
+        for (int b = 0; b < bandwidth.length; b++) {
+            for (int l = 0; l < lossRate.length; l++) {
+                for (int d = 0; d < delay.length; d++) {
+                    int ToS = (b << 4) | (l << 3) | d;
+                    basicThreshold[ToS] = (1 - lossRate[l]) * bandwidth[b];
+                    delayRatio[ToS] = (double) delay[d] / delay.length;
+                    defined[ToS] = true;
+                    set.add((byte) ToS);
+                }
+            }
+        }
+        this.levels = Collections.unmodifiableSortedSet(set);
+    }
+
+    /**
+     * 原有的分类：带宽0/1/2/3，丢包率1/0，时延0到7
+     */
+    public static ToSClassTable defaultTable() {
+        return new ToSClassTable(new double[] { 0.0, 1.0, 2.0, 3.0 },
+                new double[] { 1.0, 0.0 },
+                new int[] { 0, 1, 2, 3, 4, 5, 6, 7 });
+    }
+
+    /**
+     * 从逗号分隔的配置字符串构造，为null的项使用默认值
+     * @throws IllegalArgumentException 配置格式有误
+     */
+    public static ToSClassTable parse(String bandwidth, String lossRate, String delay) {
+        ToSClassTable defaults = defaultTable();
+        double[] b = (bandwidth == null) ? defaults.bandwidth : parseDoubles(bandwidth);
+        double[] l = (lossRate == null) ? defaults.lossRate : parseDoubles(lossRate);
+        int[] d = defaults.delay;
+        if (delay != null) {
+            double[] values = parseDoubles(delay);
+            d = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                d[i] = (int) values[i];
+            }
+        }
+        return new ToSClassTable(b, l, d);
+    }
+
+    private static double[] parseDoubles(String s) {
+        String[] items = s.split(",");
+        double[] values = new double[items.length];
+        for (int i = 0; i < items.length; i++) {
+            values[i] = Double.parseDouble(items[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * 全部ToS级别，按从小到大排列
+     */
+    public SortedSet<Byte> getLevels() {
+        return levels;
+    }
+
+    public double[] getBandwidth() {
+        return bandwidth.clone();
+    }
+
+    public double[] getLossRate() {
+        return lossRate.clone();
+    }
+
+    public int[] getDelay() {
+        return delay.clone();
+    }
+
+    /**
+     * 计算ToS级别的带宽门限
+     * 基础门限到最大剩余带宽之间按bucketWidth分桶(不超过时延类型数)，时延要求越低的级别落在越高的桶
+     * @param maxLinkCompacity 当前网络中链路的最大剩余带宽
+     * @return 门限，不在表中的ToS返回0
+     */
+    public double threshold(byte ToS, double maxLinkCompacity) {
+        int t = ToS & 0xff;
+        if (!defined[t]) return 0.0;
+        double basic = basicThreshold[t];
+        double diff = maxLinkCompacity - basic;
+        int bucketNum = Math.min((int) (diff / bucketWidth), delay.length);
+        //匹配桶的区域
+        for (double i = bucketNum - 1.0; i >= 0.0; i--) {
+            if (delayRatio[t] >= i / bucketNum) return basic + i / bucketNum * diff;
+        }
+        return basic;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ToSClassTable)) return false;
+        ToSClassTable that = (ToSClassTable) o;
+        return Arrays.equals(bandwidth, that.bandwidth)
+                && Arrays.equals(lossRate, that.lossRate)
+                && Arrays.equals(delay, that.delay);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(bandwidth) + Arrays.hashCode(lossRate)) + Arrays.hashCode(delay);
+    }
+}
@@ -0,0 +1,284 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 单个ToS级别下的全源最短路表(跳数度量)
+ * 保存当前开放链路的邻接矩阵、距离矩阵以及下一跳矩阵，
+ * 每个周期根据链路开放/关闭的增量只修复受影响的目的节点列，而不是整体重跑floyd
+ *
+ * 三个矩阵都以一维数组按行存放，(i,j)对应下标i*n+j，i、j为dpIdMap中的交换机下标
+ * 在ForkJoin线程中且规模较大时，完整重算使用分块floyd并行执行
+ */
+public class ToSRouteTable implements IRouteTable {
+    public static final int INF = Integer.MAX_VALUE;
+    // 分块floyd的块大小
+    protected static final int BLOCK_SIZE = 64;
+    // 节点数达到该值时才值得分块并行
+    protected static final int PARALLEL_THRESHOLD = 4 * BLOCK_SIZE;
+
+    private final int n;
+    // adj[i*n+j]表示当前ToS级别下链路i->j开放
+    private final boolean[] adj;
+    // dist[i*n+j]表示i到j的最短跳数
+    private final int[] dist;
+    // next[i*n+j]表示i到j最短路径上的下一跳
+    private final int[] next;
+
+    public ToSRouteTable(int n) {
+        this.n = n;
+        this.adj = new boolean[n * n];
+        this.dist = new int[n * n];
+        this.next = new int[n * n];
+        rebuild();
+    }
+
+    private ToSRouteTable(ToSRouteTable other) {
+        this.n = other.n;
+        this.adj = other.adj.clone();
+        this.dist = other.dist.clone();
+        this.next = other.next.clone();
+    }
+
+    /**
+     * 复制一份路由表，在副本上做增量更新不会影响正在被读取的原表
+     */
+    public ToSRouteTable copy() {
+        return new ToSRouteTable(this);
+    }
+
+    @Override
+    public int size() {
+        return n;
+    }
+
+    public int getDist(int src, int dst) {
+        return dist[src * n + dst];
+    }
+
+    @Override
+    public int getNextHop(int src, int dst) {
+        return next[src * n + dst];
+    }
+
+    @Override
+    public boolean isReachable(int src, int dst) {
+        return dist[src * n + dst] != INF;
+    }
+
+    @Override
+    public int getNextHops(int src, int dst, int[] hops) {
+        int d = dist[src * n + dst];
+        if (src == dst || d == INF) return 0;
+        //下一跳y满足链路src->y开放且y到dst的距离恰好少一跳
+        int count = 0;
+        int row = src * n;
+        for (int y = 0; y < n; y++) {
+            if (adj[row + y] && dist[y * n + dst] == d - 1) hops[count++] = y;
+        }
+        return count;
+    }
+
+    public boolean isOpen(int src, int dst) {
+        return adj[src * n + dst];
+    }
+
+    /**
+     * 根据新一轮的链路开放情况更新路由表
+     * 链路变化较少时做增量修复，变化过多时退化为完整的floyd
+     * @param newAdj 本周期该ToS级别下的开放链路邻接矩阵(按行展开，长度n*n)
+     * @return 最短路发生变化的目的节点下标集合
+     */
+    public BitSet update(boolean[] newAdj) {
+        int closed = 0, opened = 0;
+        for (int e = 0; e < n * n; e++) {
+            if (adj[e] && !newAdj[e]) closed++;
+            else if (!adj[e] && newAdj[e]) opened++;
+        }
+        BitSet changed = new BitSet(n);
+        if (closed == 0 && opened == 0) return changed;
+
+        // 每条增量的修复代价约为O(n^2)，增量数超过n/2时直接重算更划算
+        if ((closed + opened) * 2 > n) {
+            System.arraycopy(newAdj, 0, adj, 0, n * n);
+            rebuild();
+            changed.set(0, n);
+            return changed;
+        }
+
+        // 先处理关闭的链路：经过该链路的目的列全部失效，统一用BFS修复
+        if (closed > 0) {
+            BitSet affected = new BitSet(n);
+            for (int e = 0; e < n * n; e++) {
+                if (adj[e] && !newAdj[e]) {
+                    int u = e / n, v = e % n;
+                    int row = u * n;
+                    for (int d = 0; d < n; d++) {
+                        if (dist[row + d] != INF && next[row + d] == v && u != d) affected.set(d);
+                    }
+                }
+            }
+            for (int e = 0; e < n * n; e++) {
+                if (adj[e] && !newAdj[e]) adj[e] = false;
+            }
+            int[] queue = new int[n];
+            for (int d = affected.nextSetBit(0); d >= 0; d = affected.nextSetBit(d + 1)) {
+                repairDestination(d, queue);
+            }
+            changed.or(affected);
+        }
+
+        // 再逐条处理开放的链路：只有经过新链路更短的(i,j)才需要更新
+        if (opened > 0) {
+            for (int e = 0; e < n * n; e++) {
+                if (!adj[e] && newAdj[e]) {
+                    adj[e] = true;
+                    insertEdge(e / n, e % n, changed);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * floyd最短路径，以adj为拓扑重新计算整张表
+     */
+    private void rebuild() {
+        // 初始化
+        for (int i = 0; i < n; i++) {
+            int row = i * n;
+            for (int j = 0; j < n; j++) {
+                if (i == j) dist[row + j] = 0;
+                else dist[row + j] = adj[row + j] ? 1 : INF;
+                next[row + j] = j;
+            }
+        }
+        // 计算最短路径
+        if (n >= PARALLEL_THRESHOLD && ForkJoinTask.inForkJoinPool()) {
+            blockedFloyd();
+        } else {
+            relax(0, n, 0, n, 0, n);
+        }
+    }
+
+    /**
+     * 以[k0,k1)为中间节点，松弛行[i0,i1)、列[j0,j1)内的所有(i,j)
+     */
+    private void relax(int i0, int i1, int j0, int j1, int k0, int k1) {
+        for (int k = k0; k < k1; k++) {
+            int rowK = k * n;
+            for (int i = i0; i < i1; i++) {
+                int rowI = i * n;
+                int dik = dist[rowI + k];
+                if (dik == INF) continue;
+                int hop = next[rowI + k];
+                for (int j = j0; j < j1; j++) {
+                    int dkj = dist[rowK + j];
+                    if (dkj == INF) continue;
+                    int tmp = dik + dkj;
+                    // 如果经过下标为k顶点路径比原两点间路径更短，则更新dist[i][j]和next[i][j]
+                    if (dist[rowI + j] > tmp) {
+                        dist[rowI + j] = tmp;
+                        next[rowI + j] = hop;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 分块floyd：对每个中间块kb，先算对角块，再并行算kb所在的行块和列块，最后并行算其余块
+     */
+    private void blockedFloyd() {
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int kb = 0; kb < blocks; kb++) {
+            new BlockTask(kb, kb, kb).compute();
+            List<BlockTask> tasks = new ArrayList<BlockTask>(2 * blocks);
+            for (int b = 0; b < blocks; b++) {
+                if (b == kb) continue;
+                tasks.add(new BlockTask(kb, b, kb));
+                tasks.add(new BlockTask(b, kb, kb));
+            }
+            ForkJoinTask.invokeAll(tasks);
+            tasks = new ArrayList<BlockTask>(blocks * blocks);
+            for (int ib = 0; ib < blocks; ib++) {
+                if (ib == kb) continue;
+                for (int jb = 0; jb < blocks; jb++) {
+                    if (jb == kb) continue;
+                    tasks.add(new BlockTask(ib, jb, kb));
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }
+    }
+
+    private class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int ib, jb, kb;
+
+        BlockTask(int ib, int jb, int kb) {
+            this.ib = ib;
+            this.jb = jb;
+            this.kb = kb;
+        }
+
+        @Override
+        protected void compute() {
+            relax(ib * BLOCK_SIZE, Math.min(n, (ib + 1) * BLOCK_SIZE),
+                  jb * BLOCK_SIZE, Math.min(n, (jb + 1) * BLOCK_SIZE),
+                  kb * BLOCK_SIZE, Math.min(n, (kb + 1) * BLOCK_SIZE));
+        }
+    }
+
+    /**
+     * 以d为终点在反向图上做BFS，重建第d列的距离和下一跳
+     */
+    private void repairDestination(int d, int[] queue) {
+        for (int i = 0; i < n; i++) {
+            dist[i * n + d] = INF;
+            next[i * n + d] = d;
+        }
+        dist[d * n + d] = 0;
+        int head = 0, tail = 0;
+        queue[tail++] = d;
+        while (head < tail) {
+            int y = queue[head++];
+            int dy = dist[y * n + d];
+            for (int x = 0; x < n; x++) {
+                if (adj[x * n + y] && dist[x * n + d] == INF) {
+                    dist[x * n + d] = dy + 1;
+                    next[x * n + d] = y;
+                    queue[tail++] = x;
+                }
+            }
+        }
+    }
+
+    /**
+     * 新开放链路u->v后，更新所有经过该链路可以变得更短的(i,j)
+     */
+    private void insertEdge(int u, int v, BitSet changed) {
+        if (dist[u * n + v] <= 1) return;
+        int rowV = v * n;
+        for (int i = 0; i < n; i++) {
+            int rowI = i * n;
+            int diu = dist[rowI + u];
+            if (diu == INF) continue;
+            int hop = (i == u) ? v : next[rowI + u];
+            for (int j = 0; j < n; j++) {
+                int dvj = dist[rowV + j];
+                if (dvj == INF) continue;
+                int tmp = diu + 1 + dvj;
+                if (dist[rowI + j] > tmp) {
+                    dist[rowI + j] = tmp;
+                    next[rowI + j] = hop;
+                    changed.set(j);
+                }
+            }
+        }
+    }
+}
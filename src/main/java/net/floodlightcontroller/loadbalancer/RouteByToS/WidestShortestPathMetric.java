@@ -0,0 +1,64 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import java.util.BitSet;
+
+/**
+ * 最宽最短路：先保证跳数最少，跳数相同的路径中选瓶颈剩余带宽最大的一条
+ * 对每个目的节点在反向图上BFS分层，再按层由近及远计算每个节点的最大瓶颈带宽
+ */
+public class WidestShortestPathMetric implements IPathMetric {
+    public static final String NAME = "widest";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public IRouteTable compute(LinkGraph graph, IRouteTable previous, BitSet changedDst) {
+        int n = graph.size();
+        int[] next = new int[n * n];
+        double[] width = new double[n * n];
+        int[] hops = new int[n];
+        int[] queue = new int[n];
+        for (int d = 0; d < n; d++) {
+            for (int i = 0; i < n; i++) {
+                hops[i] = -1;
+                next[i * n + d] = -1;
+            }
+            hops[d] = 0;
+            next[d * n + d] = d;
+            width[d * n + d] = Double.POSITIVE_INFINITY;
+            int head = 0, tail = 0;
+            queue[tail++] = d;
+            while (head < tail) {
+                int y = queue[head++];
+                for (int x = 0; x < n; x++) {
+                    if (hops[x] < 0 && graph.isOpen(x, y)) {
+                        hops[x] = hops[y] + 1;
+                        queue[tail++] = x;
+                    }
+                }
+            }
+            //BFS顺序保证下一层的节点已经算好
+            for (int q = 1; q < tail; q++) {
+                int x = queue[q];
+                double best = -1;
+                int bestHop = -1;
+                for (int y = 0; y < n; y++) {
+                    if (hops[y] != hops[x] - 1 || !graph.isOpen(x, y)) continue;
+                    double w = Math.min(graph.getResidual(x, y), width[y * n + d]);
+                    if (w > best) {
+                        best = w;
+                        bestHop = y;
+                    }
+                }
+                next[x * n + d] = bestHop;
+                width[x * n + d] = best;
+            }
+        }
+        PathTable table = new PathTable(n, next, width);
+        PathTable.diff(previous, table, changedDst);
+        return (previous != null && changedDst.isEmpty()) ? previous : table;
+    }
+}
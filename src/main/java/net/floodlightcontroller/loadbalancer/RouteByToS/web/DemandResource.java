@@ -0,0 +1,21 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS.web;
+
+import java.util.Map;
+
+import net.floodlightcontroller.loadbalancer.RouteByToS.IRouteByToS;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * 查询流量需求矩阵<入口dpid, <出口dpid, <ToS, Mbps>>>，只列出非零的项
+ */
+public class DemandResource extends ServerResource {
+
+    @Get("json")
+    public Map<String, Map<String, Map<String, Double>>> retrieve() {
+        IRouteByToS router = (IRouteByToS) getContext().getAttributes().
+                get(IRouteByToS.class.getCanonicalName());
+        return router.getDemandMatrix().toMap();
+    }
+}
@@ -0,0 +1,21 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS.web;
+
+import java.util.Map;
+
+import net.floodlightcontroller.loadbalancer.RouteByToS.IRouteByToS;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * 查询下发FlowMod的批大小分布<批大小范围, 批数>
+ */
+public class FlowModBatchResource extends ServerResource {
+
+    @Get("json")
+    public Map<String, Long> retrieve() {
+        IRouteByToS router = (IRouteByToS) getContext().getAttributes().
+                get(IRouteByToS.class.getCanonicalName());
+        return router.getFlowModBatchSizes();
+    }
+}
@@ -0,0 +1,28 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS.web;
+
+import net.floodlightcontroller.restserver.RestletRoutable;
+
+import org.restlet.Context;
+import org.restlet.routing.Router;
+
+public class RouteByToSWebRoutable implements RestletRoutable {
+    /**
+     * Create the Restlet router and bind to the proper resources.
+     */
+    @Override
+    public Router getRestlet(Context context) {
+        Router router = new Router(context);
+        router.attach("/tosclass/json", ToSClassResource.class);
+        router.attach("/demand/json", DemandResource.class);
+        router.attach("/batch/json", FlowModBatchResource.class);
+        return router;
+    }
+
+    /**
+     * Set the base path for the ToS routing service
+     */
+    @Override
+    public String basePath() {
+        return "/wm/routebytos";
+    }
+}
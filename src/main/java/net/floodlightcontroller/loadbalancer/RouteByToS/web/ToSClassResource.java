@@ -0,0 +1,62 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS.web;
+
+import java.io.IOException;
+import java.util.Map;
+
+import net.floodlightcontroller.loadbalancer.RouteByToS.IRouteByToS;
+import net.floodlightcontroller.loadbalancer.RouteByToS.ToSClassTable;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+
+/**
+ * 查询或重新加载ToS分类表
+ * POST的内容为各类型的取值，例如
+ * {"bandwidth":[0,1,2,3], "lossRate":[1,0], "delay":[0,1,2,3,4,5,6,7]}，
+ * 没有给出的项沿用当前的取值，各类型的数目不能改变
+ */
+public class ToSClassResource extends ServerResource {
+
+    @Get("json")
+    public ToSClassTable retrieve() {
+        IRouteByToS router = (IRouteByToS) getContext().getAttributes().
+                get(IRouteByToS.class.getCanonicalName());
+        return router.getToSClassTable();
+    }
+
+    @Post("json")
+    public ToSClassTable reload(String entity) {
+        IRouteByToS router = (IRouteByToS) getContext().getAttributes().
+                get(IRouteByToS.class.getCanonicalName());
+        ToSClassTable current = router.getToSClassTable();
+        try {
+            Map<String, double[]> config = new ObjectMapper().readValue(entity,
+                    new TypeReference<Map<String, double[]>>() {});
+            double[] bandwidth = config.containsKey("bandwidth") ? config.get("bandwidth")
+                                                                  : current.getBandwidth();
+            double[] lossRate = config.containsKey("lossRate") ? config.get("lossRate")
+                                                                : current.getLossRate();
+            int[] delay = current.getDelay();
+            if (config.containsKey("delay")) {
+                double[] values = config.get("delay");
+                delay = new int[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    delay[i] = (int) values[i];
+                }
+            }
+            ToSClassTable table = new ToSClassTable(bandwidth, lossRate, delay);
+            router.setToSClassTable(table);
+            return table;
+        } catch (IOException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid JSON");
+            return null;
+        } catch (IllegalArgumentException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -29,6 +29,13 @@ public abstract class BasePacket implements IPacket {
     public static final Logger log = LoggerFactory.getLogger(BasePacket.class);
     protected IPacket parent;
     protected IPacket payload;
+    /*
+     * Payload bytes whose decoding has been deferred by deferPayload(). The
+     * payload is decoded from them the first time getPayload() is called.
+     */
+    private byte[] deferredData;
+    private int deferredOffset;
+    private int deferredLength;
 
     /**
      * @return the parent
@@ -52,6 +59,21 @@ public abstract class BasePacket implements IPacket {
      */
     @Override
     public IPacket getPayload() {
+        if (deferredData != null) {
+            byte[] data = deferredData;
+            deferredData = null;
+            IPacket decoded;
+            try {
+                decoded = decodePayload(data, deferredOffset, deferredLength);
+            } catch (PacketParsingException e) {
+                decoded = undecodedPayload(data, deferredOffset, deferredLength, e);
+            } catch (RuntimeException e) {
+                decoded = undecodedPayload(data, deferredOffset, deferredLength, e);
+            }
+            if (decoded != null)
+                decoded.setParent(this);
+            payload = decoded;
+        }
         return payload;
     }
 
@@ -60,9 +82,52 @@ public abstract class BasePacket implements IPacket {
      */
     @Override
     public IPacket setPayload(IPacket payload) {
+        this.deferredData = null;
         this.payload = payload;
         return this;
     }
+
+    /**
+     * Defers decoding of the payload until getPayload() is first called, so
+     * that a packet-in listener which only looks at the outer headers does
+     * not pay for parsing (and allocating) the inner layers. The array is
+     * referenced, not copied, and must not be modified afterwards. Not
+     * thread-safe, as with the rest of the packet classes.
+     * @param data the buffer holding the payload
+     * @param offset offset of the payload in data
+     * @param length length of the payload
+     */
+    protected void deferPayload(byte[] data, int offset, int length) {
+        this.payload = null;
+        this.deferredData = data;
+        this.deferredOffset = offset;
+        this.deferredLength = length;
+    }
+
+    /**
+     * Decodes the payload deferred by deferPayload(). Subclasses which defer
+     * their payload override this with their payload dispatch.
+     * @return the decoded payload
+     */
+    protected IPacket decodePayload(byte[] data, int offset, int length)
+            throws PacketParsingException {
+        return new Data().deserialize(data, offset, length);
+    }
+
+    /**
+     * Fallback when the deferred payload can not be decoded: the payload
+     * bytes are kept as plain data.
+     */
+    private IPacket undecodedPayload(byte[] data, int offset, int length,
+                                     Exception e) {
+        if (log.isTraceEnabled()) {
+            log.trace("Failed to parse payload of {}, treat as plain data: {}",
+                      this.getClass().getSimpleName(), e);
+        }
+        int begin = Math.max(0, Math.min(offset, data.length));
+        int end = Math.max(begin, Math.min(offset + length, data.length));
+        return new Data().deserialize(data, begin, end - begin);
+    }
     
     @Override
     public void resetChecksum() {
@@ -77,6 +142,7 @@ public abstract class BasePacket implements IPacket {
     public int hashCode() {
         final int prime = 6733;
         int result = 1;
+        IPacket payload = getPayload();
         result = prime * result + ((payload == null) ? 0 : payload.hashCode());
         return result;
     }
@@ -93,10 +159,11 @@ public abstract class BasePacket implements IPacket {
         if (!(obj instanceof BasePacket))
             return false;
         BasePacket other = (BasePacket) obj;
+        IPacket payload = getPayload();
         if (payload == null) {
-            if (other.payload != null)
+            if (other.getPayload() != null)
                 return false;
-        } else if (!payload.equals(other.payload))
+        } else if (!payload.equals(other.getPayload()))
             return false;
         return true;
     }
@@ -202,6 +202,7 @@ public class Ethernet extends BasePacket {
 
     public byte[] serialize() {
         byte[] payloadData = null;
+        IPacket payload = getPayload();
         if (payload != null) {
             payload.setParent(this);
             payloadData = payload.serialize();
@@ -233,14 +234,10 @@ public class Ethernet extends BasePacket {
         if (length <= 16)  // Ethernet packet minium should be 60, this is reasonable
             return null;
         ByteBuffer bb = ByteBuffer.wrap(data, offset, length);
-        if (this.destinationMACAddress == null)
-            this.destinationMACAddress = MACAddress.valueOf(new byte[6]);
         byte[] dstAddr = new byte[MACAddress.MAC_ADDRESS_LENGTH];
         bb.get(dstAddr);
         this.destinationMACAddress = MACAddress.valueOf(dstAddr);
 
-        if (this.sourceMACAddress == null)
-            this.sourceMACAddress = MACAddress.valueOf(new byte[6]);
         byte[] srcAddr = new byte[MACAddress.MAC_ADDRESS_LENGTH];
         bb.get(srcAddr);
         this.sourceMACAddress = MACAddress.valueOf(srcAddr);
@@ -255,46 +252,44 @@ public class Ethernet extends BasePacket {
             this.vlanID = VLAN_UNTAGGED;
         }
         this.etherType = etherType;
-        
-        IPacket payload;
-        if (Ethernet.etherTypeClassMap.containsKey(this.etherType)) {
-            Class<? extends IPacket> clazz = Ethernet.etherTypeClassMap.get(this.etherType);
-            try {
-                payload = clazz.newInstance();
-                this.payload = payload.deserialize(data, bb.position(), bb.limit()-bb.position());
-            } catch (PacketParsingException e) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Failed to parse ethernet packet {}->{}" +
-                            " payload as {}, treat as plain ethernet packet",
-                            new Object[] {this.sourceMACAddress,
-                                          this.destinationMACAddress,
-                                          clazz.getClass().getName()});
-                    log.trace("Exception from parsing {}", e);
-                }
-                this.payload = new Data(data);
-            } catch (InstantiationException e) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Fail to instantiate class {}, {}",
-                              clazz.getClass().getName(), e);
-                }
-                this.payload = new Data(data);
-            } catch (IllegalAccessException e) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Fail to access class for instantiation {}, {}",
-                              clazz.getClass().getName(), e);
-                }
-                this.payload = new Data(data);
-            } catch (RuntimeException e) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Runtime exception during packet parsing {}", e);
-                }
-                this.payload = new Data(data);
+
+        // The payload is decoded on first access, see decodePayload()
+        deferPayload(data, bb.position(), bb.limit()-bb.position());
+        return this;
+    }
+
+    @Override
+    protected IPacket decodePayload(byte[] data, int offset, int length) {
+        Class<? extends IPacket> clazz = Ethernet.etherTypeClassMap.get(this.etherType);
+        if (clazz == null)
+            return new Data().deserialize(data, offset, length);
+        try {
+            return clazz.newInstance().deserialize(data, offset, length);
+        } catch (PacketParsingException e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Failed to parse ethernet packet {}->{}" +
+                        " payload as {}, treat as plain ethernet packet",
+                        new Object[] {this.sourceMACAddress,
+                                      this.destinationMACAddress,
+                                      clazz.getName()});
+                log.trace("Exception from parsing {}", e);
+            }
+        } catch (InstantiationException e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Fail to instantiate class {}, {}",
+                          clazz.getName(), e);
+            }
+        } catch (IllegalAccessException e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Fail to access class for instantiation {}, {}",
+                          clazz.getName(), e);
+            }
+        } catch (RuntimeException e) {
+            if (log.isTraceEnabled()) {
+                log.trace("Runtime exception during packet parsing {}", e);
             }
-        } else {
-            this.payload = new Data(data);
         }
-        this.payload.setParent(this);
-        return this;
+        return new Data().deserialize(data, offset, length);
     }
 
     /**
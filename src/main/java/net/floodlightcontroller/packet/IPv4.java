@@ -305,6 +305,7 @@ public class IPv4 extends BasePacket {
     @Override
     public byte[] serialize() {
         byte[] payloadData = null;
+        IPacket payload = getPayload();
         if (payload != null) {
             payload.setParent(this);
             payloadData = payload.serialize();
@@ -384,31 +385,20 @@ public class IPv4 extends BasePacket {
             bb.get(this.options);
         }
 
-        IPacket payload;
         isFragment = ((this.flags & IPV4_FLAGS_DONTFRAG) == 0) &&
                 ((this.flags & IPV4_FLAGS_MOREFRAG) != 0 ||
                 this.fragmentOffset != 0);
-        if (!isFragment && IPv4.protocolClassMap.containsKey(this.protocol)) {
-            Class<? extends IPacket> clazz = IPv4.protocolClassMap.get(this.protocol);
-            try {
-                payload = clazz.newInstance();
-            } catch (Exception e) {
-                throw new RuntimeException("Error parsing payload for IPv4 packet", e);
-            }
-        } else {
-            if (log.isTraceEnabled() && isFragment) {
-                log.trace("IPv4 fragment detected {}->{}, forward using IP header only",
-                        fromIPv4Address(this.sourceAddress),
-                        fromIPv4Address(this.destinationAddress));
-            }
-            payload = new Data();
+        if (log.isTraceEnabled() && isFragment) {
+            log.trace("IPv4 fragment detected {}->{}, forward using IP header only",
+                    fromIPv4Address(this.sourceAddress),
+                    fromIPv4Address(this.destinationAddress));
         }
         int payloadLength = this.totalLength - this.headerLength * 4;
         int remLength = bb.limit()-bb.position();
         if (remLength < payloadLength)
             payloadLength = bb.limit()-bb.position();
-        this.payload = payload.deserialize(data, bb.position(), payloadLength);
-        this.payload.setParent(this);
+        // The payload is decoded on first access, see decodePayload()
+        deferPayload(data, bb.position(), payloadLength);
 
         if (this.totalLength > length)
             this.isTruncated = true;
@@ -418,6 +408,23 @@ public class IPv4 extends BasePacket {
         return this;
     }
 
+    @Override
+    protected IPacket decodePayload(byte[] data, int offset, int length)
+            throws PacketParsingException {
+        IPacket payload;
+        if (!isFragment && IPv4.protocolClassMap.containsKey(this.protocol)) {
+            Class<? extends IPacket> clazz = IPv4.protocolClassMap.get(this.protocol);
+            try {
+                payload = clazz.newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException("Error parsing payload for IPv4 packet", e);
+            }
+        } else {
+            payload = new Data();
+        }
+        return payload.deserialize(data, offset, length);
+    }
+
     /**
      * Accepts an IPv4 address of the form xxx.xxx.xxx.xxx, ie 192.168.0.1 and
      * returns the corresponding 32 bit integer.
@@ -157,6 +157,7 @@ public class TCP extends BasePacket {
             dataOffset = 5;  // default header length
         length = dataOffset << 2;
         byte[] payloadData = null;
+        IPacket payload = getPayload();
         if (payload != null) {
             payload.setParent(this);
             payloadData = payload.serialize();
@@ -287,10 +288,8 @@ public class TCP extends BasePacket {
             }
         }
 
-        this.payload = new Data();
-        int remLength = bb.limit()-bb.position();
-        this.payload = payload.deserialize(data, bb.position(), remLength);
-        this.payload.setParent(this);
+        // The payload is decoded on first access
+        deferPayload(data, bb.position(), bb.limit()-bb.position());
         return this;
     }
 }
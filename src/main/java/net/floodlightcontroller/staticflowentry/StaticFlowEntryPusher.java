@@ -44,6 +44,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.core.util.OFMessageBatcher;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.staticflowentry.web.StaticFlowEntryWebRoutable;
 import net.floodlightcontroller.storage.IResultSet;
@@ -120,6 +121,8 @@ public class StaticFlowEntryPusher
     protected Map<String, Map<String, OFFlowMod>> entriesFromStorage;
     // Entry Name -> DPID of Switch it's on
     protected Map<String, String> entry2dpid;
+    // Coalesces the entries pushed to a newly added switch into batches
+    protected OFMessageBatcher entryBatcher = new OFMessageBatcher(100, 0, null);
 
     // Class to sort FlowMod's by priority, from lowest to highest
     class FlowModSorter implements Comparator<String> {
@@ -177,6 +180,11 @@ public class StaticFlowEntryPusher
      *
      * @param sw The switch to send entries to
      */
+    @LogMessageDoc(level="ERROR",
+            message="Tried to write static entries to {switch} but got {error}",
+            explanation="An I/O error occured while trying to write the " +
+                    "static flows to a switch",
+            recommendation=LogMessageDoc.CHECK_SWITCH)
     protected void sendEntriesToSwitch(long switchId) {
         IOFSwitch sw = floodlightProvider.getSwitch(switchId);
         if (sw == null)
@@ -188,14 +196,20 @@ public class StaticFlowEntryPusher
             List<String> sortedList = new ArrayList<String>(entries.keySet());
             // weird that Collections.sort() returns void
             Collections.sort( sortedList, new FlowModSorter(stringId));
-            for (String entryName : sortedList) {
-                OFFlowMod flowMod = entries.get(entryName);
-                if (flowMod != null) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Pushing static entry {} for {}", stringId, entryName);
+            try {
+                for (String entryName : sortedList) {
+                    OFFlowMod flowMod = entries.get(entryName);
+                    if (flowMod != null) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Pushing static entry {} for {}", stringId, entryName);
+                        }
+                        entryBatcher.write(sw, flowMod);
                     }
-                    writeFlowModToSwitch(sw, flowMod);
                 }
+                entryBatcher.flush(sw);
+            } catch (IOException e) {
+                log.error("Tried to write static entries to {} but got {}",
+                        stringId, e.getMessage());
             }
         }
     }
@@ -263,6 +277,8 @@ public class StaticFlowEntryPusher
 
         OFFlowMod flowMod = (OFFlowMod) floodlightProvider.getOFMessageFactory()
                 .getMessage(OFType.FLOW_MOD);
+        // Entries are kept and written again when their switch reconnects
+        flowMod.retain();
 
         if (!row.containsKey(COLUMN_SWITCH) || !row.containsKey(COLUMN_NAME)) {
             log.debug(
@@ -347,7 +363,8 @@ public class StaticFlowEntryPusher
     @Override
     public void switchRemoved(long switchId) {
         // do NOT delete from our internal state; we're tracking the rules,
-        // not the switches
+        // not the switches. Only the outbound queue goes with the switch.
+        entryBatcher.removeSwitch(switchId);
     }
 
     @Override
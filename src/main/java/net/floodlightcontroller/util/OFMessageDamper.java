@@ -141,6 +141,8 @@ public class OFMessageDamper {
             return true;
         }
         
+        // The cache keeps the message, it must not be recycled once written
+        msg.retain();
         DamperEntry entry = new DamperEntry(msg, sw);
         if (cache.update(entry)) {
             // entry exists in cache. Dampening.
@@ -64,6 +64,23 @@ public class OFFlowMod extends OFMessage implements OFActionFactoryAware, Clonea
         this.length = U16.t(MINIMUM_LENGTH);
     }
 
+    @Override
+    protected void reset() {
+        super.reset();
+        this.type = OFType.FLOW_MOD;
+        this.length = U16.t(MINIMUM_LENGTH);
+        this.match = null;
+        this.cookie = 0;
+        this.command = 0;
+        this.idleTimeout = 0;
+        this.hardTimeout = 0;
+        this.priority = 0;
+        this.bufferId = 0;
+        this.outPort = OFPort.OFPP_NONE.getValue();
+        this.flags = 0;
+        this.actions = null;
+    }
+
     /**
      * Get buffer_id
      * @return
@@ -51,12 +51,56 @@ public class OFMessage {
     protected int xid;
 
     private ConcurrentHashMap<String, Object> storage;
+    // The pool this message goes back to once it has been written, null if
+    // it was not taken from a pool or has been retained
+    private OFMessagePool pool;
 
     public OFMessage() {
         storage = null;
         this.version = OFP_VERSION;
     }
 
+    /**
+     * Whether this message is returned to the pool it was taken from once
+     * the channel encoder has written it
+     *
+     * @return
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Keep this message from being returned to its pool after it is written.
+     * Writers that still use a pooled message once it has been handed to a
+     * switch, for example by caching or cloning it, must call this first.
+     *
+     * @return this message
+     */
+    public OFMessage retain() {
+        this.pool = null;
+        return this;
+    }
+
+    OFMessagePool getPool() {
+        return pool;
+    }
+
+    void setPool(OFMessagePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Return the fields to the values of a newly constructed message, before
+     * a pool hands this message out again. Subclasses that can be pooled
+     * reset their own fields.
+     */
+    protected void reset() {
+        this.version = OFP_VERSION;
+        this.xid = 0;
+        this.storage = null;
+    }
+
     protected synchronized ConcurrentHashMap<String, Object> getMessageStore() {
         if (storage == null) {
             storage = new ConcurrentHashMap<String, Object>();;
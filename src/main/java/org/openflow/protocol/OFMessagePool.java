@@ -0,0 +1,149 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package org.openflow.protocol;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded free lists of the high volume outbound messages, FLOW_MOD and
+ * PACKET_OUT, so that writers producing them at line rate do not allocate
+ * a new message for each one.
+ *
+ * A message handed out by acquire() is marked as pooled. Once the channel
+ * encoder has written it into a buffer it calls release(), which resets the
+ * message to the state of a newly constructed one and puts it back on the
+ * free list. A writer must therefore not touch a pooled message after
+ * writing it, unless it called OFMessage.retain() first. Messages of other
+ * types are always newly constructed.
+ *
+ * The free lists are thread local: the encoder runs on the thread that
+ * flushes the messages, which is the thread that created them, so the hot
+ * path needs neither locking nor allocation.
+ */
+public class OFMessagePool {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static class FreeLists {
+        final ArrayDeque<OFMessage> flowMods = new ArrayDeque<OFMessage>();
+        final ArrayDeque<OFMessage> packetOuts = new ArrayDeque<OFMessage>();
+
+        ArrayDeque<OFMessage> of(OFType t) {
+            switch (t) {
+                case FLOW_MOD:
+                    return flowMods;
+                case PACKET_OUT:
+                    return packetOuts;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final int capacity;
+    private final ThreadLocal<FreeLists> freeLists =
+            new ThreadLocal<FreeLists>() {
+        @Override
+        protected FreeLists initialValue() {
+            return new FreeLists();
+        }
+    };
+    private final AtomicLong allocated = new AtomicLong();
+
+    public OFMessagePool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the largest number of free messages kept of each type
+     *                 by each thread
+     */
+    public OFMessagePool(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    /**
+     * Whether messages of the given type are pooled
+     *
+     * @param t
+     * @return
+     */
+    public boolean isPoolable(OFType t) {
+        return t == OFType.FLOW_MOD || t == OFType.PACKET_OUT;
+    }
+
+    /**
+     * Take a message of the given type from the calling thread's free list,
+     * or construct one if the list is empty or the type is not pooled
+     *
+     * @param t
+     * @return a message in the state of a newly constructed one
+     */
+    public OFMessage acquire(OFType t) {
+        if (!isPoolable(t))
+            return t.newInstance();
+        OFMessage m = freeLists.get().of(t).poll();
+        if (m == null) {
+            m = t.newInstance();
+            allocated.incrementAndGet();
+        }
+        m.setPool(this);
+        return m;
+    }
+
+    /**
+     * Return a message taken from this pool to the calling thread's free
+     * list. Does nothing for messages that were not taken from this pool,
+     * were retained or were already released.
+     *
+     * @param m
+     * @return whether the message was put back on a free list
+     */
+    public boolean release(OFMessage m) {
+        if (m.getPool() != this)
+            return false;
+        m.setPool(null);
+        if (!isPoolable(m.getType()) || m.getClass() != m.getType().toClass())
+            return false;
+        ArrayDeque<OFMessage> list = freeLists.get().of(m.getType());
+        if (list.size() >= capacity)
+            return false;
+        m.reset();
+        list.push(m);
+        return true;
+    }
+
+    /**
+     * Number of free messages of the given type on the calling thread
+     *
+     * @param t
+     * @return
+     */
+    public int getFreeCount(OFType t) {
+        ArrayDeque<OFMessage> list = freeLists.get().of(t);
+        return (list == null) ? 0 : list.size();
+    }
+
+    /**
+     * Number of pooled messages constructed because the free list was empty
+     *
+     * @return
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+}
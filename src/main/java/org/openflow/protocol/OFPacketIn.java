@@ -20,6 +20,7 @@ package org.openflow.protocol;
 import java.util.Arrays;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.openflow.util.U16;
 import org.openflow.util.U32;
 import org.openflow.util.U8;
@@ -41,6 +42,12 @@ public class OFPacketIn extends OFMessage {
     protected short inPort;
     protected OFPacketInReason reason;
     protected byte[] packetData;
+    /**
+     * Packet data as a slice of the inbound frame buffer, set by
+     * {@link #readFromSlice(ChannelBuffer)} instead of copying. The byte
+     * array form is only materialized if {@link #getPacketData()} is called.
+     */
+    protected ChannelBuffer packetDataBuffer;
 
     public OFPacketIn() {
         super();
@@ -66,19 +73,60 @@ public class OFPacketIn extends OFMessage {
     }
 
     /**
-     * Returns the packet data
+     * Returns the packet data. A message decoded with
+     * {@link #readFromSlice(ChannelBuffer)} copies its payload out of the
+     * frame buffer on the first call.
      * @return
      */
     public byte[] getPacketData() {
+        if (this.packetData == null && this.packetDataBuffer != null) {
+            byte[] data = new byte[this.packetDataBuffer.readableBytes()];
+            this.packetDataBuffer.getBytes(this.packetDataBuffer.readerIndex(), data);
+            this.packetData = data;
+        }
         return this.packetData;
     }
 
+    /**
+     * Whether the packet data is still only held as a slice of the inbound
+     * frame buffer, i.e. getPacketData() would have to copy it
+     * @return
+     */
+    public boolean hasPacketDataSlice() {
+        return this.packetData == null && this.packetDataBuffer != null;
+    }
+
+    /**
+     * Returns the packet data without copying it. The returned buffer is an
+     * independent view (its indexes may be changed freely) that shares the
+     * underlying bytes, which must not be modified.
+     * @return the packet data, or null if not set
+     */
+    public ChannelBuffer getPacketDataBuffer() {
+        if (this.packetDataBuffer != null)
+            return this.packetDataBuffer.duplicate();
+        if (this.packetData != null)
+            return ChannelBuffers.wrappedBuffer(this.packetData);
+        return null;
+    }
+
+    /**
+     * Returns the length of the packet data without copying it
+     * @return
+     */
+    public int getPacketDataLength() {
+        if (this.packetDataBuffer != null)
+            return this.packetDataBuffer.readableBytes();
+        return (this.packetData == null) ? 0 : this.packetData.length;
+    }
+
     /**
      * Sets the packet data, and updates the length of this message
      * @param packetData
      */
     public OFPacketIn setPacketData(byte[] packetData) {
         this.packetData = packetData;
+        this.packetDataBuffer = null;
         this.length = U16.t(OFPacketIn.MINIMUM_LENGTH + packetData.length);
         return this;
     }
@@ -136,14 +184,32 @@ public class OFPacketIn extends OFMessage {
 
     @Override
     public void readFrom(ChannelBuffer data) {
+        readHeader(data);
+        this.packetData = new byte[getLengthU() - MINIMUM_LENGTH];
+        this.packetDataBuffer = null;
+        data.readBytes(this.packetData);
+    }
+
+    /**
+     * Reads this message like {@link #readFrom(ChannelBuffer)}, but keeps the
+     * packet data as a slice of data instead of copying it. The caller must
+     * guarantee that the bytes backing data are not reused or modified while
+     * this message is reachable.
+     * @param data
+     */
+    public void readFromSlice(ChannelBuffer data) {
+        readHeader(data);
+        this.packetData = null;
+        this.packetDataBuffer = data.readSlice(getLengthU() - MINIMUM_LENGTH);
+    }
+
+    private void readHeader(ChannelBuffer data) {
         super.readFrom(data);
         this.bufferId = data.readInt();
         this.totalLength = data.readShort();
         this.inPort = data.readShort();
         this.reason = OFPacketInReason.values()[U8.f(data.readByte())];
         data.readByte(); // pad
-        this.packetData = new byte[getLengthU() - MINIMUM_LENGTH];
-        data.readBytes(this.packetData);
     }
 
     @Override
@@ -154,7 +220,12 @@ public class OFPacketIn extends OFMessage {
         data.writeShort(inPort);
         data.writeByte((byte) reason.ordinal());
         data.writeByte((byte) 0x0); // pad
-        data.writeBytes(this.packetData);
+        if (this.packetData == null && this.packetDataBuffer != null) {
+            data.writeBytes(this.packetDataBuffer, this.packetDataBuffer.readerIndex(),
+                    this.packetDataBuffer.readableBytes());
+        } else {
+            data.writeBytes(this.packetData);
+        }
     }
 
     @Override
@@ -163,7 +234,7 @@ public class OFPacketIn extends OFMessage {
         int result = super.hashCode();
         result = prime * result + bufferId;
         result = prime * result + inPort;
-        result = prime * result + Arrays.hashCode(packetData);
+        result = prime * result + Arrays.hashCode(getPacketData());
         result = prime * result + ((reason == null) ? 0 : reason.hashCode());
         result = prime * result + totalLength;
         return result;
@@ -187,7 +258,7 @@ public class OFPacketIn extends OFMessage {
         if (inPort != other.inPort) {
             return false;
         }
-        if (!Arrays.equals(packetData, other.packetData)) {
+        if (!Arrays.equals(getPacketData(), other.getPacketData())) {
             return false;
         }
         if (reason == null) {
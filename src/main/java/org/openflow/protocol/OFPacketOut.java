@@ -50,6 +50,18 @@ public class OFPacketOut extends OFMessage implements OFActionFactoryAware {
         this.bufferId = BUFFER_ID_NONE;
     }
 
+    @Override
+    protected void reset() {
+        super.reset();
+        this.type = OFType.PACKET_OUT;
+        this.length = U16.t(MINIMUM_LENGTH);
+        this.bufferId = BUFFER_ID_NONE;
+        this.inPort = 0;
+        this.actionsLength = 0;
+        this.actions = null;
+        this.packetData = null;
+    }
+
     /**
      * Get buffer_id
      * @return
@@ -22,6 +22,7 @@ import java.util.List;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFMessagePool;
 import org.openflow.protocol.OFType;
 import org.openflow.protocol.action.OFAction;
 import org.openflow.protocol.action.OFActionType;
@@ -49,6 +50,9 @@ public enum BasicFactory implements OFMessageFactory, OFActionFactory,
 
 
     private final OFVendorActionRegistry vendorActionRegistry;
+    // Pool the FLOW_MOD and PACKET_OUT messages are taken from, null to
+    // always construct new ones
+    private volatile OFMessagePool messagePool;
 
     private BasicFactory() {
         vendorActionRegistry = OFVendorActionRegistry.getInstance();
@@ -58,17 +62,37 @@ public enum BasicFactory implements OFMessageFactory, OFActionFactory,
         return SINGLETON_INSTANCE;
     }
 
+    /**
+     * Take the FLOW_MOD and PACKET_OUT messages returned by getMessage()
+     * from a pool. Those messages are recycled once the channel encoder has
+     * written them, see OFMessagePool.
+     *
+     * @param pool the pool, or null to construct every message
+     */
+    public void setMessagePool(OFMessagePool pool) {
+        this.messagePool = pool;
+    }
+
+    /**
+     * @return the pool messages are taken from, or null
+     */
+    public OFMessagePool getMessagePool() {
+        return messagePool;
+    }
+
     /**
      * create and return a new instance of a message for OFType t. Also injects
      * factories for those message types that implement the *FactoryAware
      * interfaces.
      *
      * @return a newly created instance that may be modified / used freely by
-     *         the caller
+     *         the caller, or a recycled one in the same state when a message
+     *         pool is set
      */
     @Override
     public OFMessage getMessage(OFType t) {
-        OFMessage message = t.newInstance();
+        OFMessagePool pool = messagePool;
+        OFMessage message = (pool != null) ? pool.acquire(t) : t.newInstance();
         injectFactories(message);
         return message;
     }
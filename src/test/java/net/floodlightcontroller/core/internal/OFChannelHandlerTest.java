@@ -129,6 +129,7 @@ public class OFChannelHandlerTest {
                 new Controller.Counters();
         counters.createCounters(debugCounterService);
         expect(controller.getCounters()).andReturn(counters).anyTimes();
+        expect(controller.getMessageDispatcher()).andReturn(null).anyTimes();
         replay(controller);
         handler = new OFChannelHandler(controller);
         verify(controller);
@@ -0,0 +1,70 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.openflow.protocol.OFEchoRequest;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFPacketIn;
+import org.openflow.protocol.OFPacketIn.OFPacketInReason;
+import org.openflow.protocol.OFType;
+
+public class OFMessageDecoderTest {
+    private static OFPacketIn packetIn(int xid, byte fill) {
+        OFPacketIn pi = new OFPacketIn();
+        pi.setXid(xid);
+        pi.setBufferId(-1);
+        pi.setInPort((short) 1);
+        pi.setReason(OFPacketInReason.NO_MATCH);
+        byte[] data = new byte[60];
+        java.util.Arrays.fill(data, fill);
+        pi.setPacketData(data);
+        pi.setTotalLength((short) data.length);
+        return pi;
+    }
+
+    @Test
+    public void testZeroCopyMatchesCopyingDecode() throws Exception {
+        OFPacketIn pi1 = packetIn(1, (byte) 0x11);
+        OFEchoRequest echo = new OFEchoRequest();
+        echo.setXid(2);
+        OFPacketIn pi2 = packetIn(3, (byte) 0x22);
+        ChannelBuffer wire = ChannelBuffers.dynamicBuffer();
+        pi1.writeTo(wire);
+        echo.writeTo(wire);
+        pi2.writeTo(wire);
+        // a partial message stays in the buffer for the next read
+        ChannelBuffer partial = ChannelBuffers.dynamicBuffer();
+        packetIn(4, (byte) 0x33).writeTo(partial);
+        wire.writeBytes(partial, 0, 20);
+
+        ChannelBuffer copy = wire.copy();
+        List<OFMessage> expected = new OFMessageDecoder().factory.parseMessage(copy);
+        List<OFMessage> decoded = new OFMessageDecoder(true).decodeSlices(wire);
+        assertEquals(expected, decoded);
+        assertEquals(3, decoded.size());
+        assertEquals(OFType.ECHO_REQUEST, decoded.get(1).getType());
+        assertEquals(20, wire.readableBytes());
+
+        // FrameDecoder compacts and reuses its cumulation buffer, which must
+        // not affect payloads that were already decoded
+        wire.discardReadBytes();
+        wire.setZero(0, wire.capacity());
+        assertEquals(pi1, decoded.get(0));
+        assertEquals(pi2, decoded.get(2));
+        assertEquals(0x22, ((OFPacketIn) decoded.get(2)).getPacketDataBuffer().getByte(59));
+    }
+
+    @Test
+    public void testIncompleteMessage() throws Exception {
+        ChannelBuffer wire = ChannelBuffers.dynamicBuffer();
+        packetIn(1, (byte) 0).writeTo(wire);
+        ChannelBuffer head = wire.readSlice(30);
+        assertNull(new OFMessageDecoder(true).decodeSlices(head));
+        assertEquals(0, head.readerIndex());
+    }
+}
@@ -0,0 +1,189 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.DebugCounter;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.After;
+import org.junit.Test;
+import org.openflow.protocol.OFEchoRequest;
+import org.openflow.protocol.OFMessage;
+
+public class OFMessageDispatcherTest {
+    private OFMessageDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) dispatcher.stop();
+    }
+
+    private static IOFSwitch mockSwitch(long dpid) {
+        IOFSwitch sw = createNiceMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(dpid).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private static OFMessage message(int xid) {
+        OFEchoRequest m = new OFEchoRequest();
+        m.setXid(xid);
+        return m;
+    }
+
+    /**
+     * Dispatcher recording the order and thread each switch's messages were
+     * processed in
+     */
+    private static class RecordingDispatcher extends OFMessageDispatcher {
+        final Map<Long, List<Integer>> xids = new HashMap<Long, List<Integer>>();
+        final Map<Long, Thread> threads = new HashMap<Long, Thread>();
+        final AtomicInteger processed = new AtomicInteger();
+        volatile CountDownLatch started = new CountDownLatch(0);
+        volatile CountDownLatch release = new CountDownLatch(0);
+
+        RecordingDispatcher(int lanes, int queueSize) throws Exception {
+            super(null, lanes, queueSize);
+            createCounters(new DebugCounter());
+        }
+
+        @Override
+        void process(IOFSwitch sw, OFMessage m) throws Exception {
+            started.countDown();
+            release.await();
+            synchronized (this) {
+                if (!xids.containsKey(sw.getId())) {
+                    xids.put(sw.getId(), new ArrayList<Integer>());
+                    threads.put(sw.getId(), Thread.currentThread());
+                }
+                xids.get(sw.getId()).add(m.getXid());
+                assertSame(threads.get(sw.getId()), Thread.currentThread());
+            }
+            processed.incrementAndGet();
+        }
+
+        @Override
+        void flush() {
+        }
+
+        void awaitProcessed(int count) throws InterruptedException {
+            for (int i = 0; i < 500 && processed.get() < count; i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(count, processed.get());
+        }
+    }
+
+    @Test
+    public void testPerSwitchOrdering() throws Exception {
+        RecordingDispatcher d = new RecordingDispatcher(4, 16);
+        dispatcher = d;
+        d.start();
+        Channel channel = createNiceMock(Channel.class);
+        replay(channel);
+        IOFSwitch[] switches = new IOFSwitch[6];
+        for (int s = 0; s < switches.length; s++) {
+            switches[s] = mockSwitch(s + 1);
+        }
+        for (int i = 0; i < 200; i++) {
+            for (IOFSwitch sw : switches) {
+                d.dispatch(sw, channel, message(i));
+            }
+        }
+        d.awaitProcessed(200 * switches.length);
+        for (IOFSwitch sw : switches) {
+            List<Integer> xids = d.xids.get(sw.getId());
+            assertEquals(200, xids.size());
+            for (int i = 0; i < 200; i++) {
+                assertEquals(i, (int) xids.get(i));
+            }
+        }
+        assertEquals(d.laneOf(1L), d.laneOf(1L));
+        assertTrue(d.laneOf(7L) >= 0 && d.laneOf(7L) < 4);
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        RecordingDispatcher d = new RecordingDispatcher(1, 4);
+        dispatcher = d;
+        d.started = new CountDownLatch(1);
+        d.release = new CountDownLatch(1);
+        d.start();
+        IOFSwitch sw = mockSwitch(1L);
+        Channel channel = createMock(Channel.class);
+        expect(channel.setReadable(false)).andReturn(null).once();
+        expect(channel.setReadable(true)).andReturn(null).once();
+        replay(channel);
+
+        // The lane blocks on the first message, the rest stay queued
+        d.dispatch(sw, channel, message(0));
+        assertTrue(d.started.await(5, TimeUnit.SECONDS));
+        d.dispatch(sw, channel, message(1));
+        d.dispatch(sw, channel, message(2));
+        assertEquals(2, d.getQueueDepth(0));
+        // The high-water mark of a queue of 4 is 3
+        d.dispatch(sw, channel, message(3));
+        d.dispatch(sw, channel, message(4));
+        assertEquals(4, d.getQueueDepth(0));
+
+        // Draining the queue makes the channel readable again
+        d.release.countDown();
+        d.awaitProcessed(5);
+        for (int i = 0; i < 500; i++) {
+            try {
+                verify(channel);
+                break;
+            } catch (AssertionError e) {
+                if (i == 499) throw e;
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(0, d.getQueueDepth(0));
+    }
+
+    @Test
+    public void testPauseAfterDrain() throws Exception {
+        RecordingDispatcher d = new RecordingDispatcher(1, 4);
+        dispatcher = d;
+        // Not started, so the queue only holds what is dispatched here
+        Channel channel = createMock(Channel.class);
+        replay(channel);
+
+        // The lane drained before the I/O thread got to pause the channel
+        d.pause(0, channel);
+        verify(channel);
+
+        // A lane still above its low-water mark pauses the channel, and
+        // resumes it once drained
+        reset(channel);
+        expect(channel.setReadable(false)).andReturn(null).once();
+        expect(channel.setReadable(true)).andReturn(null).once();
+        replay(channel);
+        IOFSwitch sw = mockSwitch(1L);
+        d.dispatch(sw, channel, message(0));
+        d.dispatch(sw, channel, message(1));
+        d.dispatch(sw, channel, message(2));
+        assertEquals(3, d.getQueueDepth(0));
+        d.start();
+        d.awaitProcessed(3);
+        for (int i = 0; i < 500; i++) {
+            try {
+                verify(channel);
+                break;
+            } catch (AssertionError e) {
+                if (i == 499) throw e;
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.Capture;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFEchoRequest;
+import org.openflow.protocol.OFFlowMod;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFMessagePool;
+import org.openflow.protocol.OFType;
+
+public class OFMessageEncoderTest {
+    private OFMessagePool messagePool;
+    private Channel channel;
+    private ChannelHandlerContext ctx;
+    private Capture<ChannelEvent> sent;
+
+    @Before
+    public void setUp() {
+        messagePool = new OFMessagePool();
+        channel = createNiceMock(Channel.class);
+        ctx = createMock(ChannelHandlerContext.class);
+        sent = new Capture<ChannelEvent>();
+        expect(ctx.getChannel()).andReturn(channel).anyTimes();
+        ctx.sendDownstream(capture(sent));
+        expectLastCall().once();
+        replay(channel, ctx);
+    }
+
+    private List<OFMessage> messages() {
+        List<OFMessage> msglist = new ArrayList<OFMessage>();
+        OFFlowMod fm = (OFFlowMod) messagePool.acquire(OFType.FLOW_MOD);
+        fm.setMatch(new OFMatch());
+        fm.setXid(1);
+        msglist.add(fm);
+        OFEchoRequest echo = new OFEchoRequest();
+        echo.setXid(2);
+        msglist.add(echo);
+        return msglist;
+    }
+
+    private static ChannelBuffer expectedBytes(List<OFMessage> msglist)
+            throws Exception {
+        return (ChannelBuffer) new OFMessageEncoder().encode(null, null, msglist);
+    }
+
+    @Test
+    public void testPooledEncode() throws Exception {
+        OFBufferPool bufferPool = new OFBufferPool(1024, 4);
+        OFMessageEncoder encoder = new OFMessageEncoder(messagePool, bufferPool);
+        List<OFMessage> msglist = messages();
+        OFMessage fm = msglist.get(0);
+        ChannelBuffer expected = expectedBytes(messages());
+
+        ChannelFuture future = Channels.future(channel);
+        encoder.handleDownstream(ctx, new DownstreamMessageEvent(channel,
+                future, msglist, null));
+        verify(ctx);
+        ChannelBuffer buf =
+                (ChannelBuffer) ((MessageEvent) sent.getValue()).getMessage();
+        assertEquals(1024, buf.capacity());
+        assertEquals(expected, buf);
+
+        // The flow-mod went back to its pool, the echo request was not pooled
+        assertFalse(fm.isPooled());
+        assertEquals(1, messagePool.getFreeCount(OFType.FLOW_MOD));
+        assertSame(fm, messagePool.acquire(OFType.FLOW_MOD));
+
+        // The buffer is reused only once the write has completed
+        assertEquals(0, bufferPool.getFreeCount());
+        future.setSuccess();
+        assertEquals(1, bufferPool.getFreeCount());
+        assertSame(buf, bufferPool.acquire(1));
+        assertEquals(0, buf.readableBytes());
+        assertEquals(1, bufferPool.getAllocatedCount());
+    }
+
+    @Test
+    public void testLargeWriteNotPooled() throws Exception {
+        OFBufferPool bufferPool = new OFBufferPool(16, 4);
+        OFMessageEncoder encoder = new OFMessageEncoder(messagePool, bufferPool);
+        List<OFMessage> msglist = messages();
+        ChannelBuffer expected = expectedBytes(messages());
+
+        ChannelFuture future = Channels.future(channel);
+        encoder.handleDownstream(ctx, new DownstreamMessageEvent(channel,
+                future, msglist, null));
+        ChannelBuffer buf =
+                (ChannelBuffer) ((MessageEvent) sent.getValue()).getMessage();
+        assertEquals(expected.readableBytes(), buf.capacity());
+        assertEquals(expected, buf);
+        assertEquals(1, messagePool.getFreeCount(OFType.FLOW_MOD));
+        future.setSuccess();
+        assertEquals(0, bufferPool.getFreeCount());
+        assertEquals(0, bufferPool.getAllocatedCount());
+    }
+}
@@ -0,0 +1,116 @@
+package net.floodlightcontroller.core.util;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFFlowMod;
+import org.openflow.protocol.OFMessage;
+import org.openflow.protocol.OFType;
+
+public class OFMessageBatcherTest {
+    private IOFSwitch sw;
+    private Capture<List<OFMessage>> writes;
+
+    @Before
+    public void setUp() throws Exception {
+        sw = createNiceMock(IOFSwitch.class);
+        writes = new Capture<List<OFMessage>>(CaptureType.ALL);
+        expect(sw.getId()).andReturn(1L).anyTimes();
+        expect(sw.getNextTransactionId()).andReturn(42).anyTimes();
+        sw.write(capture(writes), (FloodlightContext) isNull());
+        expectLastCall().anyTimes();
+        replay(sw);
+    }
+
+    private static List<OFMessage> flowMods(int count) {
+        List<OFMessage> list = new ArrayList<OFMessage>();
+        for (int i = 0; i < count; i++) {
+            OFFlowMod fm = new OFFlowMod();
+            fm.setXid(i);
+            list.add(fm);
+        }
+        return list;
+    }
+
+    @Test
+    public void testSizeAndExplicitFlush() throws Exception {
+        OFMessageBatcher batcher = new OFMessageBatcher(4, 0, null);
+        List<OFMessage> messages = flowMods(10);
+        batcher.write(sw, messages);
+        // Two full batches sent, two messages still queued
+        assertEquals(2, writes.getValues().size());
+        assertEquals(messages.subList(0, 4), writes.getValues().get(0));
+        assertEquals(messages.subList(4, 8), writes.getValues().get(1));
+        assertEquals(2, batcher.getQueuedCount(1L));
+
+        batcher.flush(sw);
+        assertEquals(3, writes.getValues().size());
+        assertEquals(messages.subList(8, 10), writes.getValues().get(2));
+        assertEquals(0, batcher.getQueuedCount(1L));
+        // Nothing left to send
+        batcher.flush(sw);
+        assertEquals(3, writes.getValues().size());
+
+        Map<String, Long> histogram = batcher.getBatchSizeHistogram();
+        assertEquals(new ArrayList<String>(histogram.keySet()),
+                     Arrays.asList("1", "2-3", "4+"));
+        assertEquals(0L, (long) histogram.get("1"));
+        assertEquals(1L, (long) histogram.get("2-3"));
+        assertEquals(2L, (long) histogram.get("4+"));
+    }
+
+    @Test
+    public void testBarrier() throws Exception {
+        OFMessageBatcher batcher = new OFMessageBatcher(100, 0, null);
+        batcher.write(sw, flowMods(3));
+        assertFalse(writes.hasCaptured());
+        assertEquals(42, batcher.barrier(sw));
+        assertEquals(1, writes.getValues().size());
+        List<OFMessage> batch = writes.getValues().get(0);
+        assertEquals(4, batch.size());
+        assertEquals(OFType.BARRIER_REQUEST, batch.get(3).getType());
+        assertEquals(42, batch.get(3).getXid());
+    }
+
+    @Test
+    public void testDelayedFlush() throws Exception {
+        ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor();
+        try {
+            OFMessageBatcher batcher = new OFMessageBatcher(100, 20, ses);
+            batcher.write(sw, flowMods(1).get(0));
+            assertFalse(writes.hasCaptured());
+            for (int i = 0; i < 200 && !writes.hasCaptured(); i++) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, writes.getValues().size());
+            assertEquals(1, writes.getValues().get(0).size());
+        } finally {
+            ses.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRemoveSwitch() throws Exception {
+        OFMessageBatcher batcher = new OFMessageBatcher(100, 0, null);
+        batcher.write(sw, Collections.singletonList(flowMods(1).get(0)));
+        batcher.removeSwitch(1L);
+        assertEquals(0, batcher.getQueuedCount(1L));
+        batcher.flushAll();
+        assertFalse(writes.hasCaptured());
+    }
+}
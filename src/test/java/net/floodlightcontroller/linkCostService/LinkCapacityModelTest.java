@@ -0,0 +1,37 @@
+package net.floodlightcontroller.linkCostService;
+
+import static org.junit.Assert.*;
+
+import net.floodlightcontroller.routing.Link;
+
+import org.junit.Test;
+
+public class LinkCapacityModelTest {
+
+	@Test
+	public void testDefaultModel() {
+		LinkCapacityModel model = LinkCapacityModel.parse(null, null, null, null);
+		Link fiber = new Link(1L, (short) 1, 8L, (short) 2);
+		Link cable = new Link(1L, (short) 2, 5L, (short) 1);
+		assertEquals(LinkBandwidthType.FiberLink, model.getType(fiber));
+		assertEquals(8.0, model.getCapacity(fiber), 0.0);
+		assertEquals(LinkBandwidthType.CableLink, model.getType(cable));
+		assertEquals(5.0, model.getCapacity(cable), 0.0);
+	}
+
+	@Test
+	public void testLinkOverridesType() {
+		LinkCapacityModel model = LinkCapacityModel.parse("1,2", "10", "2", "2-3=4.5");
+		assertEquals(10.0, model.getCapacity(new Link(2L, (short) 1, 1L, (short) 1)), 0.0);
+		// 按交换机对指定的容量不区分方向
+		assertEquals(4.5, model.getCapacity(new Link(3L, (short) 1, 2L, (short) 2)), 0.0);
+		assertEquals(4.5, model.getCapacity(new Link(2L, (short) 2, 3L, (short) 1)), 0.0);
+		assertEquals(2.0, model.getCapacity(new Link(1L, (short) 3, 3L, (short) 3)), 0.0);
+		assertEquals(1, model.getLinkCapacities().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadEntryRejected() {
+		LinkCapacityModel.parse(null, null, null, "1=3");
+	}
+}
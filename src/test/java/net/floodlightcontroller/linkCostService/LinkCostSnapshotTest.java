@@ -0,0 +1,67 @@
+package net.floodlightcontroller.linkCostService;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.routing.Link;
+
+import org.junit.Test;
+
+public class LinkCostSnapshotTest {
+	private final Link l12 = new Link(1L, (short) 1, 2L, (short) 1);
+	private final Link l21 = new Link(2L, (short) 1, 1L, (short) 1);
+	private final Link l23 = new Link(2L, (short) 2, 3L, (short) 1);
+	private final Link l13 = new Link(1L, (short) 2, 3L, (short) 2);
+
+	@Test
+	public void testCsrAdjacency() {
+		Map<Link, Double> cost = new HashMap<Link, Double>();
+		cost.put(l12, 1.5);
+		Map<Link, Double> capacity = new HashMap<Link, Double>();
+		capacity.put(l12, 8.0);
+		capacity.put(l23, 5.0);
+		// 端点不在交换机集合中的链路被忽略
+		Link stray = new Link(3L, (short) 3, 9L, (short) 1);
+		List<Long> switches = Arrays.asList(3L, 1L, 2L);
+		LinkCostSnapshot s = LinkCostSnapshot.next(LinkCostSnapshot.EMPTY, switches,
+				Arrays.asList(l23, l13, stray, l21, l12), cost, capacity, 6.5);
+
+		assertEquals(3, s.size());
+		assertEquals(4, s.getEdgeCount());
+		assertEquals(1L, s.getDpid(0));
+		assertEquals(2, s.indexOf(3L));
+		assertEquals(-1, s.indexOf(9L));
+		// 下标0(dpid 1)的出边按目的下标排列
+		assertEquals(2, s.edgeEnd(0) - s.edgeBegin(0));
+		assertEquals(l12, s.getLink(s.edgeBegin(0)));
+		assertEquals(l13, s.getLink(s.edgeBegin(0) + 1));
+		int e = s.findEdge(1, 2);
+		assertEquals(l23, s.getLink(e));
+		assertEquals(5.0, s.getCapacity(e), 0.0);
+		assertTrue(Double.isNaN(s.getCost(e)));
+		assertEquals(-1, s.findEdge(2, 0));
+		assertEquals(1.5, s.getCost(s.findEdge(0, 1)), 0.0);
+		assertEquals(1, s.getLinkCost().size());
+		assertEquals(6.5, s.getMaxLinkCompacity(), 0.0);
+	}
+
+	@Test
+	public void testTopologyVersion() {
+		List<Long> switches = Arrays.asList(1L, 2L, 3L);
+		Map<Link, Double> cost = new HashMap<Link, Double>();
+		LinkCostSnapshot s1 = LinkCostSnapshot.next(LinkCostSnapshot.EMPTY, switches,
+				Arrays.asList(l12, l23), cost, cost, 0);
+		cost.put(l12, 3.0);
+		// 只有负载变化时拓扑版本不变
+		LinkCostSnapshot s2 = LinkCostSnapshot.next(s1, switches, Arrays.asList(l23, l12), cost, cost, 0);
+		assertEquals(s1.getVersion() + 1, s2.getVersion());
+		assertEquals(s1.getTopologyVersion(), s2.getTopologyVersion());
+		LinkCostSnapshot s3 = LinkCostSnapshot.next(s2, switches, Arrays.asList(l12), cost, cost, 0);
+		assertEquals(s3.getVersion(), s3.getTopologyVersion());
+		assertTrue(s3.getTopologyVersion() != s2.getTopologyVersion());
+	}
+}
@@ -0,0 +1,73 @@
+package net.floodlightcontroller.linkCostService;
+
+import static org.junit.Assert.*;
+
+import net.floodlightcontroller.core.ImmutablePort;
+
+import org.junit.Test;
+import org.openflow.protocol.OFPhysicalPort.OFPortConfig;
+import org.openflow.protocol.OFPhysicalPort.OFPortFeatures;
+
+public class PortCapacityTableTest {
+
+	@Test
+	public void testSpeedFromFeatureBits() {
+		ImmutablePort p = new ImmutablePort.Builder()
+				.addCurrentFeature(OFPortFeatures.OFPPF_100MB_FD)
+				.addCurrentFeature(OFPortFeatures.OFPPF_1GB_FD)
+				.addCurrentFeature(OFPortFeatures.OFPPF_COPPER)
+				.build();
+		assertEquals(1000, PortCapacityTable.speedOf(p));
+		// 没有当前速率时取通告速率
+		p = new ImmutablePort.Builder()
+				.addAdvertisedFeature(OFPortFeatures.OFPPF_10GB_FD)
+				.build();
+		assertEquals(10000, PortCapacityTable.speedOf(p));
+		// 未启用的端口容量为0
+		p = new ImmutablePort.Builder()
+				.addCurrentFeature(OFPortFeatures.OFPPF_1GB_FD)
+				.addConfig(OFPortConfig.OFPPC_PORT_DOWN)
+				.build();
+		assertEquals(0, PortCapacityTable.speedOf(p));
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		PortCapacityTable table = new PortCapacityTable();
+		table.update(1L, new ImmutablePort.Builder().setPortNumber((short) 3)
+				.addCurrentFeature(OFPortFeatures.OFPPF_100MB_FD).build());
+		table.update(1L, new ImmutablePort.Builder().setPortNumber((short) 0xfff0)
+				.addCurrentFeature(OFPortFeatures.OFPPF_10MB_HD).build());
+		assertEquals(100, table.getCapacity(1L, (short) 3));
+		assertEquals(10, table.getCapacity(1L, (short) 0xfff0));
+		// LOCAL端口也有速率
+		table.update(1L, new ImmutablePort.Builder().setPortNumber((short) 0xfffe)
+				.addCurrentFeature(OFPortFeatures.OFPPF_10GB_FD).build());
+		assertEquals(10000, table.getCapacity(1L, (short) 0xfffe));
+		assertEquals(0, table.getCapacity(1L, (short) 4));
+		assertEquals(0, table.getCapacity(2L, (short) 3));
+		// 端口速率变化
+		table.update(1L, new ImmutablePort.Builder().setPortNumber((short) 3)
+				.addCurrentFeature(OFPortFeatures.OFPPF_1GB_FD).build());
+		assertEquals(1000, table.getCapacity(1L, (short) 3));
+		table.remove(1L, (short) 3);
+		assertEquals(0, table.getCapacity(1L, (short) 3));
+		table.removeSwitch(1L);
+		assertEquals(0, table.getCapacity(1L, (short) 0xfff0));
+	}
+
+	@Test
+	public void testFullPortLeavesNoHeadroom() {
+		PortCapacityTable table = new PortCapacityTable();
+		table.update(1L, new ImmutablePort.Builder().setPortNumber((short) 1)
+				.addCurrentFeature(OFPortFeatures.OFPPF_1GB_FD).build());
+		// 1Gb/s跑满1s，速率与容量单位一致，剩余带宽约为0
+		PortRateHistory history = new PortRateHistory(4);
+		long second = 1000000000L;
+		history.record(1L, (short) 1, 0, 0, 0);
+		history.record(1L, (short) 1, 1000000000L / 8, 0, second);
+		int capacity = table.getCapacity(1L, (short) 1);
+		assertEquals(1000, capacity);
+		assertEquals(0.0, capacity - history.getTxRate(1L, (short) 1), 1e-6);
+	}
+}
@@ -0,0 +1,79 @@
+package net.floodlightcontroller.linkCostService;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PortRateHistoryTest {
+	private static final long SEC = 1000000000L;
+	private static final double MBIT = 1000000.0 / 8;
+
+	@Test
+	public void testRateUsesMeasuredInterval() {
+		PortRateHistory history = new PortRateHistory(4);
+		assertFalse(history.record(1L, (short) 1, 0, 0, 0));
+		assertTrue(Double.isNaN(history.getTxRate(1L, (short) 1)));
+		// 2s内发送4Mbit、接收2Mbit
+		assertTrue(history.record(1L, (short) 1, (long) (4 * MBIT), (long) (2 * MBIT), 2 * SEC));
+		assertEquals(2.0, history.getTxRate(1L, (short) 1), 1e-9);
+		assertEquals(1.0, history.getRxRate(1L, (short) 1), 1e-9);
+		// 计数器重置时不产生样本
+		assertFalse(history.record(1L, (short) 1, 0, 0, 3 * SEC));
+		assertEquals(1, history.getHistory(1L, (short) 1, true).length);
+	}
+
+	@Test
+	public void testHistoryIsBoundedAndOrdered() {
+		PortRateHistory history = new PortRateHistory(3);
+		long bytes = 0;
+		for (int i = 0; i <= 5; i++) {
+			// 第i秒的发送速率为i Mbps
+			bytes += (long) (i * MBIT);
+			history.record(7L, (short) 2, bytes, 0, i * SEC);
+		}
+		assertArrayEquals(new double[] { 3, 4, 5 }, history.getHistory(7L, (short) 2, true), 1e-9);
+		assertEquals(4.0, history.getPercentile(7L, (short) 2, true, 50), 1e-9);
+		assertEquals(5.0, history.getPercentile(7L, (short) 2, true, 99), 1e-9);
+		assertEquals(3, history.getHistoryTime(7L, (short) 2).length);
+	}
+
+	@Test
+	public void testRemovedSwitchSlotsAreReused() {
+		PortRateHistory history = new PortRateHistory(2);
+		for (short p = 1; p <= 20; p++) {
+			history.record(1L, p, 0, 0, 0);
+		}
+		history.record(2L, (short) 0xfffe, 0, 0, 0);
+		assertEquals(2, history.getPorts().size());
+		history.removeSwitch(1L);
+		assertEquals(1, history.getPorts().size());
+		assertEquals(0, history.getHistory(1L, (short) 1, true).length);
+		// 重新出现的交换机从头开始，不会沿用旧的计数
+		assertFalse(history.record(1L, (short) 1, 100, 100, SEC));
+		assertEquals((short) 0xfffe, history.getPorts().get(2L)[0]);
+	}
+
+	@Test
+	public void testSparsePortNumbers() {
+		PortRateHistory history = new PortRateHistory(2);
+		// 普通端口与保留端口混在一起，端口数超过初始表长后扩容
+		short[] ports = new short[20];
+		for (int i = 0; i < 19; i++) {
+			ports[i] = (short) (i * 37 + 1);
+		}
+		ports[19] = (short) 0xfffe;
+		for (int i = 0; i < ports.length; i++) {
+			history.record(1L, ports[i], 0, 0, 0);
+			history.record(1L, ports[i], (long) (i * MBIT), 0, SEC);
+		}
+		for (int i = 0; i < ports.length; i++) {
+			assertEquals(i, history.getTxRate(1L, ports[i]), 1e-9);
+		}
+		assertTrue(Double.isNaN(history.getTxRate(1L, (short) 2)));
+		short[] recorded = history.getPorts().get(1L);
+		assertEquals(ports.length, recorded.length);
+		assertEquals((short) 0xfffe, recorded[recorded.length - 1]);
+		history.removeSwitch(1L);
+		assertTrue(history.getPorts().isEmpty());
+	}
+}
@@ -0,0 +1,116 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+import org.junit.Test;
+
+public class AttachmentIndexTest {
+
+    @Test
+    public void testPutGetRemove() {
+        AttachmentIndex index = new AttachmentIndex(1024);
+        index.put(0x0a000001, 1L, (short) 3, 100);
+        index.put(0x0a000002, 2L, (short) 0xfffe, 100);
+        assertEquals(new SwitchPort(1L, 3), index.get(0x0a000001));
+        // 端口号按无符号处理
+        assertEquals(new SwitchPort(2L, 0xfffe), index.get(0x0a000002));
+        // 主机移动后覆盖原接入点
+        index.put(0x0a000001, 5L, (short) 7, 200);
+        assertEquals(new SwitchPort(5L, 7), index.get(0x0a000001));
+        assertEquals(2, index.size());
+        index.remove(0x0a000001);
+        assertNull(index.get(0x0a000001));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void testMatchesReferenceMap() {
+        AttachmentIndex index = new AttachmentIndex(1 << 20);
+        Map<Integer, SwitchPort> reference = new HashMap<>();
+        Random random = new Random(7);
+        // 地址集中在一个小范围内，频繁插入删除以覆盖删除时条目前移的各种情况
+        for (int i = 0; i < 50000; i++) {
+            int ip = 0x0a000000 + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                index.remove(ip);
+                reference.remove(ip);
+            } else {
+                long dpid = random.nextInt(64);
+                short port = (short) random.nextInt(48);
+                index.put(ip, dpid, port, i);
+                reference.put(ip, new SwitchPort(dpid, port));
+            }
+        }
+        assertEquals(reference, index.toMap());
+        for (int ip = 0x0a000000; ip < 0x0a000000 + 2000; ip++) {
+            assertEquals(reference.get(ip), index.get(ip));
+        }
+        AttachmentIndex.Entries entries = index.entries();
+        assertEquals(reference.size(), entries.size);
+    }
+
+    @Test
+    public void testEvictOlderThan() {
+        AttachmentIndex index = new AttachmentIndex(1024);
+        for (int i = 0; i < 100; i++) {
+            index.put(i, 1L, (short) 1, i < 50 ? 1000 : 5000);
+        }
+        // 刷新过的主机不会被淘汰，未登记的主机不会因为刷新而加入
+        index.touch(0, 6000);
+        index.touch(1000, 6000);
+        assertEquals(49, index.evictOlderThan(2000));
+        assertEquals(51, index.size());
+        assertNotNull(index.get(0));
+        assertNull(index.get(1));
+        assertNull(index.get(1000));
+        assertNotNull(index.get(50));
+    }
+
+    @Test
+    public void testBoundedEvictsLeastRecentlySeen() {
+        AttachmentIndex index = new AttachmentIndex(16);
+        for (int i = 0; i < 1000; i++) {
+            index.put(i, 1L, (short) 1, i);
+        }
+        // 每段最多一个条目，段满时替换掉段内最旧的主机
+        assertTrue(index.size() <= 16);
+        assertNotNull(index.get(999));
+    }
+
+    @Test
+    public void testConcurrentWritersAndReaders() throws Exception {
+        final AttachmentIndex index = new AttachmentIndex(1 << 16);
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            final int base = t * 10000;
+            writers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        index.put(base + i, base + i, (short) 1, i);
+                        if (i % 2 == 1) index.remove(base + i - 1);
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        // 写入的同时遍历不应抛出异常
+        for (int i = 0; i < 100; i++) {
+            index.entries();
+        }
+        for (Thread w : writers) {
+            w.join();
+        }
+        assertEquals(20000, index.size());
+        for (int t = 0; t < writers.length; t++) {
+            assertNull(index.get(t * 10000));
+            assertEquals(new SwitchPort(t * 10000 + 1, 1), index.get(t * 10000 + 1));
+        }
+    }
+}
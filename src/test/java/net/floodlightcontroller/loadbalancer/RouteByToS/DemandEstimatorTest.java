@@ -0,0 +1,150 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import net.floodlightcontroller.linkCostService.LinkCostSnapshot;
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleKey;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.routing.Link;
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFMatch;
+import org.openflow.protocol.action.OFAction;
+import org.openflow.protocol.action.OFActionOutput;
+import org.openflow.protocol.statistics.OFFlowStatisticsReply;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DemandEstimatorTest {
+    // 1 Mbps持续1s的字节数
+    private static final long MBIT = 1000000 / 8;
+    private static final int A = IPv4.toIPv4Address("10.0.0.1");
+    private static final int B = IPv4.toIPv4Address("10.0.0.2");
+    private static final int C = IPv4.toIPv4Address("10.0.0.3");
+
+    private LinkCostSnapshot topology;
+    private AttachmentIndex.Entries hosts;
+    private List<Byte> levels = Arrays.asList((byte) 0, (byte) 16);
+
+    @Before
+    public void setUp() {
+        // 线形拓扑1-2-3，端口1连左侧交换机，端口2连右侧交换机，端口10连主机
+        List<Link> links = Arrays.asList(
+                new Link(1L, (short) 2, 2L, (short) 1), new Link(2L, (short) 1, 1L, (short) 2),
+                new Link(2L, (short) 2, 3L, (short) 1), new Link(3L, (short) 1, 2L, (short) 2));
+        Map<Link, Double> none = Collections.emptyMap();
+        topology = LinkCostSnapshot.next(LinkCostSnapshot.EMPTY, Arrays.asList(1L, 2L, 3L),
+                links, none, none, 0);
+        hosts = new AttachmentIndex.Entries(3, new int[] { A, B, C },
+                new long[] { 1L, 2L, 3L }, new short[] { 10, 10, 10 });
+    }
+
+    private static OFFlowStatisticsReply rule(int dstIp, int maskLen, byte ToS, short outPort,
+                                              long bytes, int seconds) {
+        OFMatch match = new OFMatch();
+        int wildcards = OFMatch.OFPFW_ALL & ~OFMatch.OFPFW_DL_TYPE & ~OFMatch.OFPFW_NW_DST_MASK
+                | ((32 - maskLen) << OFMatch.OFPFW_NW_DST_SHIFT);
+        match.setDataLayerType(Ethernet.TYPE_IPv4);
+        match.setNetworkDestination(dstIp);
+        if (ToS != FlowRuleKey.ANY_TOS) {
+            wildcards &= ~OFMatch.OFPFW_NW_TOS;
+            match.setNetworkTypeOfService(ToS);
+        }
+        match.setWildcards(wildcards);
+        OFFlowStatisticsReply reply = new OFFlowStatisticsReply();
+        reply.setMatch(match);
+        reply.setByteCount(bytes);
+        reply.setDurationSeconds(seconds);
+        reply.setActions(Arrays.asList((OFAction) new OFActionOutput(outPort, (short) 0xffff)));
+        return reply;
+    }
+
+    private static Map<Long, List<OFFlowStatisticsReply>> stats(Object... entries) {
+        Map<Long, List<OFFlowStatisticsReply>> m = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            Long dpid = (Long) entries[i];
+            if (!m.containsKey(dpid)) m.put(dpid, new ArrayList<OFFlowStatisticsReply>());
+            m.get(dpid).add((OFFlowStatisticsReply) entries[i + 1]);
+        }
+        return m;
+    }
+
+    @Test
+    public void testIngressIsTransitMinusUpstream() {
+        DemandEstimator estimator = new DemandEstimator(1.0);
+        // A到C 1Mbps，B到C 2Mbps，都是ToS 0
+        DemandMatrix m = estimator.update(stats(
+                1L, rule(C, 32, (byte) 0, (short) 2, MBIT, 1),
+                2L, rule(C, 32, (byte) 0, (short) 2, 3 * MBIT, 1),
+                3L, rule(C, 32, (byte) 0, (short) 10, 3 * MBIT, 1)),
+                topology, hosts, levels, 0);
+        assertEquals(1.0, m.getDemand(1L, 3L, (byte) 0), 1e-9);
+        assertEquals(2.0, m.getDemand(2L, 3L, (byte) 0), 1e-9);
+        assertEquals(0.0, m.getDemand(3L, 3L, (byte) 0), 1e-9);
+        assertEquals(0.0, m.getDemand(1L, 3L, (byte) 16), 1e-9);
+        assertEquals(3.0, m.getTotalDemand(1L, 3L) + m.getTotalDemand(2L, 3L), 1e-9);
+    }
+
+    @Test
+    public void testRateFromCounterDelta() {
+        DemandEstimator estimator = new DemandEstimator(0.5);
+        estimator.update(stats(1L, rule(C, 32, (byte) 16, (short) 2, MBIT, 1)),
+                topology, hosts, levels, 0);
+        // 后9s共传输了27Mbit，速率为3Mbps，与上一轮的1Mbps平滑
+        DemandMatrix m = estimator.update(stats(1L, rule(C, 32, (byte) 16, (short) 2, 28 * MBIT, 10)),
+                topology, hosts, levels, 0);
+        assertEquals(2.0, m.getDemand(1L, 3L, (byte) 16), 1e-9);
+        // 规则重新下发后计数变小，按安装以来的平均速率计算
+        m = estimator.update(stats(1L, rule(C, 32, (byte) 16, (short) 2, 4 * MBIT, 1)),
+                topology, hosts, levels, 0);
+        assertEquals(3.0, m.getDemand(1L, 3L, (byte) 16), 1e-9);
+        // 本轮没有应答的交换机保留上一轮的值
+        m = estimator.update(stats(), topology, hosts, levels, 0);
+        assertEquals(3.0, m.getDemand(1L, 3L, (byte) 16), 1e-9);
+    }
+
+    @Test
+    public void testAnyToSRuleKeepsTotal() {
+        DemandEstimator estimator = new DemandEstimator(1.0);
+        // 交换机1按ToS匹配，交换机2上到C的规则不匹配ToS
+        DemandMatrix m = estimator.update(stats(
+                1L, rule(C, 32, (byte) 0, (short) 2, MBIT, 1),
+                1L, rule(C, 32, (byte) 16, (short) 2, 2 * MBIT, 1),
+                2L, rule(C, 32, FlowRuleKey.ANY_TOS, (short) 2, 5 * MBIT, 1)),
+                topology, hosts, levels, 0);
+        assertEquals(1.0, m.getDemand(1L, 3L, (byte) 0), 1e-9);
+        assertEquals(2.0, m.getDemand(1L, 3L, (byte) 16), 1e-9);
+        // 交换机2进入的2Mbps无法区分ToS
+        assertEquals(2.0, m.getDemand(2L, 3L, FlowRuleKey.ANY_TOS), 1e-9);
+        assertEquals(2.0, m.getTotalDemand(2L, 3L), 1e-9);
+    }
+
+    @Test
+    public void testPrefixSplitByEgress() {
+        DemandEstimator estimator = new DemandEstimator(1.0);
+        // 交换机1上10.0.0.2/31覆盖B和C，两者出口不同，按主机数平分
+        DemandMatrix m = estimator.update(stats(
+                1L, rule(B, 31, (byte) 0, (short) 2, 4 * MBIT, 1)),
+                topology, hosts, levels, 0);
+        assertEquals(2.0, m.getDemand(1L, 2L, (byte) 0), 1e-9);
+        assertEquals(2.0, m.getDemand(1L, 3L, (byte) 0), 1e-9);
+        assertEquals(0.0, m.getDemand(1L, 1L, (byte) 0), 1e-9);
+    }
+
+    @Test
+    public void testToMapListsNonZeroDemand() {
+        assertTrue(DemandMatrix.EMPTY.toMap().isEmpty());
+        DemandMatrix m = new DemandEstimator(1.0).update(stats(
+                1L, rule(C, 32, FlowRuleKey.ANY_TOS, (short) 2, MBIT, 1)),
+                topology, hosts, levels, 0);
+        Map<String, Map<String, Map<String, Double>>> map = m.toMap();
+        assertEquals(1, map.size());
+        assertEquals(1.0, map.get("00:00:00:00:00:00:00:01").get("00:00:00:00:00:00:00:03").get("*"), 1e-9);
+    }
+}
@@ -0,0 +1,63 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleKey;
+import net.floodlightcontroller.packet.IPv4;
+
+import org.junit.Test;
+
+public class FlowRuleCompilerTest {
+    private static final List<Byte> LEVELS = Arrays.asList((byte) 0, (byte) 8);
+    private final FlowRuleCompiler compiler = new FlowRuleCompiler();
+
+    private static Map<FlowRuleKey, Short> compile(FlowRuleCompiler compiler, Map<FlowRuleKey, Short> rules) {
+        Map<Long, Map<FlowRuleKey, Short>> table = new HashMap<Long, Map<FlowRuleKey, Short>>();
+        table.put(1L, rules);
+        return compiler.compile(table, LEVELS).get(1L);
+    }
+
+    @Test
+    public void testContiguousHostsCollapseToPrefix() {
+        Map<FlowRuleKey, Short> rules = new HashMap<FlowRuleKey, Short>();
+        int base = IPv4.toIPv4Address("10.0.0.0");
+        for (int h = 0; h < 8; h++) {
+            // ToS 8的10.0.0.4-7走另一个端口
+            rules.put(new FlowRuleKey(base + h, (byte) 0), (short) 1);
+            rules.put(new FlowRuleKey(base + h, (byte) 8), (short) (h < 4 ? 1 : 2));
+        }
+        Map<FlowRuleKey, Short> compiled = compile(compiler, rules);
+        assertEquals(3, compiled.size());
+        assertEquals(Short.valueOf((short) 1), compiled.get(new FlowRuleKey(base, 30, FlowRuleKey.ANY_TOS)));
+        assertEquals(Short.valueOf((short) 1), compiled.get(new FlowRuleKey(base + 4, 30, (byte) 0)));
+        assertEquals(Short.valueOf((short) 2), compiled.get(new FlowRuleKey(base + 4, 30, (byte) 8)));
+    }
+
+    @Test
+    public void testOnlyPresentSiblingsAreMerged() {
+        Map<FlowRuleKey, Short> rules = new HashMap<FlowRuleKey, Short>();
+        int base = IPv4.toIPv4Address("10.0.0.0");
+        // .1和.2不是兄弟前缀，.2和.3可以合并为/31
+        for (int h = 1; h <= 3; h++) {
+            rules.put(new FlowRuleKey(base + h, (byte) 0), (short) 1);
+        }
+        Map<FlowRuleKey, Short> compiled = compile(compiler, rules);
+        assertEquals(2, compiled.size());
+        assertTrue(compiled.containsKey(new FlowRuleKey(base + 1, 32, (byte) 0)));
+        assertTrue(compiled.containsKey(new FlowRuleKey(base + 2, 31, (byte) 0)));
+    }
+
+    @Test
+    public void testPrefixKeyIsMasked() {
+        int ip = IPv4.toIPv4Address("10.0.1.77");
+        FlowRuleKey key = new FlowRuleKey(ip, 24, (byte) 8);
+        assertEquals(IPv4.toIPv4Address("10.0.1.0"), key.getDstIp());
+        assertEquals(new FlowRuleKey(IPv4.toIPv4Address("10.0.1.0"), 24, (byte) 8), key);
+        assertFalse(key.equals(new FlowRuleKey(ip, (byte) 8)));
+    }
+}
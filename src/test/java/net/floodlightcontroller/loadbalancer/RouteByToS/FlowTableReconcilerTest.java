@@ -0,0 +1,145 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleChange;
+import net.floodlightcontroller.loadbalancer.RouteByToS.FlowTableReconciler.FlowRuleKey;
+import net.floodlightcontroller.packet.Ethernet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openflow.protocol.OFFlowMod;
+import org.openflow.protocol.OFMatch;
+
+public class FlowTableReconcilerTest {
+    private FlowTableReconciler reconciler;
+    private FlowRuleKey k1, k2, k3;
+
+    @Before
+    public void setUp() {
+        reconciler = new FlowTableReconciler();
+        k1 = new FlowRuleKey(0x0a000001, (byte) 0);
+        k2 = new FlowRuleKey(0x0a000002, (byte) 0);
+        k3 = new FlowRuleKey(0x0a000002, (byte) 8);
+    }
+
+    private static Map<Long, Map<FlowRuleKey, Short>> table(long dpid, Object... rules) {
+        Map<FlowRuleKey, Short> swRules = new HashMap<FlowRuleKey, Short>();
+        for (int i = 0; i < rules.length; i += 2) {
+            swRules.put((FlowRuleKey) rules[i], (Short) rules[i + 1]);
+        }
+        Map<Long, Map<FlowRuleKey, Short>> t = new HashMap<Long, Map<FlowRuleKey, Short>>();
+        t.put(dpid, swRules);
+        return t;
+    }
+
+    private static FlowRuleChange find(List<FlowRuleChange> changes, FlowRuleKey key) {
+        for (FlowRuleChange c : changes) {
+            if (c.getKey().equals(key)) return c;
+        }
+        return null;
+    }
+
+    @Test
+    public void testOnlyChangedRulesAreSent() {
+        Map<Long, List<FlowRuleChange>> changes =
+                reconciler.reconcile(table(1L, k1, (short) 1, k2, (short) 2));
+        assertEquals(2, changes.get(1L).size());
+        assertEquals(OFFlowMod.OFPFC_ADD, find(changes.get(1L), k1).getCommand());
+
+        // 相同的期望流表不再产生任何消息
+        changes = reconciler.reconcile(table(1L, k1, (short) 1, k2, (short) 2));
+        assertTrue(changes.isEmpty());
+        assertEquals(2, reconciler.getInstalledCount());
+
+        // k1换端口、k2删除、k3新增
+        changes = reconciler.reconcile(table(1L, k1, (short) 3, k3, (short) 2));
+        List<FlowRuleChange> sw1 = changes.get(1L);
+        assertEquals(3, sw1.size());
+        assertEquals(OFFlowMod.OFPFC_MODIFY_STRICT, find(sw1, k1).getCommand());
+        assertEquals(3, find(sw1, k1).getOutPort());
+        assertEquals(OFFlowMod.OFPFC_DELETE_STRICT, find(sw1, k2).getCommand());
+        assertEquals(OFFlowMod.OFPFC_ADD, find(sw1, k3).getCommand());
+    }
+
+    @Test
+    public void testForgottenSwitchIsReinstalled() {
+        reconciler.reconcile(table(1L, k1, (short) 1));
+        reconciler.forgetSwitch(1L);
+        assertEquals(0, reconciler.getInstalledCount());
+        Map<Long, List<FlowRuleChange>> changes = reconciler.reconcile(table(1L, k1, (short) 1));
+        assertEquals(OFFlowMod.OFPFC_ADD, changes.get(1L).get(0).getCommand());
+    }
+
+    @Test
+    public void testVanishedSwitchRulesAreDeleted() {
+        reconciler.reconcile(table(1L, k1, (short) 1));
+        Map<Long, List<FlowRuleChange>> changes = reconciler.reconcile(table(2L, k1, (short) 4));
+        assertEquals(OFFlowMod.OFPFC_DELETE_STRICT, changes.get(1L).get(0).getCommand());
+        assertEquals(OFFlowMod.OFPFC_ADD, changes.get(2L).get(0).getCommand());
+        assertEquals(1, reconciler.getInstalledCount());
+    }
+
+    @Test
+    public void testRemovedRuleIsReinstalled() {
+        reconciler.reconcile(table(1L, k1, (short) 1, k2, (short) 2));
+        // 交换机报告k1空闲超时
+        assertTrue(reconciler.markRemoved(1L, k1));
+        assertFalse(reconciler.markRemoved(1L, k1));
+        assertEquals(1, reconciler.getInstalledCount());
+        Map<Long, List<FlowRuleChange>> changes =
+                reconciler.reconcile(table(1L, k1, (short) 1, k2, (short) 2));
+        assertEquals(1, changes.get(1L).size());
+        assertEquals(OFFlowMod.OFPFC_ADD, find(changes.get(1L), k1).getCommand());
+    }
+
+    @Test
+    public void testAuditRepairsDivergedRules() {
+        reconciler.reconcile(table(1L, k1, (short) 1, k2, (short) 2));
+        long version = reconciler.getVersion();
+        // 交换机上k1缺失，k2出端口不同，另有记录之外的k3
+        Map<FlowRuleKey, Short> actual = new HashMap<FlowRuleKey, Short>();
+        actual.put(k2, (short) 5);
+        actual.put(k3, (short) 6);
+        assertEquals(3, reconciler.audit(1L, actual, version));
+        Map<Long, List<FlowRuleChange>> changes =
+                reconciler.reconcile(table(1L, k1, (short) 1, k2, (short) 2));
+        List<FlowRuleChange> sw1 = changes.get(1L);
+        assertEquals(3, sw1.size());
+        assertEquals(OFFlowMod.OFPFC_ADD, find(sw1, k1).getCommand());
+        assertEquals(OFFlowMod.OFPFC_MODIFY_STRICT, find(sw1, k2).getCommand());
+        assertEquals(OFFlowMod.OFPFC_DELETE_STRICT, find(sw1, k3).getCommand());
+        assertEquals((short) 6, find(sw1, k3).getOutPort());
+        // 一致时不做校正
+        assertEquals(0, reconciler.audit(1L, table(1L, k1, (short) 1, k2, (short) 2).get(1L),
+                reconciler.getVersion()));
+    }
+
+    @Test
+    public void testStaleAuditIsIgnored() {
+        reconciler.reconcile(table(1L, k1, (short) 1));
+        long version = reconciler.getVersion();
+        // 发出统计请求后交换机1又有变更，应答已不反映当前状态
+        reconciler.reconcile(table(1L, k1, (short) 1, k2, (short) 2));
+        assertEquals(0, reconciler.audit(1L, table(1L, k1, (short) 1).get(1L), version));
+        assertEquals(2, reconciler.getInstalledCount());
+    }
+
+    @Test
+    public void testKeyFromMatch() {
+        OFMatch match = new OFMatch();
+        match.setDataLayerType(Ethernet.TYPE_IPv4);
+        match.setNetworkDestination(0x0a000100);
+        match.setWildcards(OFMatch.OFPFW_ALL & ~OFMatch.OFPFW_DL_TYPE & ~OFMatch.OFPFW_NW_DST_MASK
+                | (8 << OFMatch.OFPFW_NW_DST_SHIFT));
+        assertEquals(new FlowRuleKey(0x0a000100, 24, FlowRuleKey.ANY_TOS), FlowRuleKey.fromMatch(match));
+        match.setNetworkTypeOfService((byte) 8);
+        match.setWildcards(match.getWildcards() & ~OFMatch.OFPFW_NW_TOS);
+        assertEquals(new FlowRuleKey(0x0a000100, 24, (byte) 8), FlowRuleKey.fromMatch(match));
+        assertNull(FlowRuleKey.fromMatch(new OFMatch()));
+    }
+}
@@ -0,0 +1,51 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import net.floodlightcontroller.routing.Link;
+
+import org.junit.Test;
+
+public class LinkAdmissionControlTest {
+    private final Link link = new Link(1L, (short) 1, 2L, (short) 1);
+
+    @Test
+    public void testOscillationInsideBandDoesNotFlap() {
+        LinkAdmissionControl admission = new LinkAdmissionControl(0.5, 0);
+        assertTrue(admission.admit(link, 3.1, 3.0, 0));
+        // 在门限上下0.5以内来回波动，状态保持不变
+        for (int i = 1; i <= 20; i++) {
+            double left = (i % 2 == 0) ? 3.3 : 2.7;
+            assertTrue(admission.admit(link, left, 3.0, i * 1000L));
+        }
+        assertEquals(0, admission.getFlapCount());
+        // 越过下沿才关闭，越过上沿才重新开放
+        assertFalse(admission.admit(link, 2.4, 3.0, 30000));
+        assertFalse(admission.admit(link, 3.4, 3.0, 31000));
+        assertTrue(admission.admit(link, 3.5, 3.0, 32000));
+        assertEquals(2, admission.getFlapCount());
+    }
+
+    @Test
+    public void testHoldTimeDelaysStateChange() {
+        LinkAdmissionControl admission = new LinkAdmissionControl(0.0, 10000);
+        assertTrue(admission.admit(link, 5.0, 3.0, 0));
+        assertTrue(admission.admit(link, 1.0, 3.0, 5000));
+        assertFalse(admission.admit(link, 1.0, 3.0, 10000));
+        assertFalse(admission.admit(link, 5.0, 3.0, 15000));
+        assertTrue(admission.admit(link, 5.0, 3.0, 20000));
+        assertEquals(2, admission.getFlapCount());
+    }
+
+    @Test
+    public void testVanishedLinkIsForgotten() {
+        LinkAdmissionControl admission = new LinkAdmissionControl(0.5, 10000);
+        assertFalse(admission.admit(link, 1.0, 3.0, 0));
+        admission.retain(Collections.<Link>emptySet());
+        assertEquals(0, admission.size());
+        // 重新出现的链路直接按门限判定，不受之前的保持时间限制
+        assertTrue(admission.admit(link, 5.0, 3.0, 1000));
+    }
+}
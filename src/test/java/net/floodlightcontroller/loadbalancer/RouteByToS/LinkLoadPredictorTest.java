@@ -0,0 +1,61 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.floodlightcontroller.routing.Link;
+
+import org.junit.Test;
+
+public class LinkLoadPredictorTest {
+    private final Link l1 = new Link(1L, (short) 1, 2L, (short) 1);
+    private final Link l2 = new Link(2L, (short) 2, 3L, (short) 1);
+
+    private static Map<Link, Double> load(Object... entries) {
+        Map<Link, Double> m = new HashMap<Link, Double>();
+        for (int i = 0; i < entries.length; i += 2) {
+            m.put((Link) entries[i], (Double) entries[i + 1]);
+        }
+        return m;
+    }
+
+    @Test
+    public void testSteadyLoadPredictsSameValue() {
+        LinkLoadPredictor predictor = new LinkLoadPredictor(0.5, 6, 5000);
+        for (int i = 0; i < 10; i++) {
+            predictor.update(load(l1, 2.0), i * 5000L);
+        }
+        assertEquals(2.0, predictor.predict(l1), 1e-9);
+    }
+
+    @Test
+    public void testRisingLoadIsPredictedAhead() {
+        LinkLoadPredictor predictor = new LinkLoadPredictor(0.5, 6, 5000);
+        // 每5s上升0.5
+        for (int i = 0; i < 6; i++) {
+            predictor.update(load(l1, 1.0 + 0.5 * i), i * 5000L);
+        }
+        assertTrue(predictor.predict(l1) > 3.5);
+        // 下降趋势的预测值不会小于0
+        for (int i = 6; i < 12; i++) {
+            predictor.update(load(l1, Math.max(0.0, 3.5 - 1.0 * (i - 5))), i * 5000L);
+        }
+        assertEquals(0.0, predictor.predict(l1), 1e-9);
+    }
+
+    @Test
+    public void testVanishedLinkIsEvicted() {
+        LinkLoadPredictor predictor = new LinkLoadPredictor(0.5, 4, 5000);
+        predictor.update(load(l1, 1.0, l2, 4.0), 0L);
+        predictor.update(load(l2, 4.0), 5000L);
+        assertEquals(1, predictor.size());
+        assertTrue(Double.isNaN(predictor.predict(l1)));
+
+        // 没有历史的链路沿用当前值
+        Map<Link, Double> predicted = predictor.predict(load(l1, 3.0, l2, 4.0));
+        assertEquals(3.0, predicted.get(l1), 1e-9);
+        assertEquals(4.0, predicted.get(l2), 1e-9);
+    }
+}
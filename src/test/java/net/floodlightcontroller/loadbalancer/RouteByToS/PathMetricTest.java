@@ -0,0 +1,84 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class PathMetricTest {
+    private static final int N = 6;
+
+    /**
+     * 0到3有两条两跳的路径(经1或经2)和一条三跳的路径(经4、5)
+     */
+    private static LinkGraph graph(double via1, double via2, double via45) {
+        boolean[] adj = new boolean[N * N];
+        double[] residual = new double[N * N];
+        open(adj, residual, 0, 1, via1);
+        open(adj, residual, 1, 3, via1);
+        open(adj, residual, 0, 2, via2);
+        open(adj, residual, 2, 3, via2);
+        open(adj, residual, 0, 4, via45);
+        open(adj, residual, 4, 5, via45);
+        open(adj, residual, 5, 3, via45);
+        return new LinkGraph(N, adj, residual);
+    }
+
+    private static void open(boolean[] adj, double[] residual, int u, int v, double r) {
+        adj[u * N + v] = true;
+        residual[u * N + v] = r;
+    }
+
+    private static IRouteTable compute(IPathMetric metric, LinkGraph g) {
+        return metric.compute(g, null, new BitSet());
+    }
+
+    @Test
+    public void testMinHopIgnoresResidualBandwidth() {
+        IRouteTable t = compute(new MinHopPathMetric(), graph(0.1, 5.0, 5.0));
+        assertTrue(t.isReachable(0, 3));
+        assertEquals(1, t.getNextHop(0, 3));
+        assertFalse(t.isReachable(3, 0));
+    }
+
+    @Test
+    public void testWidestShortestPrefersHeadroomAmongShortest() {
+        IRouteTable t = compute(new WidestShortestPathMetric(), graph(0.1, 5.0, 8.0));
+        assertEquals(2, t.getNextHop(0, 3));
+        // 三跳的路径虽然更宽，但不是最短路
+        t = compute(new WidestShortestPathMetric(), graph(0.1, 0.2, 8.0));
+        assertEquals(2, t.getNextHop(0, 3));
+        assertFalse(t.isReachable(3, 0));
+    }
+
+    @Test
+    public void testDelayWeightedDetoursAroundCongestion() {
+        DelayWeightedPathMetric metric = new DelayWeightedPathMetric();
+        IRouteTable t = compute(metric, graph(5.0, 4.0, 5.0));
+        assertEquals(1, t.getNextHop(0, 3));
+        // 两条两跳路径都接近饱和时绕行三跳路径
+        t = compute(metric, graph(0.2, 0.3, 5.0));
+        assertEquals(4, t.getNextHop(0, 3));
+        assertEquals(5, t.getNextHop(4, 3));
+    }
+
+    @Test
+    public void testUnchangedRoutesReturnPreviousTable() {
+        for (IPathMetric metric : new IPathMetric[] { new MinHopPathMetric(),
+                new WidestShortestPathMetric(), new DelayWeightedPathMetric() }) {
+            IRouteTable first = compute(metric, graph(0.5, 5.0, 5.0));
+            BitSet changed = new BitSet();
+            // 剩余带宽有变化但路径选择不变
+            IRouteTable second = metric.compute(graph(0.6, 5.0, 5.0), first, changed);
+            assertTrue(metric.getName(), changed.isEmpty());
+            assertSame(metric.getName(), first, second);
+        }
+        BitSet changed = new BitSet();
+        IPathMetric widest = new WidestShortestPathMetric();
+        IRouteTable first = compute(widest, graph(0.5, 5.0, 5.0));
+        widest.compute(graph(6.0, 5.0, 5.0), first, changed);
+        assertTrue(changed.get(3));
+        assertFalse(changed.get(2));
+    }
+}
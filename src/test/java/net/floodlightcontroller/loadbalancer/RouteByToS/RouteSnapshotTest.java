@@ -0,0 +1,110 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.floodlightcontroller.linkCostService.LinkCostSnapshot;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.routing.Route;
+import net.floodlightcontroller.routing.RouteId;
+
+import org.junit.Test;
+
+public class RouteSnapshotTest {
+    private static final Byte TOS = (byte) 0;
+
+    /**
+     * 交换机1到4有经2和经3两条两跳路径，dpid为下标+1，端口号为对端dpid
+     */
+    private static RouteSnapshot diamond(int maxPaths) {
+        int n = 4;
+        List<Long> switches = new ArrayList<Long>();
+        for (int i = 0; i < n; i++) {
+            switches.add((long) (i + 1));
+        }
+        List<Link> links = new ArrayList<Link>();
+        boolean[] adj = new boolean[n * n];
+        int[][] edges = { { 0, 1 }, { 0, 2 }, { 1, 3 }, { 2, 3 } };
+        for (int[] e : edges) {
+            adj[e[0] * n + e[1]] = true;
+            links.add(new Link(e[0] + 1, (short) (e[1] + 1), e[1] + 1, (short) (e[0] + 1)));
+        }
+        LinkCostSnapshot topo = LinkCostSnapshot.next(LinkCostSnapshot.EMPTY, switches, links,
+                new HashMap<Link, Double>(), new HashMap<Link, Double>(), 0);
+        ToSRouteTable table = new ToSRouteTable(n);
+        table.update(adj);
+        Map<Byte, IRouteTable> tables = new HashMap<Byte, IRouteTable>();
+        tables.put(TOS, table);
+        TreeMap<Byte, Map<RouteId, Route>> cache = new TreeMap<Byte, Map<RouteId, Route>>();
+        cache.put(TOS, new HashMap<RouteId, Route>());
+        return new RouteSnapshot(1, topo, tables, cache, maxPaths);
+    }
+
+    @Test
+    public void testEqualCostPathsAreExpanded() {
+        RouteSnapshot snapshot = diamond(4);
+        List<Route> routes = snapshot.getRoutes(1L, 4L, TOS);
+        assertEquals(2, routes.size());
+        Set<Long> middles = new HashSet<Long>();
+        for (Route r : routes) {
+            assertEquals(4, r.getPath().size());
+            assertEquals(1L, r.getPath().get(0).getNodeId());
+            assertEquals(4L, r.getPath().get(3).getNodeId());
+            middles.add(r.getPath().get(1).getNodeId());
+        }
+        assertEquals(2, middles.size());
+        // 同一快照多次查询结果相同
+        assertSame(routes, snapshot.getRoutes(1L, 4L, TOS));
+        assertTrue(snapshot.getRoutes(4L, 1L, TOS).isEmpty());
+    }
+
+    @Test
+    public void testMaxPathsLimitsExpansion() {
+        RouteSnapshot snapshot = diamond(1);
+        assertEquals(1, snapshot.getRoutes(1L, 4L, TOS).size());
+        assertEquals(1, snapshot.getRoutes(1L, 2L, TOS).size());
+    }
+
+    @Test
+    public void testResolveLevelFallsBackToReachableLevel() {
+        // 级别0全连通，级别8只有1->2
+        int n = 3;
+        List<Long> switches = new ArrayList<Long>();
+        for (int i = 0; i < n; i++) switches.add(0x1000000000L + i);
+        LinkCostSnapshot topo = LinkCostSnapshot.next(LinkCostSnapshot.EMPTY, switches,
+                new ArrayList<Link>(), new HashMap<Link, Double>(), new HashMap<Link, Double>(), 0);
+        boolean[] all = new boolean[n * n];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                all[i * n + j] = i != j;
+        boolean[] partial = new boolean[n * n];
+        partial[0 * n + 1] = true;
+        Map<Byte, IRouteTable> tables = new HashMap<Byte, IRouteTable>();
+        ToSRouteTable t0 = new ToSRouteTable(n);
+        t0.update(all);
+        ToSRouteTable t8 = new ToSRouteTable(n);
+        t8.update(partial);
+        tables.put((byte) 0, t0);
+        tables.put((byte) 8, t8);
+        TreeMap<Byte, Map<RouteId, Route>> cache = new TreeMap<Byte, Map<RouteId, Route>>();
+        cache.put((byte) 0, new HashMap<RouteId, Route>());
+        cache.put((byte) 8, new HashMap<RouteId, Route>());
+        RouteSnapshot snapshot = new RouteSnapshot(1, topo, tables, cache, 1);
+
+        long d0 = 0x1000000000L, d1 = d0 + 1, d2 = d0 + 2;
+        assertEquals(2, snapshot.indexOf(d2));
+        assertEquals(-1, snapshot.indexOf(42L));
+        assertEquals(8, snapshot.resolveLevel(d0, d1, (byte) 63));
+        assertEquals(8, snapshot.resolveLevel(d0, d1, (byte) 8));
+        assertEquals(0, snapshot.resolveLevel(d0, d1, (byte) 7));
+        assertEquals(0, snapshot.resolveLevel(d0, d2, (byte) 63));
+        assertEquals(-1, snapshot.resolveLevel(d0, 42L, (byte) 63));
+    }
+}
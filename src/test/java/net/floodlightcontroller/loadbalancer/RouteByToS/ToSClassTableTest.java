@@ -0,0 +1,63 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ToSClassTableTest {
+
+    /**
+     * 原ThresholdCompute的实现，用于对照
+     */
+    private static double referenceThreshold(byte ToS, double maxLinkCompacity) {
+        Map<Integer, Double> bandwidthType = new HashMap<>();
+        Map<Integer, Double> lossRateType = new HashMap<>();
+        Map<Integer, Integer> delayType = new HashMap<>();
+        for (int i = 0; i < 4; i++) bandwidthType.put(i, (double) i);
+        lossRateType.put(0, 1.0);
+        lossRateType.put(1, 0.0);
+        for (int i = 0; i < 8; i++) delayType.put(i, i);
+        double requiredBandwith = bandwidthType.get((ToS >> 4) & (byte) 3);
+        double requiredLossRate = lossRateType.get((ToS >> 3) & (byte) 1);
+        int requiredDelay = delayType.get(ToS & (byte) 7);
+        double basicThreshold = (1 - requiredLossRate) * requiredBandwith;
+        double diff = maxLinkCompacity - basicThreshold;
+        int bucketNum = Math.min((int) (diff / bandwidthType.get(1)), delayType.size());
+        for (double i = bucketNum - 1.0; i >= 0.0; i--) {
+            if ((double) requiredDelay / delayType.size() >= i / bucketNum) return basicThreshold + i / bucketNum * diff;
+        }
+        return basicThreshold;
+    }
+
+    @Test
+    public void testDefaultTableMatchesOriginalThresholds() {
+        ToSClassTable table = ToSClassTable.defaultTable();
+        assertEquals(64, table.getLevels().size());
+        for (Byte ToS : table.getLevels()) {
+            for (double max = -1; max <= 9; max += 0.25) {
+                assertEquals(referenceThreshold(ToS, max), table.threshold(ToS, max), 1e-12);
+            }
+        }
+        // 表外的ToS门限为0
+        assertEquals(0.0, table.threshold((byte) 0x40, 8.0), 0.0);
+    }
+
+    @Test
+    public void testParse() {
+        ToSClassTable table = ToSClassTable.parse("0, 2, 4", null, "0,1");
+        assertEquals(3 * 2 * 2, table.getLevels().size());
+        assertArrayEquals(new double[] { 1.0, 0.0 }, table.getLossRate(), 0.0);
+        // ToS 0x29: 带宽类型2，丢包率0，时延类型1
+        assertTrue(table.getLevels().contains((byte) 0x29));
+        assertEquals(4.0, table.threshold((byte) 0x29, 4.0), 0.0);
+        assertEquals(ToSClassTable.defaultTable(), ToSClassTable.parse(null, null, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyClassesRejected() {
+        ToSClassTable.parse("0,1,2,3,4", null, null);
+    }
+}
@@ -0,0 +1,115 @@
+package net.floodlightcontroller.loadbalancer.RouteByToS;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.junit.Test;
+
+public class ToSRouteTableTest {
+
+    private static boolean[] randomTopo(Random rnd, int n, double p) {
+        boolean[] adj = new boolean[n * n];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                adj[i * n + j] = i != j && rnd.nextDouble() < p;
+        return adj;
+    }
+
+    /**
+     * 沿next矩阵走到终点，检查路径合法且长度与dist一致
+     */
+    private static void checkPaths(ToSRouteTable table, boolean[] adj) {
+        int n = table.size();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i == j || !table.isReachable(i, j)) continue;
+                int hops = 0;
+                int cur = i;
+                while (cur != j) {
+                    int nh = table.getNextHop(cur, j);
+                    assertTrue("hop " + cur + "->" + nh + " not open", adj[cur * n + nh]);
+                    cur = nh;
+                    hops++;
+                    assertTrue(hops <= n);
+                }
+                assertEquals(table.getDist(i, j), hops);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalMatchesFullRecompute() {
+        Random rnd = new Random(42);
+        int n = 30;
+        boolean[] adj = randomTopo(rnd, n, 0.1);
+        ToSRouteTable incremental = new ToSRouteTable(n);
+        incremental.update(adj);
+        for (int round = 0; round < 200; round++) {
+            // 每轮随机翻转少量链路
+            int flips = 1 + rnd.nextInt(3);
+            for (int f = 0; f < flips; f++) {
+                int u = rnd.nextInt(n), v = rnd.nextInt(n);
+                if (u != v) adj[u * n + v] = !adj[u * n + v];
+            }
+            BitSet changed = incremental.update(adj);
+            ToSRouteTable full = new ToSRouteTable(n);
+            full.update(adj);
+            for (int i = 0; i < n; i++)
+                for (int j = 0; j < n; j++)
+                    assertEquals(full.getDist(i, j), incremental.getDist(i, j));
+            checkPaths(incremental, adj);
+            assertTrue(changed.length() <= n);
+        }
+    }
+
+    @Test
+    public void testUnchangedTopologyReportsNothing() {
+        boolean[] adj = randomTopo(new Random(7), 10, 0.3);
+        ToSRouteTable table = new ToSRouteTable(10);
+        table.update(adj);
+        assertTrue(table.update(adj).isEmpty());
+    }
+
+    @Test
+    public void testClosedLinkOnlyTouchesAffectedDestinations() {
+        // 0->1->2->3 的链，外加 0->3 直连
+        boolean[] adj = new boolean[16];
+        adj[0 * 4 + 1] = adj[1 * 4 + 2] = adj[2 * 4 + 3] = adj[0 * 4 + 3] = true;
+        ToSRouteTable table = new ToSRouteTable(4);
+        table.update(adj);
+        assertEquals(1, table.getDist(0, 3));
+
+        adj[1 * 4 + 2] = false;
+        BitSet changed = table.update(adj);
+        assertTrue(changed.get(2));
+        assertFalse(changed.get(1));
+        assertFalse(table.isReachable(0, 2));
+        assertEquals(1, table.getDist(0, 3));
+    }
+
+    @Test
+    public void testBlockedFloydMatchesSequential() {
+        final int n = ToSRouteTable.PARALLEL_THRESHOLD + 37;
+        final boolean[] adj = randomTopo(new Random(3), n, 3.0 / n);
+        ToSRouteTable sequential = new ToSRouteTable(n);
+        sequential.update(adj);
+        // 在ForkJoin线程内重算会走分块并行的floyd
+        ToSRouteTable parallel = new ForkJoinPool(4).invoke(new RecursiveTask<ToSRouteTable>() {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected ToSRouteTable compute() {
+                ToSRouteTable t = new ToSRouteTable(n);
+                t.update(adj);
+                return t;
+            }
+        });
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                assertEquals(sequential.getDist(i, j), parallel.getDist(i, j));
+        checkPaths(parallel, adj);
+    }
+}
@@ -21,6 +21,8 @@
 package net.floodlightcontroller.packet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -72,4 +74,70 @@ public class EthernetTest {
                 Ethernet.toLong(new byte[] { (byte) 0x80, (byte) 0x80,
                         (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80 }));
     }
+
+    private static Ethernet tcpPacket() {
+        return (Ethernet) new Ethernet()
+            .setDestinationMACAddress("00:11:22:33:44:55")
+            .setSourceMACAddress("00:44:33:22:11:00")
+            .setEtherType(Ethernet.TYPE_IPv4)
+            .setPayload(new IPv4()
+                .setTtl((byte) 64)
+                .setDiffServ((byte) 0x40)
+                .setSourceAddress("192.168.1.1")
+                .setDestinationAddress("192.168.1.2")
+                .setProtocol(IPv4.PROTOCOL_TCP)
+                .setPayload(new TCP()
+                    .setSourcePort((short) 5000)
+                    .setDestinationPort((short) 80)
+                    .setPayload(new Data(new byte[] {0x01, 0x02, 0x03}))));
+    }
+
+    @Test
+    public void testLazyPayload() {
+        Ethernet expected = tcpPacket();
+        byte[] frame = expected.serialize();
+        // Deserialize from the middle of a larger buffer, as zero-copy decode does
+        byte[] buffer = new byte[frame.length + 10];
+        System.arraycopy(frame, 0, buffer, 7, frame.length);
+        Ethernet eth = (Ethernet) new Ethernet().deserialize(buffer, 7, frame.length);
+
+        // Only the Ethernet header is parsed until the payload is asked for
+        assertNull(eth.payload);
+        assertEquals(Ethernet.TYPE_IPv4, eth.getEtherType());
+        IPv4 ip = (IPv4) eth.getPayload();
+        assertSame(ip, eth.getPayload());
+        assertSame(eth, ip.getParent());
+        assertEquals((byte) 0x40, ip.getDiffServ());
+        assertNull(ip.payload);
+        TCP tcp = (TCP) ip.getPayload();
+        assertEquals((short) 80, tcp.getDestinationPort());
+
+        assertEquals(expected, eth);
+        assertEquals(expected.hashCode(), eth.hashCode());
+        assertTrue(Arrays.equals(frame, eth.serialize()));
+        // A payload never looked at is still serialized
+        Ethernet untouched = (Ethernet) new Ethernet().deserialize(frame, 0, frame.length);
+        assertTrue(Arrays.equals(frame, untouched.serialize()));
+        // setPayload() replaces the deferred payload
+        untouched.setPayload(new Data(new byte[] {0x09}));
+        assertTrue(Arrays.equals(new byte[] {0x09}, ((Data) untouched.getPayload()).getData()));
+    }
+
+    @Test
+    public void testLazyPayloadParseFailure() {
+        byte[] frame = tcpPacket().serialize();
+        // TCP data offset below 5 can not be parsed, the TCP bytes are kept as data
+        frame[14 + 20 + 12] = 0x10;
+        Ethernet eth = (Ethernet) new Ethernet().deserialize(frame, 0, frame.length);
+        IPv4 ip = (IPv4) eth.getPayload();
+        Data data = (Data) ip.getPayload();
+        assertTrue(Arrays.equals(Arrays.copyOfRange(frame, 14 + 20, frame.length), data.getData()));
+
+        // Unknown ethertypes keep only the payload bytes, not the whole buffer
+        byte[] buffer = new byte[] {0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 2, (byte) 0x88, (byte) 0xb5,
+                0x0a, 0x0b, 0x0c, 0x0d, 0x0e};
+        eth = (Ethernet) new Ethernet().deserialize(buffer, 0, buffer.length);
+        assertTrue(Arrays.equals(new byte[] {0x0a, 0x0b, 0x0c, 0x0d, 0x0e},
+                ((Data) eth.getPayload()).getData()));
+    }
 }
@@ -231,21 +231,24 @@ public class StaticFlowTests extends FloodlightTestCase {
 
         verify(mockSwitch);
 
-        // Verify that the switch has gotten some flow_mods
-        assertEquals(true, writeCapture.hasCaptured());
-        assertEquals(TotalTestRules, writeCapture.getValues().size());
+        // Verify that the switch has gotten the flow_mods in one batch
+        assertEquals(false, writeCapture.hasCaptured());
+        assertEquals(1, writeCaptureList.getValues().size());
+        List<OFMessage> pushed = writeCaptureList.getValues().get(0);
+        assertEquals(TotalTestRules, pushed.size());
 
         // Order assumes how things are stored in hash bucket;
         // should be fixed because OFMessage.hashCode() is deterministic
-        OFFlowMod firstFlowMod = (OFFlowMod) writeCapture.getValues().get(2);
+        OFFlowMod firstFlowMod = (OFFlowMod) pushed.get(2);
         verifyFlowMod(firstFlowMod, FlowMod1);
-        OFFlowMod secondFlowMod = (OFFlowMod) writeCapture.getValues().get(1);
+        OFFlowMod secondFlowMod = (OFFlowMod) pushed.get(1);
         verifyFlowMod(secondFlowMod, FlowMod2);
-        OFFlowMod thirdFlowMod = (OFFlowMod) writeCapture.getValues().get(0);
+        OFFlowMod thirdFlowMod = (OFFlowMod) pushed.get(0);
         verifyFlowMod(thirdFlowMod, FlowMod3);
 
         writeCapture.reset();
         contextCapture.reset();
+        writeCaptureList.reset();
 
 
         // delete two rules and verify they've been removed
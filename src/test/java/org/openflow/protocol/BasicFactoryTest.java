@@ -131,4 +131,52 @@ public class BasicFactoryTest extends TestCase {
         assertTrue("Action should be OFActionVendorGeneric, but is "+ofAction.getClass(), ofAction instanceof OFActionVendorGeneric);
     }
 
+    public void testMessagePool() {
+        BasicFactory factory = BasicFactory.getInstance();
+        OFMessagePool pool = new OFMessagePool(1);
+        factory.setMessagePool(pool);
+        try {
+            OFFlowMod fm = (OFFlowMod) factory.getMessage(OFType.FLOW_MOD);
+            assertTrue(fm.isPooled());
+            fm.setMatch(new OFMatch());
+            fm.setCommand(OFFlowMod.OFPFC_DELETE);
+            fm.setPriority((short) 100);
+            fm.setXid(42);
+            fm.setLengthU(OFFlowMod.MINIMUM_LENGTH + 8);
+            assertTrue(pool.release(fm));
+            // Released once only
+            assertFalse(pool.release(fm));
+            assertEquals(1, pool.getFreeCount(OFType.FLOW_MOD));
+
+            OFFlowMod reused = (OFFlowMod) factory.getMessage(OFType.FLOW_MOD);
+            assertSame(fm, reused);
+            assertEquals(new OFFlowMod(), reused);
+            assertNull(reused.getMatch());
+            assertEquals(OFPort.OFPP_NONE.getValue(), reused.getOutPort());
+            assertEquals(1, pool.getAllocatedCount());
+
+            // Retained messages and other types are not recycled
+            reused.retain();
+            assertFalse(reused.isPooled());
+            assertFalse(pool.release(reused));
+            OFMessage hello = factory.getMessage(OFType.HELLO);
+            assertFalse(hello.isPooled());
+            assertFalse(pool.release(hello));
+
+            // The free list is bounded
+            OFPacketOut po1 = (OFPacketOut) factory.getMessage(OFType.PACKET_OUT);
+            OFPacketOut po2 = (OFPacketOut) factory.getMessage(OFType.PACKET_OUT);
+            po1.setPacketData(new byte[] { 1, 2, 3 });
+            assertTrue(pool.release(po1));
+            assertFalse(pool.release(po2));
+            assertEquals(1, pool.getFreeCount(OFType.PACKET_OUT));
+            OFPacketOut po3 = (OFPacketOut) factory.getMessage(OFType.PACKET_OUT);
+            assertSame(po1, po3);
+            assertNull(po3.getPacketData());
+            assertEquals(OFPacketOut.BUFFER_ID_NONE, po3.getBufferId());
+        } finally {
+            factory.setMessagePool(null);
+        }
+    }
+
 }
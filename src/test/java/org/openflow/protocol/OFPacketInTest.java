@@ -0,0 +1,56 @@
+package org.openflow.protocol;
+
+import junit.framework.TestCase;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openflow.protocol.OFPacketIn.OFPacketInReason;
+import org.openflow.util.OFTestCase;
+
+public class OFPacketInTest extends OFTestCase {
+    private OFPacketIn makePacketIn() {
+        OFPacketIn msg = (OFPacketIn) messageFactory
+                .getMessage(OFType.PACKET_IN);
+        msg.setBufferId(7);
+        msg.setInPort((short) 3);
+        msg.setReason(OFPacketInReason.ACTION);
+        msg.setPacketData(new byte[] { 1, 2, 3, 4, 5 });
+        msg.setTotalLength((short) 5);
+        return msg;
+    }
+
+    public void testReadFromSlice() throws Exception {
+        OFPacketIn msg = makePacketIn();
+        ChannelBuffer bb = ChannelBuffers.dynamicBuffer();
+        msg.writeTo(bb);
+
+        OFPacketIn sliced = new OFPacketIn();
+        sliced.readFromSlice(bb.duplicate());
+        TestCase.assertTrue(sliced.hasPacketDataSlice());
+        TestCase.assertFalse(msg.hasPacketDataSlice());
+        TestCase.assertEquals(5, sliced.getPacketDataLength());
+        TestCase.assertEquals(3, sliced.getInPort());
+        TestCase.assertEquals(OFPacketInReason.ACTION, sliced.getReason());
+        // the payload is a view of the frame until it is materialized
+        ChannelBuffer payload = sliced.getPacketDataBuffer();
+        TestCase.assertEquals(1, payload.getByte(payload.readerIndex()));
+        payload.skipBytes(2);
+        TestCase.assertEquals(5, sliced.getPacketDataBuffer().readableBytes());
+        TestCase.assertEquals(msg, sliced);
+
+        // a sliced message writes the same bytes as a copied one
+        ChannelBuffer out = ChannelBuffers.dynamicBuffer();
+        sliced.writeTo(out);
+        bb.readerIndex(0);
+        TestCase.assertEquals(bb, out);
+
+        OFPacketIn copied = new OFPacketIn();
+        copied.readFrom(out);
+        TestCase.assertEquals(5, copied.getPacketDataLength());
+        TestCase.assertEquals(msg, copied);
+        TestCase.assertFalse(copied.hasPacketDataSlice());
+        // materializing the payload ends the slice
+        sliced.getPacketData();
+        TestCase.assertFalse(sliced.hasPacketDataSlice());
+    }
+}